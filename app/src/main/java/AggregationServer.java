@@ -1,7 +1,18 @@
 import java.io.*;
-import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -12,25 +23,49 @@ public class AggregationServer {
     private int portNumber = 4567;
     private static Path activeFile = Paths.get("active_data.txt");
     private static Path backupFile = Paths.get("backup_data.txt");
-    private static JSONObject dataStorage = new JSONObject();
-    private static JSONObject lastConnectionTime = new JSONObject();
-    private LamportClock clock = new LamportClock();
-    private ServerSocket serverSocket = null;
-    private Thread janitorThread;
+    private static final long DEFAULT_EXPIRY_MILLIS = 30000;
+    private static final long DEFAULT_EXPIRY_TICK_MILLIS = 100;
+    private static final int DEFAULT_COMMIT_BATCH = 512;
+    private static final long DEFAULT_COMMIT_LINGER_MILLIS = 0;
+    private static final String NDJSON_TYPE = "application/x-ndjson";
+    private static final String BINARY_VARIANT = "bin";
+    private static final String VARY = "Accept, Accept-Encoding";
+    private static final byte[] EMPTY_OBJECT = "{}".getBytes(StandardCharsets.UTF_8);
+    private static final int MIN_COMPRESS_BYTES = 1024;
+    private static final int STORE_STRIPES = 64;
+    private static final long NOT_STORING = Long.MAX_VALUE;
+    private static final int EVENT_LOG_CAPACITY = 1 << 16;
+    private final StationStore stations = new StationStore();
+    private final ServerMetrics metrics = new ServerMetrics();
+    private final StripedLock stationLocks = new StripedLock(STORE_STRIPES);
+    private final AtomicLongArray storingAfter = newStoringSlots(stationLocks.getStripes());
+    private final Object fileLock = new Object();
+    private final String etagEpoch = Long.toString(System.currentTimeMillis(), 36);
+    private LamportClock clock = new LamportClock(EVENT_LOG_CAPACITY);
+    private ConnectionEngine engine;
+    private WriteAheadLog wal;
+    private GroupCommitter committer;
+    private ExpiryWheel expiry;
 
     /**
      * Constructor for AggregationServer.
      * @param port The port number on which the server will listen.
      */
     public AggregationServer(int port) {
+        this(port, ConnectionEngine.create("virtual"));
+    }
+
+    /**
+     * Constructor for AggregationServer with an explicit connection engine.
+     * @param port The port number on which the server will listen.
+     * @param engine The engine that accepts and multiplexes client connections.
+     */
+    public AggregationServer(int port, ConnectionEngine engine) {
         this.portNumber = port;
-        AggregationServer.dataStorage = new JSONObject();
-        // Initialize and start the janitor thread
-        this.janitorThread = new Thread(() -> {
-            janitor();
-        });
-        this.janitorThread.setDaemon(true);
-        this.janitorThread.start();
+        this.engine = engine;
+        this.committer = new GroupCommitter("group-commit-" + port, this::commitGroup, DEFAULT_COMMIT_BATCH, DEFAULT_COMMIT_LINGER_MILLIS);
+        // Stations expire once they have not been updated for 30 seconds
+        this.expiry = new ExpiryWheel(stations, DEFAULT_EXPIRY_MILLIS, DEFAULT_EXPIRY_TICK_MILLIS, this::logChange);
     }
 
     /**
@@ -55,13 +90,24 @@ public class AggregationServer {
     }
 
     /**
-     * Recovers data from active and backup files.
+     * Switches persistence from rewriting the active and backup files on every PUT to
+     * appending each change to a write-ahead log. Must be called before recoverData().
+     * @param directory The directory holding the log segments.
+     */
+    public void useWriteAheadLog(Path directory) {
+        this.wal = new WriteAheadLog(directory, stations);
+    }
+
+    /**
+     * Recovers data from the write-ahead log if enabled, otherwise from active and backup files.
      */
     public void recoverData() {
         try {
             System.out.println("Recovering data...");
             // Check the availability of active and backup files
-            if (Files.isReadable(activeFile) && Files.isReadable(backupFile)) {
+            if (wal != null) {
+                wal.replay();
+            } else if (Files.isReadable(activeFile) && Files.isReadable(backupFile)) {
                 recoverFromBoth();
             } else if (Files.isReadable(activeFile)) {
                 recoverFromActive();
@@ -71,9 +117,10 @@ public class AggregationServer {
                 // If no previous files are found, create new files and reset dataStorage
                 System.out.println("No previous files found. Creating new files and resetting dataStorage.");
                 createFiles();
-                dataStorage = new JSONObject();
+                stations.clear();
             }
-            System.out.println("Data recovery complete. DataStorage: " + dataStorage.toString());
+            scheduleExpiryForAll();
+            System.out.println("Data recovery complete. Stations: " + stations.size());
         } catch (IOException e) {
             System.out.println("Error during data recovery: " + e);
             e.printStackTrace();
@@ -97,13 +144,13 @@ public class AggregationServer {
 
         if (data.trim().isEmpty()) {
             System.out.println("Data file is empty. Starting with empty dataStorage.");
-            dataStorage = new JSONObject();
+            stations.clear();
         } else {
             try {
-                dataStorage = new JSONObject(data);
+                stations.load(new JSONObject(data), System.currentTimeMillis());
             } catch (JSONException e) {
                 System.out.println("Invalid JSON data in file. Starting with empty dataStorage.");
-                dataStorage = new JSONObject();
+                stations.clear();
             }
         }
     }
@@ -118,15 +165,15 @@ public class AggregationServer {
         System.out.println("Active file content: " + data);
         if (data.trim().isEmpty()) {
             System.out.println("Active file is empty. Starting with empty dataStorage.");
-            dataStorage = new JSONObject();
+            stations.clear();
         } else {
             try {
-                dataStorage = new JSONObject(data);
-                System.out.println("Data validated and stored. DataStorage: " + dataStorage.toString());
+                stations.load(new JSONObject(data), System.currentTimeMillis());
+                System.out.println("Data validated and stored. Stations: " + stations.size());
                 Files.copy(activeFile, backupFile, StandardCopyOption.REPLACE_EXISTING);
             } catch (JSONException e) {
                 System.out.println("Invalid JSON data in active file. Starting with empty dataStorage.");
-                dataStorage = new JSONObject();
+                stations.clear();
                 Files.delete(activeFile);
             }
         }
@@ -142,15 +189,15 @@ public class AggregationServer {
         System.out.println("Backup file content: " + data);
         if (data.trim().isEmpty()) {
             System.out.println("Backup file is empty. Starting with empty dataStorage.");
-            dataStorage = new JSONObject();
+            stations.clear();
         } else {
             try {
-                dataStorage = new JSONObject(data);
-                System.out.println("Data validated and stored. DataStorage: " + dataStorage.toString());
+                stations.load(new JSONObject(data), System.currentTimeMillis());
+                System.out.println("Data validated and stored. Stations: " + stations.size());
                 Files.copy(backupFile, activeFile, StandardCopyOption.REPLACE_EXISTING);
             } catch (JSONException e) {
                 System.out.println("Invalid JSON data in backup file. Starting with empty dataStorage.");
-                dataStorage = new JSONObject();
+                stations.clear();
                 Files.delete(backupFile);
             }
         }
@@ -169,23 +216,97 @@ public class AggregationServer {
     }
 
     /**
-     * Stores the provided JSON data.
+     * Stores the provided JSON data as the latest record of its station. No lock is
+     * taken, so updates to different stations proceed in parallel.
      * @param jsonData The JSON data to be stored.
+     * @return true if this created a new station entry.
      */
-    public synchronized void store(JSONObject jsonData) {
+    public boolean store(JSONObject jsonData) {
         if (jsonData.has("id") && !jsonData.getString("id").isEmpty()) {
-            String id = jsonData.getString("id");
-            dataStorage.put(id, jsonData);
-            lastConnectionTime.put(id, System.currentTimeMillis());
+            WeatherRecord.Builder builder = new WeatherRecord.Builder();
+            for (String key : jsonData.keySet()) {
+                builder.field(key, jsonData.get(key));
+            }
+            return store(builder);
+        }
+        return false;
+    }
+
+    /**
+     * Stores a record assembled by a parser, stamping it with the receive time and a
+     * fresh Lamport tick. Stamping and storing happen under the lock stripe of the
+     * station id, so PUTs to one station are stored in stamp order while PUTs to
+     * stations in other stripes proceed in parallel. Persistence happens afterwards,
+     * outside the lock. The tick makes every stamp greater than any watermark taken
+     * before it, so a since query at that watermark cannot miss the record.
+     *
+     * While the record is being stamped and stored, its stripe's slot in storingAfter
+     * holds a clock value read before the tick, which holds back stableLamport().
+     * @param builder The builder holding the record's fields; must have a non-empty id.
+     * @return true if this created a new station entry.
+     */
+    private boolean store(WeatherRecord.Builder builder) {
+        WeatherRecord record;
+        boolean created;
+        int stripe = stationLocks.indexOf(builder.getId());
+        ReentrantLock lock = stationLocks.forKey(builder.getId());
+        lock.lock();
+        try {
+            storingAfter.set(stripe, clock.getValue());
+            record = builder.receivedAt(System.currentTimeMillis()).lamport(clock.tick()).build();
+            created = stations.put(record);
+        } finally {
+            storingAfter.set(stripe, NOT_STORING);
+            lock.unlock();
+        }
+        expiry.schedule(record);
+        return created;
+    }
+
+    /**
+     * Replaces the expiry wheel, e.g. to change the expiry window or tick resolution.
+     * Stations already stored are rescheduled on the new wheel.
+     * @param windowMillis How long a station lives without being updated.
+     * @param tickMillis How often due stations are checked.
+     */
+    public void setExpiry(long windowMillis, long tickMillis) {
+        ExpiryWheel previous = expiry;
+        expiry = new ExpiryWheel(stations, windowMillis, tickMillis, this::logChange);
+        previous.stop();
+        scheduleExpiryForAll();
+    }
+
+    /**
+     * Gets the metrics collected by this server.
+     * @return The metrics.
+     */
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Gets the expiry wheel, e.g. to read how many stations each tick expired.
+     * @return The expiry wheel.
+     */
+    public ExpiryWheel getExpiry() {
+        return expiry;
+    }
+
+    /**
+     * Schedules the expiry of every stored station, after recovery or a wheel change.
+     */
+    private void scheduleExpiryForAll() {
+        for (WeatherRecord record : stations.records()) {
+            expiry.schedule(record);
         }
     }
 
     /**
      * Creates a backup of the active file.
      */
-    public synchronized void backup() {
+    public void backup() {
         try {
-            Files.copy(activeFile, backupFile, StandardCopyOption.REPLACE_EXISTING);
+            copyToBackup();
         } catch (IOException i) {
             System.out.println(i);
         }
@@ -194,216 +315,707 @@ public class AggregationServer {
     /**
      * Saves the current data to the active file.
      */
-    public synchronized void saveData() {
+    public void saveData() {
         try {
-            Files.write(activeFile, AggregationServer.dataStorage.toString().getBytes(), StandardOpenOption.TRUNCATE_EXISTING);
+            writeActiveFile();
         } catch (IOException i) {
             System.out.println(i);
         }
     }
 
     /**
-     * Starts the server and listens for client connections.
-     * @throws IOException If an I/O error occurs when opening the server socket.
+     * Writes the current snapshot to the active file and syncs it to disk. File writes
+     * are serialized on their own lock, never one that PUTs take to store a record.
+     * @throws IOException If the file cannot be written or synced.
      */
-    public void startServer() throws IOException {
-        serverSocket = new ServerSocket(portNumber);
-        System.out.println("Server started on port: " + portNumber);
-
-        while (true) {
-            Socket clientSocket = null;
-            try {
-                // Accept a new client connection
-                clientSocket = serverSocket.accept();
-                System.out.println("A new client is connected: " + clientSocket);
-
-                // Create input and output streams for the client
-                BufferedReader input = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-                BufferedWriter output = new BufferedWriter(new OutputStreamWriter(clientSocket.getOutputStream()));
-
-                System.out.println("Assigning new thread for this client");
-                // Create and start a new thread to handle the client
-                Thread clientThread = new ClientHandler(clientSocket, input, output, this);
-                clientThread.start();
-            } catch (Exception e) {
-                if (clientSocket != null) {
-                    clientSocket.close();
+    private void writeActiveFile() throws IOException {
+        synchronized (fileLock) {
+            try (FileChannel channel = FileChannel.open(activeFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = ByteBuffer.wrap(stations.snapshot().getBytes());
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
                 }
-                e.printStackTrace();
+                channel.force(false);
             }
         }
     }
 
     /**
-     * Janitor method to remove stale data.
+     * Copies the active file to the backup file and syncs the copy to disk.
+     * @throws IOException If the file cannot be copied or synced.
      */
-    private static void janitor() {
-        while (!Thread.currentThread().isInterrupted()) {
-            try {
-                // Sleep for 1 second between checks
-                Thread.sleep(1000);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                return;
+    private void copyToBackup() throws IOException {
+        synchronized (fileLock) {
+            Files.copy(activeFile, backupFile, StandardCopyOption.REPLACE_EXISTING);
+            try (FileChannel channel = FileChannel.open(backupFile, StandardOpenOption.WRITE)) {
+                channel.force(false);
             }
+        }
+    }
 
-            long currentTime = System.currentTimeMillis();
+    /**
+     * Sets the group commit limits for PUT persistence.
+     * @param maxBatch The maximum number of PUTs made durable by one write and fsync.
+     * @param lingerMillis The maximum time a PUT waits for its group to fill.
+     */
+    public void setGroupCommit(int maxBatch, long lingerMillis) {
+        GroupCommitter previous = committer;
+        committer = new GroupCommitter("group-commit-" + portNumber, this::commitGroup, maxBatch, lingerMillis);
+        previous.close();
+    }
 
-            synchronized (dataStorage) {
-                // Iterate through all entries and remove those older than 30 seconds
-                for (String key : new HashSet<>(lastConnectionTime.keySet())) {
-                    if (currentTime - lastConnectionTime.getLong(key) > 30000) {
-                        dataStorage.remove(key);
-                        lastConnectionTime.remove(key);
-                    }
-                }
+    /**
+     * Makes one group of changes durable: one log append and fsync in write-ahead log
+     * mode, otherwise a single rewrite of the active file followed by a backup.
+     * @param ids The ids of the stations that changed.
+     * @throws IOException If the group could not be made durable.
+     */
+    private void commitGroup(Set<String> ids) throws IOException {
+        long start = System.nanoTime();
+        if (wal != null) {
+            wal.appendAll(ids);
+        } else {
+            writeActiveFile();
+            copyToBackup();
+        }
+        metrics.recordPersist(System.nanoTime() - start);
+    }
+
+    /**
+     * Starts the server and listens for client connections using the configured engine.
+     * @throws IOException If an I/O error occurs when opening the server socket.
+     */
+    public void startServer() throws IOException {
+        engine.serve(portNumber, this);
+    }
+
+    /**
+     * Stops accepting client connections, stops expiring stations, commits the changes
+     * already queued and closes the write-ahead log and event log.
+     */
+    public void stopServer() {
+        engine.stop();
+        expiry.stop();
+        committer.close();
+        if (wal != null) {
+            wal.close();
+        }
+        clock.close();
+    }
+
+    /**
+     * Handles a single request and returns the encoded response. Engines call this once
+     * per request, so several requests may arrive over one persistent connection.
+     * @param request The parsed request.
+     * @return The raw response bytes.
+     */
+    public byte[] handleRequest(HttpMessage request) {
+        long start = System.nanoTime();
+        String method = request.getMethod();
+        byte[] response;
+        if (method.matches(".*GET.*") && request.getPath().equals("/metrics")) {
+            response = handleMetricsRequest(request);
+        } else if (method.matches(".*GET.*")) {
+            response = handleGetRequest(request);
+        } else if (method.matches(".*PUT.*") && request.getPath().equals("/heartbeat")) {
+            response = handleHeartbeatRequest(request);
+        } else if (method.matches(".*PUT.*")) {
+            response = handlePutRequest(request);
+        } else {
+            response = sendBadRequestResponse(request);
+        }
+        metrics.recordRequest(method, statusOf(response), request.getWireLength(), response.length, System.nanoTime() - start);
+        return response;
+    }
+
+    /**
+     * Handles GET /metrics with the server's counters and histograms in the Prometheus
+     * text format.
+     * @param request The parsed request.
+     * @return The raw response bytes.
+     */
+    private byte[] handleMetricsRequest(HttpMessage request) {
+        byte[] body = metrics.render(stations.size(), expiry.getExpiredTotal()).getBytes(StandardCharsets.UTF_8);
+        return buildResponse(request, "200 OK", "text/plain; version=0.0.4", body, "");
+    }
+
+    /**
+     * Reads the status code back from an encoded response.
+     * @param response The raw response bytes, starting with "HTTP/1.1 NNN".
+     * @return The status code.
+     */
+    private static int statusOf(byte[] response) {
+        return (response[9] - '0') * 100 + (response[10] - '0') * 10 + (response[11] - '0');
+    }
+
+    /**
+     * Handles GET requests. Without query parameters the cached aggregate is returned;
+     * with id, prefix or state parameters only the matching stations are serialized,
+     * and with since only the stations stored after that Lamport time.
+     *
+     * Every response carries an ETag for the store version, answered with 304 Not
+     * Modified when it matches If-None-Match, and a Lamport-Watermark header: every
+     * station stored up to that Lamport time is included, so the client can poll
+     * with since set to it next time.
+     *
+     * Bodies of at least MIN_COMPRESS_BYTES are sent gzip or deflate encoded when the
+     * request's Accept-Encoding allows it. The aggregate's compressed forms are cached
+     * with its snapshot. Each coding has its own ETag, since the bytes differ.
+     *
+     * A request whose Accept header names BinaryRecordCodec.CONTENT_TYPE gets the
+     * stations in the binary format instead of JSON. Binary bodies are never content
+     * encoded, since their string dictionary already removes most of the redundancy.
+     * @param request The parsed request.
+     * @return The raw response bytes.
+     */
+    private byte[] handleGetRequest(HttpMessage request) {
+        StationQuery query;
+        try {
+            query = StationQuery.fromParameters(request.getQueryParameters());
+        } catch (IllegalArgumentException e) {
+            System.out.println("Invalid query string: " + request.getTarget());
+            return sendBadRequestResponse(request);
+        }
+
+        boolean binary = BinaryRecordCodec.isBinary(request.getHeader("Accept"));
+        String coding = binary ? null : ContentEncoding.negotiate(request.getHeader("Accept-Encoding"));
+        long version = stations.getVersion();
+        String etag = etag(version, binary ? BINARY_VARIANT : coding);
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (!binary && !matchesETag(ifNoneMatch, etag) && matchesETag(ifNoneMatch, etag(version, null))) {
+            // Small bodies are never encoded, so the client may hold the plain form
+            etag = etag(version, null);
+        }
+        if (matchesETag(ifNoneMatch, etag)) {
+            clock.log("Agg: send 304 response", clock.tick());
+            return buildResponse(request, "304 Not Modified", new byte[0], "ETag: " + etag + "\r\nVary: " + VARY + "\r\n");
+        }
+
+        long watermark = stableLamport();
+        if (query.getSince() > watermark) {
+            // The client's time is from before a restart; it needs everything again
+            query = query.withoutSince();
+        }
+        byte[] body;
+        if (binary) {
+            if (query.isAll()) {
+                StationStore.Snapshot snapshot = stations.snapshot();
+                etag = etag(snapshot.getVersion(), BINARY_VARIANT);
+                body = snapshot.getBinaryBytes();
+            } else {
+                // The version read before querying: a store racing the query can only
+                // make the tag older than the body, which costs a refetch, not a miss
+                body = BinaryRecordCodec.encode(stations.query(query));
+                etag = etag(version, BINARY_VARIANT);
+            }
+        } else if (query.isAll()) {
+            StationStore.Snapshot snapshot = stations.snapshot();
+            if (snapshot.getBytes().length < MIN_COMPRESS_BYTES) {
+                coding = null;
+            }
+            etag = etag(snapshot.getVersion(), coding);
+            body = snapshot.getBytes(coding);
+        } else {
+            body = StationStore.toJsonString(stations.query(query)).getBytes(StandardCharsets.UTF_8);
+            if (body.length < MIN_COMPRESS_BYTES) {
+                coding = null;
+            } else if (coding != null) {
+                body = ContentEncoding.encode(body, coding);
             }
+            etag = etag(version, coding);
         }
+        String headers = "ETag: " + etag + "\r\nLamport-Watermark: " + watermark + "\r\nVary: " + VARY + "\r\n";
+        if (coding != null) {
+            headers += "Content-Encoding: " + coding + "\r\n";
+        }
+        clock.log("Agg: send GET response", clock.tick());
+        String contentType = binary ? BinaryRecordCodec.CONTENT_TYPE : "application/json";
+        return buildResponse(request, "200 OK", contentType, body, headers);
     }
 
     /**
-     * Inner class to handle client connections.
+     * Gets a Lamport time up to which every stamped record is already in the store,
+     * without waiting for any writer. A store in progress publishes a clock value
+     * read before its tick, so its stamp is above that value; the watermark is the
+     * current clock capped by every such value. The clock is read first, so a store
+     * whose tick it already includes is either still published or finished.
+     * @return The watermark.
      */
-    private static class ClientHandler extends Thread {
-        private Socket socket;
-        private AggregationServer server;
-        private BufferedReader input;
-        private BufferedWriter output;
+    private long stableLamport() {
+        long watermark = clock.getValue();
+        for (int i = 0; i < storingAfter.length(); i++) {
+            watermark = Math.min(watermark, storingAfter.get(i));
+        }
+        return watermark;
+    }
 
-        /**
-         * Constructor for ClientHandler.
-         * @param clientSocket The socket for the client connection.
-         * @param input The input stream from the client.
-         * @param output The output stream to the client.
-         * @param server The AggregationServer instance.
-         */
-        public ClientHandler(Socket clientSocket, BufferedReader input, BufferedWriter output, AggregationServer server) {
-            this.socket = clientSocket;
-            this.server = server;
-            this.input = input;
-            this.output = output;
+    /**
+     * Creates the per-stripe slots of storingAfter, all idle.
+     * @param stripes The number of stripes.
+     * @return The slots.
+     */
+    private static AtomicLongArray newStoringSlots(int stripes) {
+        AtomicLongArray slots = new AtomicLongArray(stripes);
+        for (int i = 0; i < stripes; i++) {
+            slots.set(i, NOT_STORING);
         }
+        return slots;
+    }
 
-        /**
-         * Main run method for handling client requests.
-         */
-        @Override
-        public void run() {
+    /**
+     * Builds the entity tag for a store version. The server start time is included so
+     * tags from before a restart, when versions start again at 0, never match.
+     * @param version The store version.
+     * @param variant The response's content coding or BINARY_VARIANT, or null for plain JSON.
+     * @return The quoted entity tag.
+     */
+    private String etag(long version, String variant) {
+        return "\"" + etagEpoch + "-" + version + (variant == null ? "" : "-" + variant) + "\"";
+    }
+
+    /**
+     * Checks an If-None-Match header against the current entity tag.
+     * @param header The header value, a comma-separated list of tags or "*"; may be null.
+     * @param etag The current entity tag.
+     * @return true if the client's copy is current.
+     */
+    private static boolean matchesETag(String header, String etag) {
+        if (header == null) {
+            return false;
+        }
+        for (String candidate : header.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Handles PUT requests. The body is parsed straight from the request's byte buffer
+     * into a record, and echoed back as sent. A body that is a JSON array, or that is
+     * sent as application/x-ndjson or BinaryRecordCodec.CONTENT_TYPE, is a bulk PUT of
+     * many records.
+     * @param request The parsed request.
+     * @return The raw response bytes.
+     */
+    private byte[] handlePutRequest(HttpMessage request) {
+        int code = 204;
+        byte[] echo = EMPTY_OBJECT;
+        String id = "";
+        // Update the Lamport clock from the request headers
+        String lamport = request.getHeader("Lamport-Clock");
+        if (lamport != null) {
             try {
-                String currentLine;
-                if ((currentLine = input.readLine()) != null && !currentLine.isEmpty()) {
-                    String[] split = currentLine.trim().split(" ", 3);
-                    String method = split[0];
-                    if (method.matches(".*GET.*")) {
-                        handleGetRequest(input, output);
-                    } else if (method.matches(".*PUT.*")) {
-                        handlePutRequest(input, output);
-                    } else {
-                        sendBadRequestResponse(output);
-                    }
-                } else {
-                    sendBadRequestResponse(output);
+                clock.log("Agg: receive PUT", clock.update(Long.parseLong(lamport)));
+            } catch (NumberFormatException e) {
+                return sendBadRequestResponse(request);
+            }
+        }
+        // Read the JSON data from the body framed by Content-Length
+        byte[] body = request.getBodyBuffer();
+        int length = request.getBodyLength();
+        int start = 0;
+        while (start < length && Character.isWhitespace(body[start])) {
+            start++;
+        }
+        String contentType = request.getHeader("Content-Type");
+        if (BinaryRecordCodec.isBinary(contentType)) {
+            try {
+                return handleBulkPutRequest(request, new ArrayList<>(BinaryRecordCodec.decode(body, 0, length)));
+            } catch (IllegalArgumentException e) {
+                System.out.println("Invalid binary PUT body: " + e.getMessage());
+                return sendBadRequestResponse(request);
+            }
+        }
+        if (contentType != null && contentType.toLowerCase().startsWith(NDJSON_TYPE)) {
+            return handleBulkPutRequest(request, readNdjson(body, start, length));
+        }
+        if (start < length && body[start] == '[') {
+            try {
+                return handleBulkPutRequest(request, readJsonArray(body, start, length));
+            } catch (JSONException e) {
+                System.out.println("Invalid JSON in bulk PUT body: " + e.getMessage());
+                return sendBadRequestResponse(request);
+            }
+        }
+        if (start < length && body[start] == '{') {
+            code = 200;
+            WeatherRecord.Builder builder = new WeatherRecord.Builder();
+            try {
+                int fields = JsonRecordParser.parse(body, start, length - start, builder);
+                if (fields > 1 && builder.getId() != null && !builder.getId().isEmpty() && store(builder)) {
+                    code = 201;
                 }
-            } catch (IOException i) {
-                System.out.println(i);
+            } catch (JSONException e) {
+                System.out.println("Invalid JSON in PUT body: " + e.getMessage());
+                return sendBadRequestResponse(request);
             }
+            id = builder.getId() == null ? "" : builder.getId();
+            echo = Arrays.copyOfRange(body, start, length);
         }
+        // Persist the change before acknowledging it
+        if (!persist(id)) {
+            clock.log("Agg: send 500 response", clock.tick());
+            return buildResponse(request, "500 Internal Server Error", "");
+        }
+        // Send the PUT response to the client
+        clock.log("Agg: send PUT response", clock.tick());
+        return buildResponse(request, code + " OK", echo);
+    }
+
+    /**
+     * Handles PUT /heartbeat, sent by content servers in place of records that have not
+     * changed. The body is a JSON array of station ids; each station that is still
+     * present gets a new receive time and expiry without its data being resent,
+     * stored or persisted. Stations that are no longer present, e.g. after expiring or
+     * a restart, are listed as missing so the content server sends them in full.
+     * @param request The parsed request.
+     * @return The raw response bytes.
+     */
+    private byte[] handleHeartbeatRequest(HttpMessage request) {
+        String lamport = request.getHeader("Lamport-Clock");
+        JSONArray ids;
+        try {
+            if (lamport != null) {
+                clock.log("Agg: receive heartbeat", clock.update(Long.parseLong(lamport)));
+            }
+            ids = new JSONArray(request.getBodyAsString());
+        } catch (NumberFormatException | JSONException e) {
+            System.out.println("Invalid heartbeat: " + e.getMessage());
+            return sendBadRequestResponse(request);
+        }
+        long now = System.currentTimeMillis();
+        int refreshed = 0;
+        JSONArray missing = new JSONArray();
+        for (int i = 0; i < ids.length(); i++) {
+            String id = ids.optString(i, "");
+            WeatherRecord record = id.isEmpty() ? null : stations.touch(id, now);
+            if (record == null) {
+                missing.put(id);
+            } else {
+                expiry.schedule(record);
+                refreshed++;
+            }
+        }
+        clock.log("Agg: send heartbeat response", clock.tick());
+        return buildResponse(request, "200 OK", "{\"refreshed\":" + refreshed + ",\"missing\":" + missing + "}");
+    }
 
-        /**
-         * Handles GET requests.
-         * @param input The input stream from the client.
-         * @param output The output stream to the client.
-         * @throws IOException If an I/O error occurs.
-         */
-        private void handleGetRequest(BufferedReader input, BufferedWriter output) throws IOException {
-            JSONObject result = AggregationServer.dataStorage;
-            server.clock.tick();
-            server.clock.log("Agg: send GET response");
-            output.write("HTTP/1.1 200 OK\r\n");
-            output.write("Content-Type: application/json\r\n");
-            output.write("Content-Length: " + result.toString().length() + "\r\n");
-            output.write("Lamport-Clock: " + server.clock.getValue() + "\r\n");
-            output.write(result.toString());
-            output.write("\r\n");
-            output.flush();
-            socket.close();
-        }
-
-        /**
-         * Handles PUT requests.
-         * @param input The input stream from the client.
-         * @param output The output stream to the client.
-         * @throws IOException If an I/O error occurs.
-         */
-        private void handlePutRequest(BufferedReader input, BufferedWriter output) throws IOException {
-            int code = 204;
-            JSONObject currentData = new JSONObject();
-            String currentLine;
-            // Read the PUT request and update the Lamport clock
-            while ((currentLine = input.readLine()) != null && !currentLine.isEmpty()) {
-                if (currentLine.startsWith("Lamport-Clock:")) {
-                    String[] tokens = currentLine.split(":", 2);
-                    server.clock.update(Integer.parseInt(tokens[1].trim()));
-                    server.clock.log("Agg: receive PUT");
-                    break;
+    /**
+     * Stores every valid record of a bulk PUT and persists them all as one change, then
+     * reports a status per record in request order: 201 if the station was created, 200
+     * if it was updated, and 400 with an error if the record was rejected. One rejected
+     * record does not affect the others.
+     * @param request The parsed request.
+     * @param entries The parsed records in request order, each either a builder or the
+     *                error message explaining why it could not be parsed.
+     * @return The raw response bytes.
+     */
+    private byte[] handleBulkPutRequest(HttpMessage request, List<Object> entries) {
+        Set<String> changed = new LinkedHashSet<>();
+        StringBuilder results = new StringBuilder(32 + entries.size() * 40);
+        int created = 0;
+        int updated = 0;
+        int failed = 0;
+        results.append("{\"results\":[");
+        for (int i = 0; i < entries.size(); i++) {
+            Object entry = entries.get(i);
+            String id = null;
+            String error = null;
+            int status;
+            if (entry instanceof WeatherRecord.Builder) {
+                WeatherRecord.Builder builder = (WeatherRecord.Builder) entry;
+                id = builder.getId();
+                if (id == null || id.isEmpty()) {
+                    error = "Record has no id";
+                    status = 400;
+                } else if (store(builder)) {
+                    status = 201;
+                } else {
+                    status = 200;
                 }
+            } else {
+                error = (String) entry;
+                status = 400;
             }
-            // Read the JSON data from the PUT request
-            while ((currentLine = input.readLine()) != null && !currentLine.isEmpty()) {
-                if (currentLine.startsWith("{")) {
-                    code = 200;
-                    currentData = new JSONObject(currentLine);
-                    if (currentData.length() > 1) {
-                        if (!AggregationServer.dataStorage.has(currentData.getString("id"))) {
-                            code = 201;
-                        }
-                        server.store(currentData);
-                        break;
-                    }
+            if (status == 400) {
+                failed++;
+            } else {
+                changed.add(id);
+                if (status == 201) {
+                    created++;
+                } else {
+                    updated++;
                 }
             }
-            // Send the PUT response to the client
-            server.clock.tick();
-            server.clock.log("Agg: send PUT response");
-            output.write("HTTP/1.1 " + code + " OK\r\n");
-            output.write("Content-Type: application/json\r\n");
-            output.write("Content-Length: " + currentData.toString().length() + "\r\n");
-            output.write("Lamport-Clock: " + server.clock.getValue() + "\r\n");
-            output.write("\r\n");
-            output.write(currentData.toString());
-            output.write("\r\n");
-            output.flush();
-            server.saveData();
-            server.backup();
-        }
-
-        /**
-         * Sends a bad request response to the client.
-         * @param output The output stream to the client.
-         * @throws IOException If an I/O error occurs.
-         */
-        private void sendBadRequestResponse(BufferedWriter output) throws IOException {
-            server.clock.tick();
-            server.clock.log("Agg: send 400 response");
-            output.write("HTTP/1.1 400 Bad Request\r\n");
-            output.write("\r\n");
-            output.flush();
+            if (i > 0) {
+                results.append(',');
+            }
+            results.append("{\"index\":").append(i);
+            if (id != null) {
+                results.append(",\"id\":").append(JSONObject.quote(id));
+            }
+            results.append(",\"status\":").append(status);
+            if (error != null) {
+                results.append(",\"error\":").append(JSONObject.quote(error));
+            }
+            results.append('}');
+        }
+        results.append("],\"created\":").append(created)
+                .append(",\"updated\":").append(updated)
+                .append(",\"failed\":").append(failed).append('}');
+
+        // Persist the whole batch before acknowledging any of it
+        if (!changed.isEmpty() && !persist(changed)) {
+            clock.log("Agg: send 500 response", clock.tick());
+            return buildResponse(request, "500 Internal Server Error", "");
+        }
+        clock.log("Agg: send bulk PUT response", clock.tick());
+        return buildResponse(request, "200 OK", results.toString());
+    }
+
+    /**
+     * Parses a bulk PUT body holding a JSON array of records.
+     * @param body The body buffer.
+     * @param start The index of the opening bracket.
+     * @param length The body length.
+     * @return A builder per element, or an error message for elements that are not objects.
+     * @throws JSONException If the body is not a well-formed JSON array.
+     */
+    private static List<Object> readJsonArray(byte[] body, int start, int length) {
+        List<Object> entries = new ArrayList<>();
+        for (WeatherRecord.Builder builder : JsonRecordParser.parseArray(body, start, length - start)) {
+            entries.add(builder == null ? "Not a JSON object" : builder);
         }
+        return entries;
+    }
+
+    /**
+     * Parses a bulk PUT body holding one JSON record per line. Blank lines are skipped,
+     * and a malformed line only rejects that record.
+     * @param body The body buffer.
+     * @param start The index of the first non-whitespace byte.
+     * @param length The body length.
+     * @return A builder per line, or an error message for lines that could not be parsed.
+     */
+    private static List<Object> readNdjson(byte[] body, int start, int length) {
+        List<Object> entries = new ArrayList<>();
+        int lineStart = start;
+        while (lineStart < length) {
+            int lineEnd = lineStart;
+            while (lineEnd < length && body[lineEnd] != '\n') {
+                lineEnd++;
+            }
+            int first = lineStart;
+            while (first < lineEnd && Character.isWhitespace(body[first])) {
+                first++;
+            }
+            if (first < lineEnd) {
+                WeatherRecord.Builder builder = new WeatherRecord.Builder();
+                try {
+                    JsonRecordParser.parse(body, first, lineEnd - first, builder);
+                    entries.add(builder);
+                } catch (JSONException e) {
+                    entries.add(e.getMessage());
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+        return entries;
+    }
+
+    /**
+     * Persists the result of a PUT through the group committer, waiting until the
+     * group containing it has been written and synced.
+     * @param id The id of the station that was stored, or an empty string if none was.
+     * @return true if the change is persisted.
+     */
+    private boolean persist(String id) {
+        if (wal != null && id.isEmpty()) {
+            return true;
+        }
+        return persist(Collections.singletonList(id));
+    }
+
+    /**
+     * Persists several changes as one request to the group committer, so they share a
+     * single write and sync.
+     * @param ids The ids of the stations that were stored.
+     * @return true if the changes are persisted.
+     */
+    private boolean persist(Collection<String> ids) {
+        try {
+            committer.commit(ids);
+            return true;
+        } catch (IOException i) {
+            System.out.println("Failed to persist PUT: " + i);
+            return false;
+        }
+    }
+
+    /**
+     * Logs an expired station when the write-ahead log is enabled. The expiry is not
+     * waited on; it is committed with the next group.
+     * @param id The id of the removed station.
+     */
+    private void logChange(String id) {
+        if (wal != null) {
+            committer.submit(id);
+        }
+    }
+
+    /**
+     * Builds the response to a request rejected with PayloadTooLargeException. Its body
+     * was never read, so the connection cannot be reused and is closed after this.
+     * @return The raw response bytes.
+     */
+    public byte[] buildPayloadTooLargeResponse() {
+        return buildClosingResponse(413, "Payload Too Large");
+    }
+
+    /**
+     * Builds the response to a request whose handling failed unexpectedly. The engine
+     * closes the connection after it, since the failure may have left it in any state.
+     * @return The raw response bytes.
+     */
+    public byte[] buildInternalErrorResponse() {
+        return buildClosingResponse(500, "Internal Server Error");
+    }
+
+    /**
+     * Builds an empty response that closes the connection, for requests an engine
+     * answers without handleRequest().
+     * @param status The status code.
+     * @param reason The reason phrase.
+     * @return The raw response bytes.
+     */
+    private byte[] buildClosingResponse(int status, String reason) {
+        byte[] response = ("HTTP/1.1 " + status + " " + reason + "\r\nContent-Length: 0\r\nLamport-Clock: " + clock.getValue()
+                + "\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.UTF_8);
+        metrics.recordRequest("other", status, 0, response.length, 0);
+        return response;
+    }
+
+    /**
+     * Builds a bad request response.
+     * @param request The parsed request.
+     * @return The raw response bytes.
+     */
+    private byte[] sendBadRequestResponse(HttpMessage request) {
+        clock.log("Agg: send 400 response", clock.tick());
+        return buildResponse(request, "400 Bad Request", "");
+    }
+
+    /**
+     * Encodes a JSON response with the current Lamport clock, announcing the
+     * connection close when the client did not ask for a persistent connection.
+     * @param request The request being answered.
+     * @param status The status code and reason phrase.
+     * @param body The response body.
+     * @return The raw response bytes.
+     */
+    private byte[] buildResponse(HttpMessage request, String status, String body) {
+        return buildResponse(request, status, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Encodes a JSON response whose body is already serialized.
+     * @param request The request being answered.
+     * @param status The status code and reason phrase.
+     * @param bodyBytes The encoded response body, copied into the response.
+     * @return The raw response bytes.
+     */
+    private byte[] buildResponse(HttpMessage request, String status, byte[] bodyBytes) {
+        return buildResponse(request, status, bodyBytes, "");
+    }
+
+    /**
+     * Encodes a response whose body is already serialized, with additional headers.
+     * @param request The request being answered.
+     * @param status The status code and reason phrase.
+     * @param bodyBytes The encoded response body, copied into the response.
+     * @param extraHeaders Further header lines, each terminated by CRLF.
+     * @return The raw response bytes.
+     */
+    private byte[] buildResponse(HttpMessage request, String status, byte[] bodyBytes, String extraHeaders) {
+        return buildResponse(request, status, "application/json", bodyBytes, extraHeaders);
+    }
+
+    /**
+     * Encodes a response with an explicit content type.
+     * @param request The request being answered.
+     * @param status The status code and reason phrase.
+     * @param contentType The media type of the body.
+     * @param bodyBytes The encoded response body, copied into the response.
+     * @param extraHeaders Further header lines, each terminated by CRLF.
+     * @return The raw response bytes.
+     */
+    private byte[] buildResponse(HttpMessage request, String status, String contentType, byte[] bodyBytes, String extraHeaders) {
+        StringBuilder head = new StringBuilder(128);
+        head.append("HTTP/1.1 ").append(status).append("\r\n");
+        if (bodyBytes.length > 0) {
+            head.append("Content-Type: ").append(contentType).append("\r\n");
+        }
+        head.append("Content-Length: ").append(bodyBytes.length).append("\r\n");
+        head.append("Lamport-Clock: ").append(clock.getValue()).append("\r\n");
+        head.append(extraHeaders);
+        if (!request.isKeepAlive()) {
+            head.append("Connection: close\r\n");
+        }
+        head.append("\r\n");
+        byte[] headBytes = head.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] response = new byte[headBytes.length + bodyBytes.length];
+        System.arraycopy(headBytes, 0, response, 0, headBytes.length);
+        System.arraycopy(bodyBytes, 0, response, headBytes.length, bodyBytes.length);
+        return response;
     }
 
     /**
      * Main method to start the AggregationServer.
-     * @param args Command line arguments. The first argument can be used to specify the port number.
+     * @param args Command line arguments: [port] [engine] [--wal=directory] [--commit-batch=n]
+     *             [--commit-linger-ms=n], where engine is "virtual" (default) or "selector",
+     *             --wal enables write-ahead log persistence and the commit options bound
+     *             how many PUTs share one fsync and how long a PUT waits for its group.
+     *             [--expiry-ms=n] [--expiry-tick-ms=n] set the expiry window and resolution.
      */
     public static void main(String args[]) {
         int port = 4567;
-        if (args.length > 0) {
-            port = Integer.parseInt(args[0]);
+        String engineMode = "virtual";
+        String walDirectory = null;
+        int commitBatch = DEFAULT_COMMIT_BATCH;
+        long commitLinger = DEFAULT_COMMIT_LINGER_MILLIS;
+        long expiryWindow = DEFAULT_EXPIRY_MILLIS;
+        long expiryTick = DEFAULT_EXPIRY_TICK_MILLIS;
+        int positional = 0;
+        for (String arg : args) {
+            if (arg.startsWith("--wal=")) {
+                walDirectory = arg.substring("--wal=".length());
+            } else if (arg.startsWith("--commit-batch=")) {
+                commitBatch = Integer.parseInt(arg.substring("--commit-batch=".length()));
+            } else if (arg.startsWith("--commit-linger-ms=")) {
+                commitLinger = Long.parseLong(arg.substring("--commit-linger-ms=".length()));
+            } else if (arg.startsWith("--expiry-ms=")) {
+                expiryWindow = Long.parseLong(arg.substring("--expiry-ms=".length()));
+            } else if (arg.startsWith("--expiry-tick-ms=")) {
+                expiryTick = Long.parseLong(arg.substring("--expiry-tick-ms=".length()));
+            } else if (positional++ == 0) {
+                port = Integer.parseInt(arg);
+            } else {
+                engineMode = arg;
+            }
+        }
+        AggregationServer server = new AggregationServer(port, ConnectionEngine.create(engineMode));
+        if (walDirectory != null) {
+            server.useWriteAheadLog(Paths.get(walDirectory));
         }
-        AggregationServer server = new AggregationServer(port);
+        server.setGroupCommit(commitBatch, commitLinger);
+        server.setExpiry(expiryWindow, expiryTick);
         server.recoverData();
-        Thread janitorThread = new Thread(() -> janitor());
-        janitorThread.start();
         try {
             server.startServer();
         } catch (IOException i) {
@@ -412,19 +1024,26 @@ public class AggregationServer {
     }
 
     /**
-     * Gets the current data storage.
-     * @return The current data storage.
+     * Gets a snapshot of the current data storage.
+     * @return The stations as a JSONObject keyed by station id.
      */
     public JSONObject getDataStorage() {
-        return dataStorage;
+        return stations.toJson();
+    }
+
+    /**
+     * Gets the station store backing this server.
+     * @return The station store.
+     */
+    public StationStore getStations() {
+        return stations;
     }
 
     /**
      * Clears the data storage.
      */
     public void clearDataStorage() {
-        dataStorage = new JSONObject();
-        lastConnectionTime = new JSONObject();
+        stations.clear();
     }
 
     /**
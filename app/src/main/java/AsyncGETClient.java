@@ -0,0 +1,365 @@
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * AsyncGETClient sends GET requests without blocking the caller. Each request runs on
+ * its own virtual thread and returns a CompletableFuture of the response. Connections
+ * are kept alive and pooled per server, so repeated requests skip the TCP handshake.
+ *
+ * Requests can also be hedged across replicas. The request goes to the first replica,
+ * and if no response arrives within the hedge delay it is also sent to the next one,
+ * and so on; the first successful response wins. The hedge delay defaults to the 95th
+ * percentile of recent response times, so only the slowest few percent of requests
+ * cause extra load while a slow replica no longer sets the tail latency.
+ */
+public class AsyncGETClient implements Closeable {
+    private static final long IDLE_MILLIS = 5000;
+    private static final long MIN_SAMPLES_FOR_HEDGE = 20;
+    private static final long DEFAULT_HEDGE_MILLIS = 50;
+    private final int maxIdlePerServer;
+    private final int timeoutMillis;
+    private final RetryPolicy retryPolicy;
+    private final ExecutorService executor = VirtualThreadEngine.newVirtualThreadExecutor(
+            () -> Executors.newCachedThreadPool(AsyncGETClient::daemonThread));
+    private final ScheduledExecutorService hedges = Executors.newSingleThreadScheduledExecutor(AsyncGETClient::daemonThread);
+    private final ConcurrentHashMap<String, ConcurrentLinkedDeque<Connection>> idle = new ConcurrentHashMap<>();
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final AtomicInteger opened = new AtomicInteger();
+
+    /**
+     * A keep-alive connection to one server.
+     */
+    private static class Connection implements Closeable {
+        private final Socket socket;
+        private final InputStream input;
+        private final OutputStream output;
+        private long idleSince;
+
+        Connection(String host, int port, int timeoutMillis) throws IOException {
+            socket = new Socket();
+            try {
+                socket.connect(new InetSocketAddress(host, port), timeoutMillis);
+                socket.setSoTimeout(timeoutMillis);
+                socket.setTcpNoDelay(true);
+                input = new BufferedInputStream(socket.getInputStream());
+                output = new BufferedOutputStream(socket.getOutputStream());
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                System.out.println(e);
+            }
+        }
+    }
+
+    /**
+     * Constructor for AsyncGETClient.
+     * @param maxIdlePerServer The most idle connections kept open per server.
+     * @param timeoutMillis The connect and read timeout of every request.
+     * @param retryPolicy Supplies the circuit breaker of each server.
+     */
+    public AsyncGETClient(int maxIdlePerServer, int timeoutMillis, RetryPolicy retryPolicy) {
+        if (maxIdlePerServer < 0 || timeoutMillis < 1) {
+            throw new IllegalArgumentException("Invalid client settings");
+        }
+        this.maxIdlePerServer = maxIdlePerServer;
+        this.timeoutMillis = timeoutMillis;
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Sends a request to one server on a pooled connection.
+     * @param host The server host.
+     * @param port The server port.
+     * @param request The complete HTTP request.
+     * @return A future completed with the response, or failed with the exception that
+     *         prevented it, including CircuitOpenException while the server is failing.
+     */
+    public CompletableFuture<HttpMessage> send(String host, int port, String request) {
+        CompletableFuture<HttpMessage> response = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                response.complete(exchange(host, port, request.getBytes(StandardCharsets.UTF_8)));
+            } catch (Throwable e) {
+                // Anything else left uncaught here would leave the future pending forever
+                response.completeExceptionally(e);
+            }
+        });
+        return response;
+    }
+
+    /**
+     * Sends a hedged request to several replicas, using the observed 95th percentile
+     * response time as the hedge delay.
+     * @param replicas The replicas, in order of preference.
+     * @param request The complete HTTP request; it must be idempotent.
+     * @return A future completed with the first successful response.
+     */
+    public CompletableFuture<HttpMessage> sendHedged(List<InetSocketAddress> replicas, String request) {
+        return sendHedged(replicas, request, getHedgeDelayMillis());
+    }
+
+    /**
+     * Sends a hedged request to several replicas. A response is successful unless it is
+     * a server error or 429; a failed replica hands over to the next one at once.
+     * @param replicas The replicas, in order of preference.
+     * @param request The complete HTTP request; it must be idempotent.
+     * @param hedgeDelayMillis How long to wait for a replica before also asking the next.
+     * @return A future completed with the first successful response, or failed with the
+     *         last failure if every replica failed.
+     */
+    public CompletableFuture<HttpMessage> sendHedged(List<InetSocketAddress> replicas, String request, long hedgeDelayMillis) {
+        if (replicas.isEmpty()) {
+            throw new IllegalArgumentException("No replicas to send to");
+        }
+        Hedge hedge = new Hedge(new ArrayList<>(replicas), request, hedgeDelayMillis);
+        hedge.next();
+        return hedge.result;
+    }
+
+    /**
+     * Hedge tracks one hedged request: which replicas have been asked and how many
+     * attempts are still outstanding.
+     */
+    private class Hedge {
+        private final List<InetSocketAddress> replicas;
+        private final String request;
+        private final long delayMillis;
+        private final CompletableFuture<HttpMessage> result = new CompletableFuture<>();
+        private int started;
+        private int outstanding;
+        private Throwable lastFailure;
+
+        Hedge(List<InetSocketAddress> replicas, String request, long delayMillis) {
+            this.replicas = replicas;
+            this.request = request;
+            this.delayMillis = delayMillis;
+        }
+
+        /**
+         * Sends the request to the next replica, if any, and schedules the hedge after it.
+         */
+        synchronized void next() {
+            if (result.isDone() || started == replicas.size()) {
+                return;
+            }
+            InetSocketAddress replica = replicas.get(started++);
+            outstanding++;
+            send(replica.getHostString(), replica.getPort(), request).whenComplete(this::onResponse);
+            if (started < replicas.size()) {
+                hedges.schedule(this::next, delayMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        /**
+         * Completes the hedged request with a successful response, or moves on to the
+         * next replica after a failure.
+         * @param response The response, or null on failure.
+         * @param failure The failure, or null on success.
+         */
+        private void onResponse(HttpMessage response, Throwable failure) {
+            int status = 0;
+            if (failure == null) {
+                try {
+                    status = response.getStatusCode();
+                } catch (RuntimeException e) {
+                    failure = new IOException("Malformed status line: " + response.getStartLine(), e);
+                }
+            }
+            if (failure == null && !GETClient.isRetryable(status)) {
+                result.complete(response);
+                return;
+            }
+            synchronized (this) {
+                outstanding--;
+                lastFailure = failure != null ? failure : new IOException("Server error " + status);
+                if (started < replicas.size()) {
+                    next();
+                } else if (outstanding == 0) {
+                    result.completeExceptionally(lastFailure);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the current hedge delay: the 95th percentile of response times once enough
+     * responses have been seen, otherwise a fixed default.
+     * @return The hedge delay in milliseconds.
+     */
+    public long getHedgeDelayMillis() {
+        if (latencies.getCount() < MIN_SAMPLES_FOR_HEDGE) {
+            return DEFAULT_HEDGE_MILLIS;
+        }
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(latencies.getValueAtPercentile(95)));
+    }
+
+    /**
+     * Gets the number of connections opened so far.
+     * @return The number of connections.
+     */
+    public int getOpenedConnections() {
+        return opened.get();
+    }
+
+    /**
+     * Closes every idle connection and stops the client's threads.
+     */
+    @Override
+    public void close() {
+        hedges.shutdownNow();
+        executor.shutdown();
+        for (ConcurrentLinkedDeque<Connection> connections : idle.values()) {
+            Connection connection;
+            while ((connection = connections.poll()) != null) {
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * Sends a request and reads its response, reusing an idle connection if there is
+     * one. A reused connection may have been closed by the server while idle, so a
+     * failure on it is retried once on a new connection.
+     * @param host The server host.
+     * @param port The server port.
+     * @param request The encoded request.
+     * @return The response.
+     * @throws IOException If the circuit is open or the exchange fails.
+     */
+    private HttpMessage exchange(String host, int port, byte[] request) throws IOException {
+        CircuitBreaker breaker = retryPolicy.breaker(host, port);
+        if (!breaker.allowRequest()) {
+            throw new CircuitOpenException(host, port);
+        }
+        String key = host + ":" + port;
+        long start = System.nanoTime();
+        try {
+            Connection connection = takeIdle(key);
+            HttpMessage response = null;
+            if (connection != null) {
+                try {
+                    response = exchange(connection, request);
+                } catch (SocketTimeoutException e) {
+                    // The server is slow rather than gone; asking again would only wait longer
+                    connection.close();
+                    throw e;
+                } catch (IOException e) {
+                    connection.close();
+                    connection = null;
+                }
+            }
+            if (connection == null) {
+                connection = new Connection(host, port, timeoutMillis);
+                opened.incrementAndGet();
+                try {
+                    response = exchange(connection, request);
+                } catch (IOException e) {
+                    connection.close();
+                    throw e;
+                }
+            }
+            if (response.isKeepAlive()) {
+                release(key, connection);
+            } else {
+                connection.close();
+            }
+            if (GETClient.isRetryable(response.getStatusCode())) {
+                breaker.recordFailure();
+            } else {
+                breaker.recordSuccess();
+                latencies.record(System.nanoTime() - start);
+            }
+            return response;
+        } catch (Throwable e) {
+            // Any failure must be recorded, or a half-open breaker would never close again
+            breaker.recordFailure();
+            throw e;
+        }
+    }
+
+    /**
+     * Writes a request on a connection and reads the response.
+     * @param connection The connection.
+     * @param request The encoded request.
+     * @return The response.
+     * @throws IOException If the connection fails, closes before the response or answers
+     *         without a valid status line.
+     */
+    private static HttpMessage exchange(Connection connection, byte[] request) throws IOException {
+        connection.output.write(request);
+        connection.output.flush();
+        HttpMessage response = HttpMessage.readResponse(connection.input);
+        if (response == null) {
+            throw new EOFException("Connection closed by server");
+        }
+        return response;
+    }
+
+    /**
+     * Takes the most recently used idle connection to a server, closing any that have
+     * been idle so long the server has probably closed them.
+     * @param key The server's host:port.
+     * @return The connection, or null if none is available.
+     */
+    private Connection takeIdle(String key) {
+        ConcurrentLinkedDeque<Connection> connections = idle.get(key);
+        if (connections == null) {
+            return null;
+        }
+        Connection connection;
+        while ((connection = connections.pollFirst()) != null) {
+            if (System.currentTimeMillis() - connection.idleSince < IDLE_MILLIS) {
+                return connection;
+            }
+            connection.close();
+        }
+        return null;
+    }
+
+    /**
+     * Returns a connection to its server's idle pool, or closes it if the pool is full.
+     * @param key The server's host:port.
+     * @param connection The connection.
+     */
+    private void release(String key, Connection connection) {
+        ConcurrentLinkedDeque<Connection> connections = idle.computeIfAbsent(key, k -> new ConcurrentLinkedDeque<>());
+        if (connections.size() >= maxIdlePerServer) {
+            connection.close();
+            return;
+        }
+        connection.idleSince = System.currentTimeMillis();
+        connections.addFirst(connection);
+    }
+
+    /**
+     * Creates a daemon thread, so the client never keeps the JVM alive.
+     * @param task The thread's task.
+     * @return The thread.
+     */
+    private static Thread daemonThread(Runnable task) {
+        Thread thread = new Thread(task, "async-get-client");
+        thread.setDaemon(true);
+        return thread;
+    }
+}
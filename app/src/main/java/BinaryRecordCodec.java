@@ -0,0 +1,411 @@
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * BinaryRecordCodec encodes batches of weather records in a compact binary form, an
+ * opt-in alternative to JSON for high-volume feeds, negotiated with the CONTENT_TYPE
+ * media type. Decoding it needs no text parsing at all.
+ *
+ * A message is the magic "WXB1", a dictionary of every distinct string in the batch,
+ * then the records. Each record is a 4-byte presence mask followed by the fields that
+ * are present in a fixed order: the known text fields as dictionary indices and the
+ * known numeric fields as 8-byte IEEE doubles, then any extra fields as pairs of
+ * dictionary indices for the key and the value's JSON text. Above the presence bits,
+ * the mask has a bit per numeric field that was sent as a string, so it is returned as
+ * one. Counts, lengths and indices are unsigned LEB128 varints; all fixed-width values
+ * are big-endian.
+ */
+public final class BinaryRecordCodec {
+    public static final String CONTENT_TYPE = "application/x-weather-binary";
+    static final String[] TEXT_KEYS = {
+        "id", "name", "state", "time_zone", "local_date_time", "local_date_time_full", "cloud", "wind_dir"
+    };
+    static final String[] NUMBER_KEYS = {
+        "lat", "lon", "air_temp", "apparent_t", "dewpt", "press", "rel_hum", "wind_spd_kmh", "wind_spd_kt"
+    };
+    private static final byte[] MAGIC = {'W', 'X', 'B', '1'};
+    private static final int EXTRAS_BIT = 1 << (TEXT_KEYS.length + NUMBER_KEYS.length);
+    private static final int QUOTED_SHIFT = TEXT_KEYS.length + NUMBER_KEYS.length + 1;
+
+    private BinaryRecordCodec() {
+    }
+
+    /**
+     * Checks whether a Content-Type or Accept header selects the binary format.
+     * @param header The header value; may be null.
+     * @return true if the header names CONTENT_TYPE.
+     */
+    public static boolean isBinary(String header) {
+        return header != null && header.toLowerCase().contains(CONTENT_TYPE);
+    }
+
+    /**
+     * Encodes records as one message.
+     * @param records The records.
+     * @return The encoded message.
+     */
+    public static byte[] encode(Collection<WeatherRecord> records) {
+        Encoder encoder = new Encoder();
+        for (WeatherRecord record : records) {
+            record.writeBinary(encoder);
+        }
+        return encoder.toByteArray();
+    }
+
+    /**
+     * Encoder collects records and the strings they use, and assembles the message.
+     */
+    public static final class Encoder {
+        private final HashMap<String, Integer> indices = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+        private final Output records = new Output(256);
+        private int count;
+
+        /**
+         * Appends one record's fields. Absent text fields are null and absent numeric
+         * fields NaN.
+         * @param texts The values of TEXT_KEYS, in order.
+         * @param numbers The values of NUMBER_KEYS, in order.
+         * @param quoted A bit per NUMBER_KEYS entry, in order, set if it was sent as a string.
+         * @param extraKeys The keys of the extra fields.
+         * @param extraValues The values of the extra fields.
+         */
+        void write(String[] texts, double[] numbers, int quoted, String[] extraKeys, Object[] extraValues) {
+            int mask = quoted << QUOTED_SHIFT;
+            for (int i = 0; i < texts.length; i++) {
+                if (texts[i] != null) {
+                    mask |= 1 << i;
+                }
+            }
+            for (int i = 0; i < numbers.length; i++) {
+                if (!Double.isNaN(numbers[i])) {
+                    mask |= 1 << (TEXT_KEYS.length + i);
+                }
+            }
+            if (extraKeys.length > 0) {
+                mask |= EXTRAS_BIT;
+            }
+            records.writeInt(mask);
+            for (String text : texts) {
+                if (text != null) {
+                    records.writeVarint(index(text));
+                }
+            }
+            for (double number : numbers) {
+                if (!Double.isNaN(number)) {
+                    records.writeLong(Double.doubleToRawLongBits(number));
+                }
+            }
+            if (extraKeys.length > 0) {
+                records.writeVarint(extraKeys.length);
+                for (int i = 0; i < extraKeys.length; i++) {
+                    records.writeVarint(index(extraKeys[i]));
+                    records.writeVarint(index(JSONObject.valueToString(extraValues[i])));
+                }
+            }
+            count++;
+        }
+
+        /**
+         * Assembles the message.
+         * @return The encoded message.
+         */
+        public byte[] toByteArray() {
+            Output out = new Output(records.length + strings.size() * 12 + 16);
+            out.write(MAGIC, 0, MAGIC.length);
+            out.writeVarint(strings.size());
+            for (String string : strings) {
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                out.writeVarint(bytes.length);
+                out.write(bytes, 0, bytes.length);
+            }
+            out.writeVarint(count);
+            out.write(records.bytes, 0, records.length);
+            return Arrays.copyOf(out.bytes, out.length);
+        }
+
+        /**
+         * Gets a string's dictionary index, adding it on first use.
+         * @param string The string.
+         * @return The index.
+         */
+        private int index(String string) {
+            Integer index = indices.get(string);
+            if (index == null) {
+                index = strings.size();
+                indices.put(string, index);
+                strings.add(string);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Decodes a message into record builders, in message order.
+     * @param bytes The buffer holding the message.
+     * @param off The offset of the message.
+     * @param len The length of the message.
+     * @return The builders; a record without an id yields a builder without one.
+     * @throws IllegalArgumentException If the message is malformed.
+     */
+    public static List<WeatherRecord.Builder> decode(byte[] bytes, int off, int len) {
+        Input in = new Input(bytes, off, len);
+        String[] dictionary = readHeader(in);
+        int count = in.readEntryCount();
+        List<WeatherRecord.Builder> builders = new ArrayList<>();
+        for (int r = 0; r < count; r++) {
+            WeatherRecord.Builder builder = new WeatherRecord.Builder();
+            int mask = in.readInt();
+            for (int i = 0; i < TEXT_KEYS.length; i++) {
+                if ((mask & (1 << i)) != 0) {
+                    builder.field(TEXT_KEYS[i], in.readString(dictionary));
+                }
+            }
+            for (int i = 0; i < NUMBER_KEYS.length; i++) {
+                if ((mask & (1 << (TEXT_KEYS.length + i))) != 0) {
+                    boolean quoted = (mask & (1 << (QUOTED_SHIFT + i))) != 0;
+                    builder.numberField(NUMBER_KEYS[i], Double.longBitsToDouble(in.readLong()), quoted);
+                }
+            }
+            if ((mask & EXTRAS_BIT) != 0) {
+                int extras = in.readEntryCount();
+                for (int i = 0; i < extras; i++) {
+                    builder.field(in.readString(dictionary), in.readValue(dictionary));
+                }
+            }
+            builders.add(builder);
+        }
+        in.expectEnd();
+        return builders;
+    }
+
+    /**
+     * Decodes a message into the aggregate form of a GET response: one JSON object per
+     * station, keyed by station id. Integral numbers become longs, as in the JSON form.
+     * @param bytes The buffer holding the message.
+     * @param off The offset of the message.
+     * @param len The length of the message.
+     * @return The stations keyed by id.
+     * @throws IllegalArgumentException If the message is malformed.
+     */
+    public static JSONObject decodeAggregate(byte[] bytes, int off, int len) {
+        Input in = new Input(bytes, off, len);
+        String[] dictionary = readHeader(in);
+        int count = in.readEntryCount();
+        JSONObject aggregate = new JSONObject();
+        for (int r = 0; r < count; r++) {
+            JSONObject station = new JSONObject();
+            int mask = in.readInt();
+            for (int i = 0; i < TEXT_KEYS.length; i++) {
+                if ((mask & (1 << i)) != 0) {
+                    station.put(TEXT_KEYS[i], in.readString(dictionary));
+                }
+            }
+            for (int i = 0; i < NUMBER_KEYS.length; i++) {
+                if ((mask & (1 << (TEXT_KEYS.length + i))) != 0) {
+                    double value = Double.longBitsToDouble(in.readLong());
+                    if ((mask & (1 << (QUOTED_SHIFT + i))) != 0) {
+                        station.put(NUMBER_KEYS[i], WeatherRecord.formatNumber(value));
+                    } else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+                        station.put(NUMBER_KEYS[i], (long) value);
+                    } else {
+                        station.put(NUMBER_KEYS[i], value);
+                    }
+                }
+            }
+            if ((mask & EXTRAS_BIT) != 0) {
+                int extras = in.readEntryCount();
+                for (int i = 0; i < extras; i++) {
+                    station.put(in.readString(dictionary), in.readValue(dictionary));
+                }
+            }
+            aggregate.put(station.optString("id"), station);
+        }
+        in.expectEnd();
+        return aggregate;
+    }
+
+    /**
+     * Checks the magic and reads the string dictionary.
+     * @param in The message.
+     * @return The dictionary.
+     */
+    private static String[] readHeader(Input in) {
+        for (byte b : MAGIC) {
+            if (in.readByte() != b) {
+                throw new IllegalArgumentException("Not a binary weather message");
+            }
+        }
+        String[] dictionary = new String[in.readEntryCount()];
+        for (int i = 0; i < dictionary.length; i++) {
+            int length = in.readCount();
+            dictionary[i] = new String(in.bytes, in.take(length), length, StandardCharsets.UTF_8);
+        }
+        return dictionary;
+    }
+
+    /**
+     * Output is a growable big-endian byte buffer.
+     */
+    private static final class Output {
+        private byte[] bytes;
+        private int length;
+
+        Output(int capacity) {
+            bytes = new byte[Math.max(16, capacity)];
+        }
+
+        void write(byte[] source, int off, int len) {
+            ensure(len);
+            System.arraycopy(source, off, bytes, length, len);
+            length += len;
+        }
+
+        void writeVarint(int value) {
+            ensure(5);
+            while ((value & ~0x7f) != 0) {
+                bytes[length++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            bytes[length++] = (byte) value;
+        }
+
+        void writeInt(int value) {
+            ensure(4);
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                bytes[length++] = (byte) (value >>> shift);
+            }
+        }
+
+        void writeLong(long value) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                bytes[length++] = (byte) (value >>> shift);
+            }
+        }
+
+        private void ensure(int extra) {
+            if (length + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(length + extra, bytes.length * 2));
+            }
+        }
+    }
+
+    /**
+     * Input reads a message with bounds checks, reporting the offset of any error.
+     */
+    private static final class Input {
+        private final byte[] bytes;
+        private final int start;
+        private final int end;
+        private int pos;
+
+        Input(byte[] bytes, int off, int len) {
+            this.bytes = bytes;
+            this.start = off;
+            this.end = off + len;
+            this.pos = off;
+        }
+
+        int readByte() {
+            if (pos >= end) {
+                throw error("Truncated message");
+            }
+            return bytes[pos++];
+        }
+
+        /**
+         * Reads a varint that counts or indexes something, at most Integer.MAX_VALUE.
+         */
+        int readCount() {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    if (value < 0) {
+                        throw error("Count out of range");
+                    }
+                    return value;
+                }
+            }
+            throw error("Varint too long");
+        }
+
+        /**
+         * Reads the number of entries that follow. Every entry takes at least one byte,
+         * so a count beyond the remaining bytes is rejected before anything is sized
+         * from it.
+         */
+        int readEntryCount() {
+            int count = readCount();
+            if (count > end - pos) {
+                throw error("Count " + count + " exceeds the remaining " + (end - pos) + " bytes");
+            }
+            return count;
+        }
+
+        int readInt() {
+            int value = 0;
+            for (int i = 0; i < 4; i++) {
+                value = (value << 8) | (readByte() & 0xff);
+            }
+            return value;
+        }
+
+        long readLong() {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (readByte() & 0xff);
+            }
+            return value;
+        }
+
+        String readString(String[] dictionary) {
+            int index = readCount();
+            if (index >= dictionary.length) {
+                throw error("String index " + index + " outside the dictionary");
+            }
+            return dictionary[index];
+        }
+
+        Object readValue(String[] dictionary) {
+            String text = readString(dictionary);
+            try {
+                return new JSONTokener(text).nextValue();
+            } catch (JSONException e) {
+                throw error("Invalid extra value: " + e.getMessage());
+            }
+        }
+
+        /**
+         * Skips a number of bytes.
+         * @return The offset of the first skipped byte.
+         */
+        int take(int length) {
+            if (length > end - pos) {
+                throw error("Truncated message");
+            }
+            int at = pos;
+            pos += length;
+            return at;
+        }
+
+        void expectEnd() {
+            if (pos != end) {
+                throw error("Unexpected data after the last record");
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at byte " + (pos - start));
+        }
+    }
+}
@@ -0,0 +1,114 @@
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * BufferPool recycles byte arrays for request bodies, so steady PUT traffic does not
+ * allocate a fresh body array per request. Buffers come in power-of-two size classes,
+ * each with a fixed number of lock-free slots; a buffer that finds its class full is
+ * left to the garbage collector, and bodies larger than the biggest class are never
+ * pooled.
+ *
+ * A buffer handed out by acquire() is usually longer than asked for, so its users
+ * must track the length they filled.
+ */
+public class BufferPool {
+    private static final int MIN_SHIFT = 10;
+    private static final int MAX_SHIFT = 20;
+    private static final int SLOTS_PER_CLASS = 64;
+    private final AtomicReferenceArray<byte[]>[] classes;
+
+    /**
+     * Constructor for BufferPool, with size classes from 1 KB to 1 MB.
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    public BufferPool() {
+        classes = new AtomicReferenceArray[MAX_SHIFT - MIN_SHIFT + 1];
+        for (int i = 0; i < classes.length; i++) {
+            classes[i] = new AtomicReferenceArray<>(SLOTS_PER_CLASS);
+        }
+    }
+
+    /**
+     * Takes a buffer of at least the given length from the pool, allocating one if the
+     * pool has none to spare.
+     * @param length The minimum length.
+     * @return The buffer, whose contents are undefined.
+     */
+    public byte[] acquire(int length) {
+        int sizeClass = sizeClass(length);
+        if (sizeClass < 0) {
+            return new byte[length];
+        }
+        AtomicReferenceArray<byte[]> slots = classes[sizeClass];
+        int start = startSlot();
+        for (int i = 0; i < SLOTS_PER_CLASS; i++) {
+            int slot = (start + i) & (SLOTS_PER_CLASS - 1);
+            if (slots.get(slot) != null) {
+                byte[] buffer = slots.getAndSet(slot, null);
+                if (buffer != null) {
+                    return buffer;
+                }
+            }
+        }
+        return new byte[1 << (sizeClass + MIN_SHIFT)];
+    }
+
+    /**
+     * Returns a buffer to the pool. The caller must not use it afterwards.
+     * @param buffer A buffer obtained from acquire().
+     */
+    public void release(byte[] buffer) {
+        int sizeClass = sizeClass(buffer.length);
+        if (sizeClass < 0 || buffer.length != 1 << (sizeClass + MIN_SHIFT)) {
+            return;
+        }
+        AtomicReferenceArray<byte[]> slots = classes[sizeClass];
+        int start = startSlot();
+        for (int i = 0; i < SLOTS_PER_CLASS; i++) {
+            int slot = (start + i) & (SLOTS_PER_CLASS - 1);
+            if (slots.get(slot) == null && slots.compareAndSet(slot, null, buffer)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Gets the number of pooled buffers of the size class that holds the given length.
+     * @param length The buffer length.
+     * @return The number of idle buffers of that class, or 0 if the length is not pooled.
+     */
+    public int getIdleCount(int length) {
+        int sizeClass = sizeClass(length);
+        if (sizeClass < 0) {
+            return 0;
+        }
+        int idle = 0;
+        for (int i = 0; i < SLOTS_PER_CLASS; i++) {
+            if (classes[sizeClass].get(i) != null) {
+                idle++;
+            }
+        }
+        return idle;
+    }
+
+    /**
+     * Finds the smallest size class holding the given length.
+     * @param length The length.
+     * @return The class index, or -1 if the length is larger than the biggest class.
+     */
+    private static int sizeClass(int length) {
+        if (length <= 1 << MIN_SHIFT) {
+            return 0;
+        }
+        int shift = 32 - Integer.numberOfLeadingZeros(length - 1);
+        return shift > MAX_SHIFT ? -1 : shift - MIN_SHIFT;
+    }
+
+    /**
+     * Spreads callers over the slots at random so they rarely race for the same one.
+     * @return The slot to start scanning from.
+     */
+    private static int startSlot() {
+        return ThreadLocalRandom.current().nextInt(SLOTS_PER_CLASS);
+    }
+}
@@ -0,0 +1,104 @@
+import java.util.function.LongSupplier;
+
+/**
+ * CircuitBreaker tracks the health of one server so clients stop sending to it while it
+ * is failing. After a number of consecutive failures the circuit opens and requests are
+ * refused without being attempted. Once the open period has passed, a single trial
+ * request is let through: if it succeeds the circuit closes again, otherwise it stays
+ * open for another period.
+ */
+public class CircuitBreaker {
+    /**
+     * The states of a circuit breaker.
+     */
+    public enum State {
+        /** Requests flow normally. */
+        CLOSED,
+        /** Requests are refused until the open period has passed. */
+        OPEN,
+        /** One trial request is in progress; others are refused until it completes. */
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private final LongSupplier nanoTime;
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+
+    /**
+     * Constructor for CircuitBreaker.
+     * @param failureThreshold The number of consecutive failures that opens the circuit.
+     * @param openMillis How long the circuit stays open before a trial request.
+     */
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        this(failureThreshold, openMillis, System::nanoTime);
+    }
+
+    /**
+     * Constructor for CircuitBreaker with a custom time source.
+     * @param failureThreshold The number of consecutive failures that opens the circuit.
+     * @param openMillis How long the circuit stays open before a trial request.
+     * @param nanoTime The monotonic time source, in nanoseconds.
+     */
+    CircuitBreaker(int failureThreshold, long openMillis, LongSupplier nanoTime) {
+        if (failureThreshold < 1 || openMillis < 0) {
+            throw new IllegalArgumentException("Invalid circuit breaker settings");
+        }
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openMillis * 1_000_000L;
+        this.nanoTime = nanoTime;
+    }
+
+    /**
+     * Checks whether a request may be sent now. When the open period has passed, the
+     * first caller is let through as the trial request.
+     * @return true if the request may be sent, false if it must be refused.
+     */
+    public synchronized boolean allowRequest() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (nanoTime.getAsLong() - openedAt >= openNanos) {
+                    state = State.HALF_OPEN;
+                    return true;
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Records a successful request, closing the circuit.
+     */
+    public synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        state = State.CLOSED;
+    }
+
+    /**
+     * Records a failed request. A failed trial request, or reaching the failure
+     * threshold, opens the circuit.
+     */
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            if (state != State.OPEN) {
+                System.out.println("Circuit opened after " + consecutiveFailures + " consecutive failure(s)");
+            }
+            state = State.OPEN;
+            openedAt = nanoTime.getAsLong();
+        }
+    }
+
+    /**
+     * Gets the current state, without starting a trial request.
+     * @return The state.
+     */
+    public synchronized State getState() {
+        return state;
+    }
+}
@@ -0,0 +1,18 @@
+import java.io.IOException;
+
+/**
+ * CircuitOpenException is thrown when a request is refused without being sent because
+ * the server's circuit breaker is open.
+ */
+public class CircuitOpenException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructor for CircuitOpenException.
+     * @param host The server host.
+     * @param port The server port.
+     */
+    public CircuitOpenException(String host, int port) {
+        super("Circuit open for " + host + ":" + port + ", not sending");
+    }
+}
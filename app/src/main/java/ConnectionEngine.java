@@ -0,0 +1,37 @@
+import java.io.IOException;
+
+/**
+ * ConnectionEngine accepts client connections for an AggregationServer and decides
+ * how those connections are multiplexed onto threads.
+ */
+public interface ConnectionEngine {
+
+    /**
+     * Binds to the given port and serves requests until stop() is called.
+     * @param port The port number to listen on.
+     * @param server The AggregationServer that handles each request.
+     * @throws IOException If the listening socket cannot be opened.
+     */
+    void serve(int port, AggregationServer server) throws IOException;
+
+    /**
+     * Stops accepting connections and releases the listening socket.
+     */
+    void stop();
+
+    /**
+     * Creates the engine for the given mode name.
+     * @param mode "virtual" for one virtual thread per connection, "selector" for a non-blocking NIO selector.
+     * @return The matching ConnectionEngine.
+     */
+    static ConnectionEngine create(String mode) {
+        switch (mode.toLowerCase()) {
+            case "virtual":
+                return new VirtualThreadEngine();
+            case "selector":
+                return new SelectorEngine();
+            default:
+                throw new IllegalArgumentException("Unknown connection engine: " + mode);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+
+/**
+ * ContentEncoding negotiates and applies the HTTP content codings the server and the
+ * GET client support: gzip and deflate (zlib format, as HTTP defines it). The identity
+ * coding is represented by null.
+ */
+public final class ContentEncoding {
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+    /** The Accept-Encoding header value the GET client sends. */
+    public static final String ACCEPTED = GZIP + ", " + DEFLATE;
+
+    private ContentEncoding() {
+    }
+
+    /**
+     * Picks the coding for a response from an Accept-Encoding header: the supported
+     * coding with the highest quality value, preferring gzip on a tie. Codings with
+     * q=0 are never chosen, and "*" stands for any coding not listed.
+     * @param acceptEncoding The header value; may be null.
+     * @return GZIP, DEFLATE, or null for no coding.
+     */
+    public static String negotiate(String acceptEncoding) {
+        if (acceptEncoding == null || acceptEncoding.isEmpty()) {
+            return null;
+        }
+        double gzip = -1;
+        double deflate = -1;
+        double any = -1;
+        for (String element : acceptEncoding.split(",")) {
+            String[] parts = element.split(";");
+            String coding = parts[0].trim().toLowerCase();
+            double quality = 1;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=") || parameter.startsWith("Q=")) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            if (coding.equals(GZIP) || coding.equals("x-gzip")) {
+                gzip = quality;
+            } else if (coding.equals(DEFLATE)) {
+                deflate = quality;
+            } else if (coding.equals("*")) {
+                any = quality;
+            }
+        }
+        if (gzip < 0) {
+            gzip = any;
+        }
+        if (deflate < 0) {
+            deflate = any;
+        }
+        if (gzip <= 0 && deflate <= 0) {
+            return null;
+        }
+        return gzip >= deflate ? GZIP : DEFLATE;
+    }
+
+    /**
+     * Encodes a body.
+     * @param body The body.
+     * @param coding GZIP or DEFLATE.
+     * @return The encoded body.
+     */
+    public static byte[] encode(byte[] body, String coding) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 6 + 64);
+        if (GZIP.equals(coding)) {
+            try (GZIPOutputStream gzip = new GZIPOutputStream(out, 8192)) {
+                gzip.write(body);
+            } catch (IOException e) {
+                // Writing to memory does not fail
+                throw new IllegalStateException(e);
+            }
+        } else if (DEFLATE.equals(coding)) {
+            Deflater deflater = new Deflater();
+            try {
+                deflater.setInput(body);
+                deflater.finish();
+                byte[] buffer = new byte[8192];
+                while (!deflater.finished()) {
+                    out.write(buffer, 0, deflater.deflate(buffer));
+                }
+            } finally {
+                deflater.end();
+            }
+        } else {
+            throw new IllegalArgumentException("Unsupported content coding: " + coding);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes a body according to its Content-Encoding header.
+     * @param body The body as received.
+     * @param coding The header value; null or "identity" for an unencoded body.
+     * @return The decoded body.
+     * @throws IOException If the coding is unsupported or the body is corrupt.
+     */
+    public static byte[] decode(byte[] body, String coding) throws IOException {
+        if (coding == null || coding.isEmpty() || coding.equalsIgnoreCase("identity")) {
+            return body;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length * 6 + 64);
+        byte[] buffer = new byte[8192];
+        if (coding.equalsIgnoreCase(GZIP) || coding.equalsIgnoreCase("x-gzip")) {
+            try (InputStream gzip = new GZIPInputStream(new ByteArrayInputStream(body), 8192)) {
+                int n;
+                while ((n = gzip.read(buffer)) > 0) {
+                    out.write(buffer, 0, n);
+                }
+            }
+        } else if (coding.equalsIgnoreCase(DEFLATE)) {
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(body);
+                while (!inflater.finished()) {
+                    int n = inflater.inflate(buffer);
+                    if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new IOException("Truncated deflate body");
+                    }
+                    out.write(buffer, 0, n);
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt deflate body", e);
+            } finally {
+                inflater.end();
+            }
+        } else {
+            throw new IOException("Unsupported content coding: " + coding);
+        }
+        return out.toByteArray();
+    }
+}
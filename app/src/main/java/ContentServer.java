@@ -1,10 +1,28 @@
 import java.io.*;
 import java.net.*;
+import java.nio.charset.StandardCharsets;
+import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * ContentServer class for handling weather data transmission to multiple servers.
@@ -21,6 +39,20 @@ public class ContentServer {
     private boolean testMode = false;
     private static final CopyOnWriteArrayList<ContentServer> serverInstances = new CopyOnWriteArrayList<>();
     private static final int MAX_SERVERS = 3;
+    private static final int BULK_BATCH_SIZE = 1000;
+    private static final int MAX_IN_FLIGHT = 16;
+    private static final int STREAM_BATCH_SIZE = 500;
+    private static final int HEARTBEAT_BATCH_SIZE = 10000;
+    private static final long DEFAULT_HEARTBEAT_MILLIS = 10000;
+    private static final long DEFAULT_SERVER_DEADLINE_MILLIS = 30000;
+    private static final ExecutorService FAN_OUT = VirtualThreadEngine.newVirtualThreadExecutor(
+            () -> Executors.newCachedThreadPool(ContentServer::daemonThread));
+    private static final ScheduledExecutorService DEADLINES = Executors.newSingleThreadScheduledExecutor(ContentServer::daemonThread);
+    private static final Set<Future<ContentServer>> pendingSends = ConcurrentHashMap.newKeySet();
+    private static volatile int writeQuorum = 0;
+    private static volatile long serverDeadlineMillis = DEFAULT_SERVER_DEADLINE_MILLIS;
+    private static volatile RetryPolicy retryPolicy = new RetryPolicy();
+    private static volatile boolean binary = false;
 
     /**
      * Reads JSON data from a file and returns it as a list of strings.
@@ -28,52 +60,40 @@ public class ContentServer {
      * @throws IOException if there's an error reading the file or if the file format is invalid
      */
     private List<String> readFile() throws IOException {
+        List<String> resultList = new ArrayList<>();
         try {
-            JSONObject currentData = new JSONObject();
-            List<JSONObject> resultList = new ArrayList<>();
-            try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    // Skip empty lines and brackets
-                    line = line.trim();
-                    if (line.isEmpty() || line.equals("{") || line.equals("}")) continue;
-
-                    // Remove trailing comma if present
-                    if (line.endsWith(",")) {
-                        line = line.substring(0, line.length() - 1);
-                    }
-
-                    // Split the line into key and value
-                    String[] tokens = line.split(":", 2);
-                    if (tokens.length < 2) {
-                        continue;
-                    }
-
-                    String key = tokens[0].replaceAll("\"", "").trim();
-                    String value = tokens[1].replaceAll("\"", "").trim();
-
-                    // Start a new JSON object when a new ID is encountered
-                    if (key.equalsIgnoreCase("id") && !currentData.isEmpty()) {
-                        resultList.add(new JSONObject(currentData.toString()));
-                        currentData = new JSONObject();
-                    }
-
-                    currentData.put(key, value);
-                }
-
-                // Add the last JSON object if not empty
-                if (!currentData.isEmpty()) {
-                    resultList.add(new JSONObject(currentData.toString()));
-                }
-
-                // Convert JSONObjects to strings
-                return resultList.stream()
-                    .map(JSONObject::toString)
-                    .collect(Collectors.toList());
-            }
+            new FeedReader().read(Paths.get(filePath), record -> resultList.add(record.toString()));
         } catch (Exception e) {
             throw new IOException("Invalid file format", e);
         }
+        return resultList;
+    }
+
+    /**
+     * Builds the head of a PUT request; the JSON body, one record or an array of them,
+     * follows it directly.
+     * @param contentLength The length of the JSON body in bytes
+     * @param lamport The Lamport clock value to send
+     * @return The encoded request line and headers, including the blank line
+     */
+    static byte[] buildPutHead(int contentLength, long lamport) {
+        return buildPutHead(contentLength, lamport, "application/json");
+    }
+
+    /**
+     * Encodes the head of a PUT request with the given body type.
+     * @param contentLength The length of the encoded body
+     * @param lamport The Lamport time to send
+     * @param contentType The media type of the body
+     * @return The UTF-8 encoded request line and headers
+     */
+    static byte[] buildPutHead(int contentLength, long lamport, String contentType) {
+        String head = "PUT /weather.json HTTP/1.1\r\n" +
+                "Content-Type: " + contentType + "\r\n" +
+                "Content-Length: " + contentLength + "\r\n" +
+                "Lamport-Clock: " + lamport + "\r\n" +
+                "\r\n";
+        return head.getBytes(StandardCharsets.UTF_8);
     }
 
     /**
@@ -88,7 +108,12 @@ public class ContentServer {
     }
 
     /**
-     * Sends a list of JSON objects to the server.
+     * Sends a list of JSON objects to the server as bulk PUTs of up to BULK_BATCH_SIZE
+     * records each. The batches are pipelined over one persistent connection with up to
+     * MAX_IN_FLIGHT requests awaiting a response, so the upload takes about one round
+     * trip plus the server's processing time. Batches that fail are sent again on a new
+     * connection as the retry policy allows, after a jittered exponential backoff. While
+     * the server's circuit breaker is open nothing is sent and the call fails at once.
      * @param jsonList List of JSON objects to be sent
      * @throws IOException if there's an error in sending data or connecting to the server
      */
@@ -98,93 +123,284 @@ public class ContentServer {
             return;
         }
 
-        int length = jsonList.size();
+        // Skip entries with invalid IDs
+        List<JSONObject> valid = new ArrayList<>();
+        for (JSONObject json : jsonList) {
+            if (json.optString("id").length() < 2) {
+                System.out.println("Invalid entry, id is empty");
+            } else {
+                valid.add(json);
+            }
+        }
+        List<List<JSONObject>> pending = new ArrayList<>();
+        for (int from = 0; from < valid.size(); from += BULK_BATCH_SIZE) {
+            pending.add(valid.subList(from, Math.min(from + BULK_BATCH_SIZE, valid.size())));
+        }
+
+        RetryPolicy policy = retryPolicy;
+        CircuitBreaker breaker = policy.breaker(address, port);
+        policy.recordRequest();
         int retries = 0;
+        while (!pending.isEmpty()) {
+            List<List<JSONObject>> failed;
+            try {
+                failed = sendPending(breaker, pending);
+            } catch (IOException e) {
+                // Handle connection failures
+                System.out.println("Connection failed: " + e.getMessage());
+                if (testMode) {
+                    System.out.println("Test mode: Continuing despite connection failure");
+                    return;
+                }
+                if (e instanceof CircuitOpenException) {
+                    throw e;
+                }
+                failed = pending;
+            }
+            if (!failed.isEmpty()) {
+                if (!policy.awaitRetry(retries)) {
+                    System.out.println("Connection failed after " + retries + " retries");
+                    throw new IOException("Connection failed after " + retries + " retries");
+                }
+                retries++;
+            }
+            pending = failed;
+        }
+    }
+
+    /**
+     * Sends the pending batches over a new connection once, reporting the outcome to
+     * the server's circuit breaker.
+     * @param breaker The server's circuit breaker
+     * @param pending The batches to send
+     * @return The batches that were not accepted
+     * @throws IOException if the circuit is open or the connection cannot be established
+     */
+    private List<List<JSONObject>> sendPending(CircuitBreaker breaker, List<List<JSONObject>> pending) throws IOException {
+        if (!breaker.allowRequest()) {
+            throw new CircuitOpenException(address, port);
+        }
+        List<List<JSONObject>> failed = null;
+        try (PipelinedSender sender = new PipelinedSender(address, port, MAX_IN_FLIGHT, 5000)) {
+            System.out.println("Connected");
+            failed = sendBatches(sender, pending);
+        } finally {
+            if (failed != null && failed.isEmpty()) {
+                breaker.recordSuccess();
+            } else {
+                breaker.recordFailure();
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * Pipelines bulk PUTs of the given batches over a sender and collects their responses.
+     * @param sender The connected sender
+     * @param batches The batches to send, one request each
+     * @return The batches that were not accepted and should be sent again
+     */
+    private List<List<JSONObject>> sendBatches(PipelinedSender sender, List<List<JSONObject>> batches) {
+        List<CompletableFuture<HttpMessage>> responses = new ArrayList<>();
+        for (List<JSONObject> batch : batches) {
+            try {
+                // Construct the bulk PUT request with Lamport clock
+                responses.add(sender.send(buildBulkRequest(batch)));
+            } catch (IOException e) {
+                responses.add(CompletableFuture.failedFuture(e));
+            }
+        }
+
+        List<List<JSONObject>> failed = new ArrayList<>();
+        for (int i = 0; i < batches.size(); i++) {
+            try {
+                if (!acceptResponse(responses.get(i).get())) {
+                    failed.add(batches.get(i));
+                }
+            } catch (ExecutionException | NumberFormatException e) {
+                System.out.println("PUT failed: " + (e.getCause() != null ? e.getCause() : e));
+                failed.add(batches.get(i));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failed.addAll(batches.subList(i, batches.size()));
+                break;
+            }
+        }
+        return failed;
+    }
 
-        for (int i = 0; i < length; i++) {
-            try (Socket socket = new Socket(address, port)) {
-                // Set socket timeout to 5 seconds
-                socket.setSoTimeout(5000);
-                System.out.println("Connected");
+    /**
+     * Processes the response to a bulk PUT: updates the Lamport clock from it and
+     * reports the records the server rejected.
+     * @param response The response
+     * @return true if the batch was accepted, false if it should be sent again
+     * @throws NumberFormatException if the Lamport-Clock header is not a number
+     */
+    private static boolean acceptResponse(HttpMessage response) {
+        // Update Lamport clock based on server response
+        String lamport = response.getHeader("Lamport-Clock");
+        if (lamport != null) {
+            clock.log("ContentServer: receive response", clock.update(Long.parseLong(lamport)));
+        }
 
-                JSONObject currentJSON = jsonList.get(i);
-                clock.tick();
-                clock.log("ContentServer: sending PUT");
+        // Retry the batch if the server didn't respond with 200 or 201
+        int returnCode = response.getStatusCode();
+        if (returnCode != 200 && returnCode != 201) {
+            System.out.println("Server responded with " + returnCode + ", will retry");
+            return false;
+        }
+        reportRejected(response);
+        return true;
+    }
 
-                try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
-                     BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()))) {
+    /**
+     * Encodes a bulk PUT request with the next Lamport time.
+     * @param batch The records to send
+     * @return The complete request, head and body
+     */
+    private static byte[] buildBulkRequest(List<JSONObject> batch) {
+        boolean sendBinary = binary;
+        byte[] body = sendBinary ? buildBinaryBody(batch) : buildBulkBody(batch);
+        long lamport = clock.tick();
+        clock.log("ContentServer: sending PUT", lamport);
+        byte[] head = buildPutHead(body.length, lamport, sendBinary ? BinaryRecordCodec.CONTENT_TYPE : "application/json");
+        byte[] request = Arrays.copyOf(head, head.length + body.length);
+        System.arraycopy(body, 0, request, head.length, body.length);
+        return request;
+    }
 
-                    // Skip entries with invalid IDs
-                    if (currentJSON.getString("id").length() < 2) {
-                        System.out.println("Invalid entry, id is empty");
-                        continue;
-                    }
+    /**
+     * Encodes records as the JSON array body of a bulk PUT.
+     * @param batch The records to send
+     * @return The UTF-8 encoded array
+     */
+    static byte[] buildBulkBody(List<JSONObject> batch) {
+        StringBuilder body = new StringBuilder(batch.size() * 320);
+        body.append('[');
+        for (int i = 0; i < batch.size(); i++) {
+            if (i > 0) {
+                body.append(',');
+            }
+            body.append(batch.get(i).toString());
+        }
+        body.append(']');
+        return body.toString().getBytes(StandardCharsets.UTF_8);
+    }
 
-                    // Construct the PUT request with Lamport clock
-                    String request = "PUT /weather.json HTTP/1.1\r\n" +
-                            "Content-Type: application/json\r\n" +
-                            "Content-Length: " + currentJSON.toString().length() + "\r\n" +
-                            "Lamport-Clock: " + clock.getValue() + "\r\n";
-                    writer.write(request);
-                    writer.write(currentJSON.toString());
-                    writer.write("\r\n");
-                    writer.flush();
-
-                    // Wait for 1 second before reading response
-                    Thread.sleep(1000);
-
-                    // Read the response from the server
-                    String ret = reader.readLine();
-                    String[] split = ret.trim().split(" ", 3);
-                    int returnCode = Integer.parseInt(split[1]);
-
-                    // Update Lamport clock based on server response
-                    while ((ret = reader.readLine()) != null && !ret.isEmpty()) {
-                        if (ret.startsWith("Lamport-Clock:")) {
-                            String[] tokens = ret.split(":", 2);
-                            clock.update(Integer.parseInt(tokens[1].trim()));
-                            clock.log("ContentServer: receive response");
-                        }
-                    }
+    /**
+     * Encodes records as the binary body of a bulk PUT. Records without an id cannot
+     * be encoded and are reported and skipped here, as the server would reject them.
+     * @param batch The records to send
+     * @return The encoded message
+     */
+    static byte[] buildBinaryBody(List<JSONObject> batch) {
+        BinaryRecordCodec.Encoder encoder = new BinaryRecordCodec.Encoder();
+        for (JSONObject json : batch) {
+            try {
+                WeatherRecord.fromJson(json, 0).writeBinary(encoder);
+            } catch (IllegalArgumentException e) {
+                System.out.println("Skipping record: " + e.getMessage());
+            }
+        }
+        return encoder.toByteArray();
+    }
 
-                    // Retry if the server didn't respond with 200 or 201
-                    if (returnCode != 200 && returnCode != 201) {
-                        i--;
-                        Thread.sleep(1000);
-                    }
-                } catch (IOException | InterruptedException e) {
-                    // Handle exceptions and retry if necessary
-                    i--;
-                    retries++;
-                    if (retries > 3) {
-                        System.out.println("Connection failed after 3 retries");
-                        throw new IOException("Connection failed after 3 retries", e);
-                    }
-                    try {
-                        Thread.sleep(1000);
-                    } catch (InterruptedException e1) {
-                        Thread.currentThread().interrupt();
-                    }
+    /**
+     * Prints the records a bulk PUT response reports as rejected. They are not retried,
+     * since the server would reject them again.
+     * @param response The bulk PUT response
+     */
+    private static void reportRejected(HttpMessage response) {
+        try {
+            JSONObject summary = new JSONObject(response.getBodyAsString());
+            if (summary.optInt("failed") == 0) {
+                return;
+            }
+            for (Object entry : summary.getJSONArray("results")) {
+                JSONObject result = (JSONObject) entry;
+                if (result.getInt("status") >= 400) {
+                    System.out.println("Server rejected record " + result.optString("id", "#" + result.getInt("index"))
+                            + ": " + result.optString("error"));
                 }
-            } catch (IOException e) {
-                // Handle connection failures
-                System.out.println("Connection failed: " + e.getMessage());
-                if (testMode) {
-                    System.out.println("Test mode: Continuing despite connection failure");
-                    continue;
+            }
+        } catch (JSONException | ClassCastException e) {
+            System.out.println("Unexpected bulk PUT response: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Sends heartbeats for stations whose records have not changed, so the server keeps
+     * them without the records being sent again. The ids are pipelined over one
+     * connection in requests of up to HEARTBEAT_BATCH_SIZE ids.
+     * @param ids The station ids
+     * @return The ids the server no longer has, which must be sent in full
+     * @throws IOException if the connection fails or a heartbeat is refused
+     */
+    public List<String> sendHeartbeat(List<String> ids) throws IOException {
+        CircuitBreaker breaker = retryPolicy.breaker(address, port);
+        if (!breaker.allowRequest()) {
+            throw new CircuitOpenException(address, port);
+        }
+        List<String> missing = new ArrayList<>();
+        boolean succeeded = false;
+        try (PipelinedSender sender = new PipelinedSender(address, port, MAX_IN_FLIGHT, 5000)) {
+            List<CompletableFuture<HttpMessage>> responses = new ArrayList<>();
+            for (int from = 0; from < ids.size(); from += HEARTBEAT_BATCH_SIZE) {
+                List<String> batch = ids.subList(from, Math.min(from + HEARTBEAT_BATCH_SIZE, ids.size()));
+                byte[] body = new JSONArray(batch).toString().getBytes(StandardCharsets.UTF_8);
+                long lamport = clock.tick();
+                clock.log("ContentServer: sending heartbeat", lamport);
+                byte[] head = ("PUT /heartbeat HTTP/1.1\r\n" +
+                        "Content-Type: application/json\r\n" +
+                        "Content-Length: " + body.length + "\r\n" +
+                        "Lamport-Clock: " + lamport + "\r\n" +
+                        "\r\n").getBytes(StandardCharsets.UTF_8);
+                byte[] request = Arrays.copyOf(head, head.length + body.length);
+                System.arraycopy(body, 0, request, head.length, body.length);
+                responses.add(sender.send(request));
+            }
+            for (CompletableFuture<HttpMessage> pending : responses) {
+                HttpMessage response = pending.get();
+                String lamport = response.getHeader("Lamport-Clock");
+                if (lamport != null) {
+                    clock.log("ContentServer: receive heartbeat response", clock.update(Long.parseLong(lamport)));
                 }
-                retries++;
-                if (retries > 3) {
-                    throw new IOException("Connection failed after 3 retries", e);
+                if (response.getStatusCode() != 200) {
+                    throw new IOException("Server responded to heartbeat with " + response.getStatusCode());
                 }
-                i--;
-                try {
-                    Thread.sleep(1000);
-                } catch (InterruptedException ie) {
-                    Thread.currentThread().interrupt();
+                JSONArray absent = new JSONObject(response.getBodyAsString()).getJSONArray("missing");
+                for (int i = 0; i < absent.length(); i++) {
+                    missing.add(absent.getString(i));
                 }
             }
+            succeeded = true;
+        } catch (ExecutionException e) {
+            throw new IOException("Heartbeat failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for heartbeat responses");
+        } catch (JSONException | NumberFormatException e) {
+            throw new IOException("Unexpected heartbeat response: " + e.getMessage());
+        } finally {
+            // Every exit must report, or a half-open breaker would never be decided
+            if (succeeded) {
+                breaker.recordSuccess();
+            } else {
+                breaker.recordFailure();
+            }
         }
+        return missing;
+    }
+
+    /**
+     * Creates a daemon thread, so fan-out threads never keep the JVM alive.
+     * @param task The thread's task
+     * @return The thread
+     */
+    private static Thread daemonThread(Runnable task) {
+        Thread thread = new Thread(task, "content-server-fan-out");
+        thread.setDaemon(true);
+        return thread;
     }
 
     /**
@@ -220,19 +436,171 @@ public class ContentServer {
      * @throws IOException if there's an error reading the file or sending data
      */
     public void sendData() throws IOException {
-        List<String> jsonStrings = readFile();
-        if (jsonStrings != null && !jsonStrings.isEmpty()) {
-            ArrayList<JSONObject> jsonList = new ArrayList<>();
-            for (String jsonString : jsonStrings) {
+        ArrayList<JSONObject> jsonList = new ArrayList<>();
+        try {
+            new FeedReader().read(Paths.get(filePath), jsonList::add);
+        } catch (Exception e) {
+            throw new IOException("Invalid file format", e);
+        }
+        if (jsonList.isEmpty()) {
+            throw new IOException("No valid JSON data read from file.");
+        }
+        sendJsons(jsonList);
+    }
+
+    /**
+     * Streams the file to the server: records are sent in bulk batches of
+     * STREAM_BATCH_SIZE as soon as they are parsed from the memory-mapped file, with up
+     * to MAX_IN_FLIGHT batches awaiting a response. Parsing waits while the window is
+     * full, so memory use is bounded whatever the size of the file. Batches that fail
+     * are sent again once the file has been read.
+     * @return The number of records read from the file
+     * @throws IOException if the file cannot be read or the data cannot be sent
+     */
+    public long streamData() throws IOException {
+        long records;
+        ArrayList<JSONObject> failed;
+        try (BatchStream stream = new BatchStream()) {
+            records = new FeedReader().read(Paths.get(filePath), stream::add);
+            stream.finish();
+            failed = stream.failed;
+        }
+        if (!failed.isEmpty()) {
+            System.out.println("Resending " + failed.size() + " records");
+            sendJsons(failed);
+        }
+        return records;
+    }
+
+    /**
+     * BatchStream collects streamed records into batches and pipelines each one as soon
+     * as it is full, keeping every unanswered batch so it can be resent if it fails.
+     */
+    private class BatchStream implements Closeable {
+        private final ArrayDeque<List<JSONObject>> sentBatches = new ArrayDeque<>();
+        private final ArrayDeque<CompletableFuture<HttpMessage>> responses = new ArrayDeque<>();
+        private final ArrayList<JSONObject> failed = new ArrayList<>();
+        private List<JSONObject> batch = new ArrayList<>(STREAM_BATCH_SIZE);
+        private final RetryPolicy policy = retryPolicy;
+        private final CircuitBreaker breaker = policy.breaker(address, port);
+        private PipelinedSender sender;
+        private int retries;
+
+        /**
+         * Constructor for BatchStream; the stream counts as one request against the retry budget.
+         */
+        BatchStream() {
+            policy.recordRequest();
+        }
+
+        /**
+         * Adds a parsed record, sending the batch once it is full.
+         * @param record The record
+         * @throws IOException if the server cannot be reached
+         */
+        void add(JSONObject record) throws IOException {
+            // Skip entries with invalid IDs
+            if (record.optString("id").length() < 2) {
+                System.out.println("Invalid entry, id is empty");
+                return;
+            }
+            batch.add(record);
+            if (batch.size() >= STREAM_BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        /**
+         * Sends the last partial batch and waits for every response.
+         * @throws IOException if the server cannot be reached
+         */
+        void finish() throws IOException {
+            flush();
+            while (!responses.isEmpty()) {
+                collect(true);
+            }
+        }
+
+        /**
+         * Sends the current batch, connecting first if needed.
+         * @throws IOException if the server cannot be reached within the retry policy
+         */
+        private void flush() throws IOException {
+            if (batch.isEmpty()) {
+                return;
+            }
+            while (sender == null) {
+                if (!breaker.allowRequest()) {
+                    throw new CircuitOpenException(address, port);
+                }
                 try {
-                    jsonList.add(new JSONObject(jsonString));
-                } catch (Exception e) {
-                    throw new IOException("Invalid JSON data in file", e);
+                    sender = new PipelinedSender(address, port, MAX_IN_FLIGHT, 5000);
+                    System.out.println("Connected");
+                } catch (IOException e) {
+                    System.out.println("Connection failed: " + e.getMessage());
+                    breaker.recordFailure();
+                    if (!policy.awaitRetry(retries)) {
+                        throw new IOException("Connection failed after " + retries + " retries", e);
+                    }
+                    retries++;
                 }
             }
-            sendJsons(jsonList);
-        } else {
-            throw new IOException("No valid JSON data read from file.");
+            List<JSONObject> sending = batch;
+            batch = new ArrayList<>(STREAM_BATCH_SIZE);
+            CompletableFuture<HttpMessage> response;
+            try {
+                response = sender.send(buildBulkRequest(sending));
+            } catch (IOException e) {
+                // The connection is gone; reconnect for the next batch
+                response = CompletableFuture.failedFuture(e);
+                sender.close();
+                sender = null;
+            }
+            sentBatches.add(sending);
+            responses.add(response);
+            while (!responses.isEmpty() && responses.peek().isDone()) {
+                collect(false);
+            }
+        }
+
+        /**
+         * Takes the oldest outstanding response, keeping its batch for resending if it failed.
+         * @param wait Whether to wait for the response to arrive
+         * @throws IOException if interrupted while waiting
+         */
+        private void collect(boolean wait) throws IOException {
+            List<JSONObject> sent = sentBatches.poll();
+            CompletableFuture<HttpMessage> response = responses.poll();
+            try {
+                if (acceptResponse(wait ? response.get() : response.getNow(null))) {
+                    breaker.recordSuccess();
+                } else {
+                    breaker.recordFailure();
+                    failed.addAll(sent);
+                }
+            } catch (ExecutionException | NumberFormatException e) {
+                System.out.println("PUT failed: " + (e.getCause() != null ? e.getCause() : e));
+                breaker.recordFailure();
+                failed.addAll(sent);
+            } catch (CompletionException e) {
+                System.out.println("PUT failed: " + e.getCause());
+                breaker.recordFailure();
+                failed.addAll(sent);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                breaker.recordFailure();
+                throw new InterruptedIOException("Interrupted while waiting for responses");
+            }
+        }
+
+        /**
+         * Closes the connection.
+         */
+        @Override
+        public void close() {
+            if (sender != null) {
+                sender.close();
+            }
         }
     }
 
@@ -255,34 +623,174 @@ public class ContentServer {
     }
 
     /**
-     * Sends data to all registered server instances.
+     * Sets the retry policy used for every server, replacing its circuit breakers.
+     * @param policy The retry policy
+     */
+    public static void setRetryPolicy(RetryPolicy policy) {
+        retryPolicy = policy;
+    }
+
+    /**
+     * Sets whether bulk PUTs are sent in the binary format instead of JSON.
+     * @param enabled true to send BinaryRecordCodec.CONTENT_TYPE bodies
+     */
+    public static void setBinary(boolean enabled) {
+        binary = enabled;
+    }
+
+    /**
+     * Sets how many servers must acknowledge a fan-out before sendDataToAllServers returns.
+     * @param quorum The write quorum, or 0 to wait for every server and fail only if all fail
+     */
+    public static void setWriteQuorum(int quorum) {
+        if (quorum < 0) {
+            throw new IllegalArgumentException("Invalid write quorum: " + quorum);
+        }
+        writeQuorum = quorum;
+    }
+
+    /**
+     * Sets how long each server has to accept a fan-out before its send is cancelled.
+     * @param deadlineMillis The per-server deadline in milliseconds
+     */
+    public static void setServerDeadlineMillis(long deadlineMillis) {
+        if (deadlineMillis <= 0) {
+            throw new IllegalArgumentException("Invalid server deadline: " + deadlineMillis);
+        }
+        serverDeadlineMillis = deadlineMillis;
+    }
+
+    /**
+     * Sends data to all registered server instances concurrently, each on its own
+     * virtual thread and cancelled if it has not finished by the per-server deadline.
+     *
+     * With a write quorum W, this returns as soon as W servers have acknowledged the
+     * data, and the remaining sends finish in the background; it fails as soon as W
+     * acknowledgements are no longer possible. Without a quorum it waits for every
+     * server and fails only if all of them failed.
      * @param jsonList List of JSON objects to be sent to all servers
-     * @throws IOException if there's an error sending data to all servers
+     * @throws IOException if the quorum was not reached, or every server failed
      */
     public static void sendDataToAllServers(List<JSONObject> jsonList) throws IOException {
-        int failedServers = 0;
-        IOException lastException = null;
+        fanOut(server -> server.sendJsons(new ArrayList<>(jsonList)));
+    }
 
-        for (ContentServer server : serverInstances) {
+    /**
+     * Streams each server's feed file to it, all servers concurrently, with the same
+     * deadlines and write quorum as sendDataToAllServers.
+     * @throws IOException if the quorum was not reached, or every server failed
+     */
+    public static void streamDataToAllServers() throws IOException {
+        fanOut(ContentServer::streamData);
+    }
+
+    /**
+     * Upload is the work done for one server during a fan-out.
+     */
+    private interface Upload {
+        /**
+         * Sends the data to one server.
+         * @param server The server
+         * @throws Exception if the server did not accept the data
+         */
+        void send(ContentServer server) throws Exception;
+    }
+
+    /**
+     * Runs an upload against every registered server concurrently and waits for the
+     * write quorum, or for all servers if no quorum is set.
+     * @param upload The upload to run for each server
+     * @throws IOException if the quorum was not reached, or every server failed
+     */
+    private static void fanOut(Upload upload) throws IOException {
+        List<ContentServer> servers = new ArrayList<>(serverInstances);
+        if (servers.isEmpty()) {
+            return;
+        }
+        int quorum = Math.min(writeQuorum, servers.size());
+        long deadlineMillis = serverDeadlineMillis;
+        pendingSends.removeIf(Future::isDone);
+        ExecutorCompletionService<ContentServer> completion = new ExecutorCompletionService<>(FAN_OUT);
+        for (ContentServer server : servers) {
+            Future<ContentServer> send = completion.submit(() -> {
+                upload.send(server);
+                return server;
+            });
+            pendingSends.add(send);
+            DEADLINES.schedule(() -> send.cancel(true), deadlineMillis, TimeUnit.MILLISECONDS);
+        }
+
+        int acknowledged = 0;
+        int failedServers = 0;
+        Exception lastException = null;
+        while (acknowledged + failedServers < servers.size()) {
+            if (quorum > 0 && (acknowledged >= quorum || servers.size() - failedServers < quorum)) {
+                break;
+            }
+            Future<ContentServer> done;
             try {
-                server.sendJsons(new ArrayList<>(jsonList));
-            } catch (IOException e) {
-                System.err.println("Failed to send data to server: " + e.getMessage());
+                done = completion.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for servers");
+            }
+            pendingSends.remove(done);
+            try {
+                done.get();
+                acknowledged++;
+            } catch (ExecutionException e) {
+                System.err.println("Failed to send data to server: " + e.getCause().getMessage());
+                failedServers++;
+                lastException = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            } catch (CancellationException e) {
+                System.err.println("Server did not respond within " + deadlineMillis + " ms");
                 failedServers++;
                 lastException = e;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for servers");
             }
         }
-        
-        if (failedServers == serverInstances.size() && !serverInstances.isEmpty()) {
+
+        if (quorum > 0) {
+            if (acknowledged < quorum) {
+                throw new IOException("Write quorum not reached: " + acknowledged + " of " + quorum + " servers acknowledged", lastException);
+            }
+            int stragglers = servers.size() - acknowledged - failedServers;
+            if (stragglers > 0) {
+                System.out.println("Write quorum reached, " + stragglers + " server(s) still updating in the background");
+            }
+        } else if (failedServers == servers.size()) {
             throw new IOException("All servers failed to process the request", lastException);
         } else if (failedServers > 0) {
             System.err.println("Failed to send data to " + failedServers + " server(s)");
         }
     }
 
+    /**
+     * Waits for sends still running in the background after a write quorum was reached.
+     * Each of them ends by its per-server deadline at the latest.
+     */
+    public static void awaitPendingSends() {
+        for (Future<ContentServer> send : pendingSends) {
+            try {
+                send.get();
+            } catch (ExecutionException | CancellationException e) {
+                System.err.println("Background send failed: " + (e.getCause() != null ? e.getCause().getMessage() : "deadline passed"));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            pendingSends.remove(send);
+        }
+    }
+
     /**
      * Main method to run the ContentServer application.
-     * @param args Command-line arguments: [address] [filepath]
+     * @param args Command-line arguments: [address] [filepath] [--stream] [--quorum=W] [--deadline-ms=n]
+     *             [--watch] [--heartbeat-ms=n] [--binary], where --stream sends records while the file is
+     *             still being parsed, --watch keeps running, sending changed records and heartbeats,
+     *             and --binary sends bulk PUTs in the compact binary format
      */
     public static void main(String[] args) {
         if (args.length < 2) {
@@ -311,20 +819,86 @@ public class ContentServer {
             return;
         }
 
+        boolean stream = false;
+        boolean watch = false;
+        long heartbeatMillis = DEFAULT_HEARTBEAT_MILLIS;
+        try {
+            for (int i = 2; i < args.length; i++) {
+                if (args[i].equals("--stream")) {
+                    stream = true;
+                } else if (args[i].equals("--binary")) {
+                    setBinary(true);
+                } else if (args[i].equals("--watch")) {
+                    watch = true;
+                } else if (args[i].startsWith("--heartbeat-ms=")) {
+                    heartbeatMillis = Long.parseLong(args[i].substring("--heartbeat-ms=".length()));
+                } else if (args[i].startsWith("--quorum=")) {
+                    setWriteQuorum(Integer.parseInt(args[i].substring("--quorum=".length())));
+                } else if (args[i].startsWith("--deadline-ms=")) {
+                    setServerDeadlineMillis(Long.parseLong(args[i].substring("--deadline-ms=".length())));
+                } else {
+                    System.out.println("Unknown option: " + args[i]);
+                    return;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.out.println("Invalid option: " + e.getMessage());
+            return;
+        }
+
         for (int i = 0; i < MAX_SERVERS; i++) {
             ContentServer server = new ContentServer(address, port + i, filepath);
             addServerInstance(server);
         }
 
+        if (watch) {
+            watchAll(heartbeatMillis);
+            return;
+        }
         try {
-            List<String> jsonStrings = serverInstances.get(0).readFile();
-            List<JSONObject> jsonList = jsonStrings.stream()
-                .map(JSONObject::new)
-                .collect(Collectors.toList());
-            sendDataToAllServers(jsonList);
+            if (stream) {
+                streamDataToAllServers();
+            } else {
+                List<String> jsonStrings = serverInstances.get(0).readFile();
+                List<JSONObject> jsonList = jsonStrings.stream()
+                    .map(JSONObject::new)
+                    .collect(Collectors.toList());
+                sendDataToAllServers(jsonList);
+            }
         } catch (IOException e) {
             System.err.println("Error processing data: " + e.getMessage());
         }
+        awaitPendingSends();
+    }
+
+    /**
+     * Keeps every server up to date with the file until the process is stopped, each
+     * through its own FeedWatcher on its own thread, so a slow or unreachable server
+     * does not hold back the others.
+     * @param heartbeatMillis How often to send heartbeats for unchanged stations
+     */
+    private static void watchAll(long heartbeatMillis) {
+        List<Thread> watchers = new ArrayList<>();
+        for (ContentServer server : serverInstances) {
+            FeedWatcher watcher = new FeedWatcher(server, Paths.get(server.filePath), heartbeatMillis);
+            Thread thread = new Thread(() -> {
+                try {
+                    watcher.run();
+                } catch (IOException e) {
+                    System.out.println("Cannot watch " + server.filePath + ": " + e.getMessage());
+                }
+            }, "feed-watcher-" + server.port);
+            thread.start();
+            watchers.add(thread);
+        }
+        for (Thread thread : watchers) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
     }
 
     /**
@@ -0,0 +1,335 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * EventLog appends Lamport clock events to a log file without blocking the caller.
+ * Events are published into a fixed-size ring buffer, and one writer thread shared by
+ * every open log drains them in batches into each log's long-lived FileChannel, so
+ * logging an event costs a slot claim instead of a file open, write and close, and
+ * opening more logs adds no threads or shutdown hooks.
+ *
+ * When the ring is full, new events are dropped and counted rather than slowing down
+ * request handling; the writer notes the number of dropped events in the file.
+ */
+public class EventLog {
+    private static final int DEFAULT_CAPACITY = 1 << 12;
+    private static final int BATCH_BYTES = 64 * 1024;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long CLOSE_TIMEOUT_MILLIS = 1000;
+    private static final Map<Path, EventLog> OPEN = new ConcurrentHashMap<>();
+    private static final Set<EventLog> LIVE = ConcurrentHashMap.newKeySet();
+    private static final Thread WRITER = startWriter();
+    private static volatile boolean stopping;
+    private final Path file;
+    private final int capacity;
+    private final AtomicReferenceArray<Event> ring;
+    private final AtomicLong claimed = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+    private FileChannel channel;
+    private long reportedDrops;
+    private int users = 1;
+    private volatile long consumed;
+    private volatile long written;
+    private volatile boolean closing;
+    private volatile boolean released;
+
+    /**
+     * One logged event.
+     */
+    private static class Event {
+        private final long millis;
+        private final String name;
+        private final long value;
+
+        Event(long millis, String name, long value) {
+            this.millis = millis;
+            this.name = name;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Constructor for EventLog. The shared writer picks it up once it is registered.
+     * @param file The absolute path of the file to append events to.
+     * @param capacity The ring size, rounded up to a power of two.
+     */
+    private EventLog(Path file, int capacity) {
+        this.file = file;
+        this.capacity = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.ring = new AtomicReferenceArray<>(this.capacity);
+    }
+
+    /**
+     * Gets the event log for a file with the default ring size.
+     * @param file The file to append events to.
+     * @return The event log.
+     */
+    public static EventLog forFile(Path file) {
+        return forFile(file, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Gets the event log for a file, starting it on first use. Every caller logging to
+     * the same file shares one open channel, and the file is closed once every caller
+     * has called close(). A shared log keeps the ring size it was started with.
+     * @param file The file to append events to.
+     * @param capacity The number of events that can be queued before new ones are dropped.
+     * @return The event log.
+     */
+    public static EventLog forFile(Path file, int capacity) {
+        return OPEN.compute(file.toAbsolutePath(), (path, log) -> {
+            if (log == null || log.closing) {
+                EventLog created = new EventLog(path, capacity);
+                LIVE.add(created);
+                return created;
+            }
+            log.users++;
+            return log;
+        });
+    }
+
+    /**
+     * Queues an event for writing. Never blocks.
+     * @param name The event name.
+     * @param value The Lamport clock value of the event.
+     * @return true if queued, false if the ring was full or the log is closed and the
+     *         event was dropped.
+     */
+    public boolean append(String name, long value) {
+        long slot;
+        do {
+            slot = claimed.get();
+            if (closing || slot - consumed >= capacity) {
+                dropped.increment();
+                return false;
+            }
+        } while (!claimed.compareAndSet(slot, slot + 1));
+        ring.lazySet((int) (slot & (capacity - 1)), new Event(System.currentTimeMillis(), name, value));
+        return true;
+    }
+
+    /**
+     * Waits until every event queued so far has been written to the file.
+     * @param timeoutMillis The maximum time to wait.
+     * @return true if everything queued was written in time.
+     */
+    public boolean flush(long timeoutMillis) {
+        long target = claimed.get();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        LockSupport.unpark(WRITER);
+        while (written < target) {
+            if (System.nanoTime() > deadline || released || !WRITER.isAlive()) {
+                return false;
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        return true;
+    }
+
+    /**
+     * Gives up one caller's use of the log. When the last caller closes it, writes the
+     * events queued so far, closes the file and unregisters the log, so a later
+     * forFile() for the same file starts a new one. Events appended after that are
+     * dropped.
+     */
+    public void close() {
+        OPEN.computeIfPresent(file, (path, log) -> {
+            if (log == this && --users == 0) {
+                closing = true;
+                return null;
+            }
+            return log;
+        });
+        if (!closing) {
+            return;
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CLOSE_TIMEOUT_MILLIS);
+        LockSupport.unpark(WRITER);
+        while (!released && System.nanoTime() < deadline && WRITER.isAlive()) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    /**
+     * Gets the number of events dropped because the ring was full or the log closed.
+     * @return The count.
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Starts the writer thread shared by all logs, and the one shutdown hook that lets
+     * it write out what is still queued.
+     * @return The writer thread.
+     */
+    private static Thread startWriter() {
+        Thread writer = new Thread(EventLog::run, "event-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            stopping = true;
+            LockSupport.unpark(writer);
+            try {
+                writer.join(CLOSE_TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        return writer;
+    }
+
+    /**
+     * Writer loop: services every open log in turn, parking briefly when none had
+     * anything to write. Remaining events are written and every file closed at shutdown.
+     */
+    private static void run() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BATCH_BYTES);
+        while (!stopping) {
+            int drained = 0;
+            for (EventLog log : LIVE) {
+                drained += log.service(buffer);
+            }
+            if (drained == 0 && !stopping) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+        for (EventLog log : LIVE) {
+            log.closing = true;
+            while (log.service(buffer) > 0) {
+                // Keep going while producers are still publishing claimed slots
+            }
+        }
+    }
+
+    /**
+     * Writes this log's published events, opening the file once the first event
+     * arrives, and releases the log once it is closing and fully written.
+     * @param buffer The writer's batch buffer.
+     * @return The number of events written.
+     */
+    private int service(ByteBuffer buffer) {
+        if (released) {
+            return 0;
+        }
+        int drained = 0;
+        try {
+            // Clocks that never log an event leave no empty file behind
+            if (channel == null && claimed.get() > 0) {
+                Files.createDirectories(file.getParent());
+                channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            }
+            if (channel != null) {
+                drained = drain(channel, buffer);
+                long drops = dropped.sum();
+                if (drops > reportedDrops) {
+                    put(channel, buffer, Instant.now() + " dropped " + (drops - reportedDrops) + " events\n");
+                    reportedDrops = drops;
+                }
+                writeOut(channel, buffer);
+                written = consumed;
+            }
+            if (closing && consumed == claimed.get()) {
+                release();
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to log events: " + e.getMessage());
+            buffer.clear();
+            release();
+        }
+        return drained;
+    }
+
+    /**
+     * Syncs and closes the file and unregisters the log.
+     */
+    private void release() {
+        released = true;
+        OPEN.remove(file, this);
+        LIVE.remove(this);
+        if (channel != null) {
+            try {
+                channel.force(false);
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("Failed to close event log: " + e.getMessage());
+            }
+            channel = null;
+        }
+    }
+
+    /**
+     * Moves published events from the ring into the buffer, writing whenever it fills.
+     * Stops at the first slot claimed by a producer but not yet published.
+     * @param channel The log file.
+     * @param buffer The batch buffer.
+     * @return The number of events drained.
+     * @throws IOException If writing fails.
+     */
+    private int drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        int count = 0;
+        long next = consumed;
+        long end = claimed.get();
+        while (next < end) {
+            int index = (int) (next & (capacity - 1));
+            Event event = ring.get(index);
+            if (event == null) {
+                break;
+            }
+            ring.lazySet(index, null);
+            put(channel, buffer, Instant.ofEpochMilli(event.millis) + " " + event.name + " " + event.value + "\n");
+            next++;
+            count++;
+            // Publishing progress frees the slots for producers
+            consumed = next;
+        }
+        return count;
+    }
+
+    /**
+     * Appends one line to the batch buffer, writing the batch out first if it is full.
+     * @param channel The log file.
+     * @param buffer The batch buffer.
+     * @param line The line to append.
+     * @throws IOException If writing fails.
+     */
+    private static void put(FileChannel channel, ByteBuffer buffer, String line) throws IOException {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > buffer.remaining()) {
+            writeOut(channel, buffer);
+        }
+        if (bytes.length > buffer.remaining()) {
+            channel.write(ByteBuffer.wrap(bytes));
+            return;
+        }
+        buffer.put(bytes);
+    }
+
+    /**
+     * Writes the buffered batch to the channel and clears the buffer.
+     * @param channel The log file.
+     * @param buffer The batch buffer.
+     * @throws IOException If writing fails.
+     */
+    private static void writeOut(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
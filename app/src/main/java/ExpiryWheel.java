@@ -0,0 +1,171 @@
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * ExpiryWheel removes stations from a StationStore once they have not been updated for
+ * the expiry window. It is a hashed timing wheel: every stored record is filed into the
+ * bucket of the tick at which it falls due, and each tick only looks at that one bucket,
+ * so the cost per tick depends on how many entries are due rather than on the number
+ * of stations.
+ *
+ * Updates do not cancel earlier entries. Instead, an entry only expires its station if
+ * the station still holds the exact record the entry was created for; entries made stale
+ * by a newer update are simply dropped when their bucket comes up.
+ */
+public class ExpiryWheel {
+    private final StationStore stations;
+    private final long windowMillis;
+    private final long tickMillis;
+    private final ArrayDeque<Entry>[] buckets;
+    private final int mask;
+    private final ConcurrentLinkedQueue<Entry> scheduled = new ConcurrentLinkedQueue<>();
+    private final Consumer<String> onExpired;
+    private final long startMillis;
+    private final AtomicLong expiredTotal = new AtomicLong();
+    private final Thread worker;
+    private volatile int lastTickExpired;
+    private volatile boolean running = true;
+    private long currentTick;
+
+    /**
+     * A pending expiry for one stored record.
+     */
+    private static class Entry {
+        private final WeatherRecord record;
+        private final long deadline;
+        private long rounds;
+
+        Entry(WeatherRecord record, long deadline) {
+            this.record = record;
+            this.deadline = deadline;
+        }
+    }
+
+    /**
+     * Constructor for ExpiryWheel. Starts the ticking thread.
+     * @param stations The store to expire records from.
+     * @param windowMillis How long a record lives without being updated.
+     * @param tickMillis The tick resolution; records expire at the first tick after their deadline.
+     * @param onExpired Called with the id of every expired station.
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    public ExpiryWheel(StationStore stations, long windowMillis, long tickMillis, Consumer<String> onExpired) {
+        if (windowMillis <= 0 || tickMillis <= 0) {
+            throw new IllegalArgumentException("Expiry window and tick must be positive");
+        }
+        this.stations = stations;
+        this.windowMillis = windowMillis;
+        this.tickMillis = tickMillis;
+        this.onExpired = onExpired;
+
+        // One revolution covers the whole window, so most entries need no extra rounds
+        int size = Integer.highestOneBit((int) Math.min(1 << 20, windowMillis / tickMillis + 1)) << 1;
+        this.buckets = new ArrayDeque[size];
+        for (int i = 0; i < size; i++) {
+            buckets[i] = new ArrayDeque<>();
+        }
+        this.mask = size - 1;
+        this.startMillis = System.currentTimeMillis();
+
+        this.worker = new Thread(this::run, "expiry-wheel");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Schedules the expiry of a freshly stored record. Safe to call from any thread.
+     * @param record The record that was stored.
+     */
+    public void schedule(WeatherRecord record) {
+        scheduled.add(new Entry(record, record.getReceivedAt() + windowMillis));
+    }
+
+    /**
+     * Stops the ticking thread.
+     */
+    public void stop() {
+        running = false;
+        worker.interrupt();
+    }
+
+    /**
+     * Gets the expiry window.
+     * @return The window in milliseconds.
+     */
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    /**
+     * Gets the number of stations expired by the most recent tick.
+     * @return The count.
+     */
+    public int getLastTickExpired() {
+        return lastTickExpired;
+    }
+
+    /**
+     * Gets the number of stations expired since the wheel started.
+     * @return The count.
+     */
+    public long getExpiredTotal() {
+        return expiredTotal.get();
+    }
+
+    /**
+     * Ticking loop: sleeps until the next tick boundary and processes its bucket.
+     */
+    private void run() {
+        while (running) {
+            long nextTickAt = startMillis + (currentTick + 1) * tickMillis;
+            long sleep = nextTickAt - System.currentTimeMillis();
+            if (sleep > 0) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(sleep);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            tick(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Files newly scheduled entries into their buckets, then expires the due entries of
+     * the current bucket.
+     * @param now The current time in milliseconds.
+     */
+    private void tick(long now) {
+        Entry entry;
+        while ((entry = scheduled.poll()) != null) {
+            long dueTick = Math.max(currentTick, (entry.deadline - startMillis + tickMillis - 1) / tickMillis);
+            entry.rounds = (dueTick - currentTick) / buckets.length;
+            buckets[(int) (dueTick & mask)].add(entry);
+        }
+
+        int expired = 0;
+        Iterator<Entry> bucket = buckets[(int) (currentTick & mask)].iterator();
+        while (bucket.hasNext()) {
+            entry = bucket.next();
+            if (entry.rounds > 0) {
+                entry.rounds--;
+                continue;
+            }
+            bucket.remove();
+            if (entry.deadline <= now && stations.remove(entry.record)) {
+                onExpired.accept(entry.record.getId());
+                expired++;
+            } else if (entry.deadline > now && stations.get(entry.record.getId()) == entry.record) {
+                // Came up early because of clock jitter; retry on the next tick
+                scheduled.add(entry);
+            }
+        }
+        lastTickExpired = expired;
+        expiredTotal.addAndGet(expired);
+        currentTick++;
+    }
+}
@@ -0,0 +1,167 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.json.JSONObject;
+
+/**
+ * FeedReader parses a content server feed file incrementally. The file is memory-mapped
+ * one window at a time and every record is handed to a handler as soon as its last line
+ * has been read, so memory use does not grow with the file and the records can be sent
+ * while the rest of the file is still being parsed.
+ *
+ * The format is one "key: value" pair per line, with optional quotes, trailing commas
+ * and lines holding only braces. A line whose key is "id" starts a new record.
+ */
+public class FeedReader {
+    private static final long DEFAULT_WINDOW_SIZE = 64L << 20;
+
+    /**
+     * Handler receives each parsed record.
+     */
+    public interface RecordHandler {
+        /**
+         * Accepts one record.
+         * @param record The record, owned by the handler from now on.
+         * @throws IOException If the record cannot be processed; parsing stops.
+         */
+        void accept(JSONObject record) throws IOException;
+    }
+
+    private final long windowSize;
+    private byte[] line = new byte[256];
+    private JSONObject current = new JSONObject();
+
+    /**
+     * Constructor for FeedReader, mapping 64 MB of the file at a time.
+     */
+    public FeedReader() {
+        this(DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Constructor for FeedReader.
+     * @param windowSize The number of bytes mapped at a time; must be longer than any line.
+     */
+    FeedReader(long windowSize) {
+        if (windowSize < 1 || windowSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid window size: " + windowSize);
+        }
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * Parses a feed file, handing each record to the handler in file order.
+     * @param path The feed file.
+     * @param handler Receives the records.
+     * @return The number of records read.
+     * @throws IOException If the file cannot be read, a line does not fit in the window,
+     *                     or the handler fails.
+     */
+    public long read(Path path, RecordHandler handler) throws IOException {
+        long records = 0;
+        current = new JSONObject();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                long length = Math.min(windowSize, size - position);
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                boolean last = position + length == size;
+                int start = 0;
+                for (int i = 0; i < length; i++) {
+                    if (window.get(i) == '\n') {
+                        records += parseLine(window, start, i, handler);
+                        start = i + 1;
+                    }
+                }
+                if (last) {
+                    records += parseLine(window, start, (int) length, handler);
+                    start = (int) length;
+                } else if (start == 0) {
+                    throw new IOException("Line at byte " + position + " is longer than the " + windowSize + " byte window");
+                }
+                // A partial line at the end of the window is read again with the next one
+                position += start;
+            }
+        }
+        if (!current.isEmpty()) {
+            handler.accept(current);
+            records++;
+        }
+        current = new JSONObject();
+        return records;
+    }
+
+    /**
+     * Parses one line into the current record, handing the previous record to the
+     * handler when the line starts a new one.
+     * @param window The mapped window.
+     * @param start The index of the first byte of the line.
+     * @param end The index after the last byte of the line, excluding the line break.
+     * @param handler Receives a completed record.
+     * @return 1 if a record was completed, otherwise 0.
+     * @throws IOException If the handler fails.
+     */
+    private int parseLine(MappedByteBuffer window, int start, int end, RecordHandler handler) throws IOException {
+        // Skip empty lines and brackets, and remove a trailing comma
+        while (start < end && (window.get(start) & 0xff) <= ' ') {
+            start++;
+        }
+        while (end > start && (window.get(end - 1) & 0xff) <= ' ') {
+            end--;
+        }
+        if (end > start && window.get(end - 1) == ',') {
+            end--;
+        }
+        int length = end - start;
+        if (length == 0 || (length == 1 && (window.get(start) == '{' || window.get(start) == '}'))) {
+            return 0;
+        }
+
+        if (line.length < length) {
+            line = new byte[Math.max(length, line.length * 2)];
+        }
+        int colon = -1;
+        for (int i = 0; i < length; i++) {
+            line[i] = window.get(start + i);
+            if (colon < 0 && line[i] == ':') {
+                colon = i;
+            }
+        }
+        if (colon < 0) {
+            return 0;
+        }
+        String key = text(0, colon);
+        String value = text(colon + 1, length);
+
+        // Start a new JSON object when a new ID is encountered
+        int completed = 0;
+        if (key.equalsIgnoreCase("id") && !current.isEmpty()) {
+            handler.accept(current);
+            current = new JSONObject();
+            completed = 1;
+        }
+        current.put(key, value);
+        return completed;
+    }
+
+    /**
+     * Decodes part of the current line with all double quotes removed and surrounding
+     * whitespace trimmed.
+     * @param from The index of the first byte.
+     * @param to The index after the last byte.
+     * @return The text.
+     */
+    private String text(int from, int to) {
+        int kept = from;
+        for (int i = from; i < to; i++) {
+            if (line[i] != '"') {
+                line[kept++] = line[i];
+            }
+        }
+        return new String(line, from, kept - from, StandardCharsets.UTF_8).trim();
+    }
+}
@@ -0,0 +1,224 @@
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONObject;
+
+/**
+ * FeedWatcher keeps one aggregation server up to date with a feed file for as long as
+ * it runs. It watches the file's directory with a WatchService and, whenever the file
+ * changes, sends only the stations whose record differs from what was last sent to
+ * that server. Unchanged stations are kept from expiring by a periodic heartbeat that
+ * lists their ids; stations the server reports as missing are sent again in full.
+ *
+ * The last-sent state is a 64-bit hash of each station's record, so it stays small
+ * even for very large feeds.
+ */
+public class FeedWatcher {
+    private static final long SETTLE_MILLIS = 100;
+    private final ContentServer server;
+    private final Path file;
+    private final long heartbeatMillis;
+    private final Map<String, Long> lastSent = new HashMap<>();
+    private boolean dirty = true;
+
+    /**
+     * Constructor for FeedWatcher.
+     * @param server The content server that sends to one aggregation server.
+     * @param file The feed file to watch.
+     * @param heartbeatMillis How often to send heartbeats for unchanged stations.
+     */
+    public FeedWatcher(ContentServer server, Path file, long heartbeatMillis) {
+        if (heartbeatMillis <= 0) {
+            throw new IllegalArgumentException("Invalid heartbeat interval: " + heartbeatMillis);
+        }
+        this.server = server;
+        this.file = file.toAbsolutePath();
+        this.heartbeatMillis = heartbeatMillis;
+    }
+
+    /**
+     * Sends the file, then keeps watching it until the thread is interrupted. Failed
+     * uploads are retried on the next heartbeat rather than ending the watch.
+     * @throws IOException If the directory cannot be watched.
+     */
+    public void run() throws IOException {
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            file.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            long nextHeartbeat = System.currentTimeMillis() + heartbeatMillis;
+            syncQuietly();
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watcher.poll(Math.max(1, nextHeartbeat - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                if (key != null && isFileChanged(key)) {
+                    // Let the writer finish before reading the file
+                    WatchKey more;
+                    while ((more = watcher.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                        isFileChanged(more);
+                    }
+                    dirty = true;
+                }
+                if (dirty) {
+                    syncQuietly();
+                }
+                if (System.currentTimeMillis() >= nextHeartbeat) {
+                    heartbeatQuietly();
+                    nextHeartbeat = System.currentTimeMillis() + heartbeatMillis;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Reads the file and sends the stations that are new or changed since they were
+     * last sent. Stations no longer in the file are forgotten, so the server lets them
+     * expire.
+     * @return The number of stations sent.
+     * @throws IOException If the file cannot be read or the changes cannot be sent.
+     */
+    public int sync() throws IOException {
+        Map<String, JSONObject> current = readFile();
+        ArrayList<JSONObject> changed = new ArrayList<>();
+        Map<String, Long> hashes = new HashMap<>();
+        for (Map.Entry<String, JSONObject> entry : current.entrySet()) {
+            long hash = hash(entry.getValue().toString());
+            hashes.put(entry.getKey(), hash);
+            Long previous = lastSent.get(entry.getKey());
+            if (previous == null || previous != hash) {
+                changed.add(entry.getValue());
+            }
+        }
+        lastSent.keySet().retainAll(current.keySet());
+        if (!changed.isEmpty()) {
+            server.sendJsons(changed);
+            for (JSONObject record : changed) {
+                String id = record.getString("id");
+                lastSent.put(id, hashes.get(id));
+            }
+        }
+        dirty = false;
+        return changed.size();
+    }
+
+    /**
+     * Sends a heartbeat for every station sent so far, and sends the stations the
+     * server no longer has again in full.
+     * @return The number of stations sent again.
+     * @throws IOException If the heartbeat or the resend fails.
+     */
+    public int heartbeat() throws IOException {
+        if (lastSent.isEmpty()) {
+            return 0;
+        }
+        List<String> missing = server.sendHeartbeat(new ArrayList<>(lastSent.keySet()));
+        if (missing.isEmpty()) {
+            return 0;
+        }
+        Set<String> wanted = new HashSet<>(missing);
+        ArrayList<JSONObject> resend = new ArrayList<>();
+        for (Map.Entry<String, JSONObject> entry : readFile().entrySet()) {
+            if (wanted.contains(entry.getKey())) {
+                resend.add(entry.getValue());
+            }
+        }
+        if (!resend.isEmpty()) {
+            System.out.println("Server is missing " + resend.size() + " station(s), sending them again");
+            server.sendJsons(resend);
+        }
+        return resend.size();
+    }
+
+    /**
+     * Gets the number of stations whose last-sent state is known.
+     * @return The number of stations.
+     */
+    public int getTrackedCount() {
+        return lastSent.size();
+    }
+
+    /**
+     * Runs sync(), reporting a failure instead of throwing so it is retried later.
+     */
+    private void syncQuietly() {
+        try {
+            int sent = sync();
+            if (sent > 0) {
+                System.out.println("Sent " + sent + " changed station(s)");
+            }
+        } catch (IOException e) {
+            System.out.println("Failed to send changes, will retry: " + e.getMessage());
+            dirty = true;
+        }
+    }
+
+    /**
+     * Runs heartbeat(), reporting a failure instead of throwing.
+     */
+    private void heartbeatQuietly() {
+        try {
+            heartbeat();
+        } catch (IOException e) {
+            System.out.println("Heartbeat failed: " + e.getMessage());
+            dirty = true;
+        }
+    }
+
+    /**
+     * Checks a batch of watch events for the feed file and re-arms the key.
+     * @param key The signalled key.
+     * @return true if the feed file was created or modified, or events were lost.
+     */
+    private boolean isFileChanged(WatchKey key) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || file.getFileName().equals(event.context())) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+
+    /**
+     * Reads the file into records keyed by station id, skipping records without a
+     * valid id. A later record for the same id replaces an earlier one.
+     * @return The records in file order.
+     * @throws IOException If the file cannot be read.
+     */
+    private Map<String, JSONObject> readFile() throws IOException {
+        Map<String, JSONObject> records = new java.util.LinkedHashMap<>();
+        new FeedReader().read(file, record -> {
+            String id = record.optString("id");
+            if (id.length() >= 2) {
+                records.put(id, record);
+            }
+        });
+        return records;
+    }
+
+    /**
+     * Computes a 64-bit FNV-1a hash of a record's JSON text.
+     * @param json The JSON text.
+     * @return The hash.
+     */
+    private static long hash(String json) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < json.length(); i++) {
+            hash ^= json.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
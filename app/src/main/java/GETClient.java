@@ -1,5 +1,11 @@
 import java.io.*;
-import java.net.Socket;
+import java.net.InetSocketAddress;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import org.json.JSONObject;
 
 /**
@@ -7,6 +13,12 @@ import org.json.JSONObject;
  */
 public class GETClient {
     private static LamportClock clock = new LamportClock();
+    private static final int MAX_IDLE_CONNECTIONS = 4;
+    private static final int TIMEOUT_MILLIS = 5000;
+    private static volatile RetryPolicy retryPolicy = new RetryPolicy();
+    private static volatile GETResponseCache responseCache;
+    private static volatile boolean binary = false;
+    private static volatile AsyncGETClient transport = new AsyncGETClient(MAX_IDLE_CONNECTIONS, TIMEOUT_MILLIS, retryPolicy);
     private NetworkClient networkClient;
 
     public interface NetworkClient {
@@ -45,59 +57,172 @@ public class GETClient {
     }
 
     /**
-     * Sends an HTTP GET request and processes the response.
+     * Sends an HTTP GET request on a pooled keep-alive connection and processes the
+     * response. Connection failures and server errors are retried as the retry policy
+     * allows, after a jittered exponential backoff; other responses are final. While the
+     * server's circuit breaker is open the request is not sent at all.
+     *
+     * With a response cache set, a fresh cached response is returned without contacting
+     * the server, and a stale one is revalidated with If-None-Match so an unchanged
+     * response is neither downloaded nor parsed again.
      * @param address The server address
      * @param port The server port
      * @param request The HTTP request string
      * @return JSONObject containing the response data, or null if the request fails
      */
     private static JSONObject sendRequest(String address, int port, String request) {
-        int retries = 0;
-        JSONObject result = null;
-        while (true) {
-            try (Socket socket = new Socket(address, port);
-                 DataOutputStream outputStream = new DataOutputStream(socket.getOutputStream());
-                 BufferedReader input = new BufferedReader(new InputStreamReader(socket.getInputStream()))) {
-
-                // Set socket timeout to 5 seconds
-                socket.setSoTimeout(5000);
-                System.out.println("Connected");
+        GETResponseCache cache = responseCache;
+        String key = null;
+        GETResponseCache.Entry cached = null;
+        if (cache != null) {
+            key = GETResponseCache.key(address, port, request);
+            cached = cache.lookup(key);
+            if (cached != null && cache.isFresh(cached)) {
+                return cached.getData();
+            }
+            if (cached != null && cached.getETag() != null) {
+                request = withHeader(request, "If-None-Match: " + cached.getETag());
+            }
+        }
 
+        RetryPolicy policy = retryPolicy;
+        policy.recordRequest();
+        for (int retries = 0; ; retries++) {
+            try {
                 // Update and log Lamport clock
-                clock.tick();
-                clock.log("GETClient: sending request");
-                outputStream.writeUTF(request);
-
-                // Process the response
-                String currentLine = input.readLine();
-                if (currentLine != null && !currentLine.isEmpty()) {
-                    String[] split = currentLine.trim().split(" ", 3);
-                    int returnCode = Integer.parseInt(split[1]);
-                    if (returnCode == 200) {
-                        result = handleResponse(input);
-                        break;
-                    } else if (returnCode == 404) {
-                        System.out.println("File not found");
-                        return null;
-                    } else {
-                        System.out.println("Unknown error");
-                        retries++;
-                        continue;
+                clock.log("GETClient: sending request", clock.tick());
+                HttpMessage response = await(transport.send(address, port, request));
+                int returnCode = response.getStatusCode();
+                if (returnCode == 200) {
+                    JSONObject data = handleResponse(response);
+                    if (cache != null) {
+                        data = cache.put(key, data, response.getHeader("ETag"), lamportOf(response)).getData();
+                    }
+                    return data;
+                } else if (returnCode == 304) {
+                    long lamport = receiveClock(response);
+                    if (cached != null) {
+                        cache.revalidated(cached, lamport);
+                        return cached.getData();
                     }
-                } else {
-                    retries++;
-                    continue;
+                    System.out.println("Not modified");
+                    return new JSONObject();
+                } else if (returnCode == 404) {
+                    System.out.println("File not found");
+                    return null;
+                } else if (!isRetryable(returnCode)) {
+                    System.out.println("Unknown error");
+                    return null;
                 }
+                System.out.println("Server error " + returnCode);
+            } catch (CircuitOpenException e) {
+                System.out.println("Server " + address + ":" + port + " is failing, not sending");
+                return null;
             } catch (IOException i) {
                 System.out.println(i);
-                retries++;
-                if (retries > 3) {
-                    System.out.println("Connection failed");
-                    return null;
+            }
+            if (!policy.awaitRetry(retries)) {
+                System.out.println("Connection failed");
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Sends an HTTP GET request to several replicas of the Aggregation Server, hedging
+     * to the next replica whenever one is slower than usual, and processes the first
+     * successful response.
+     * @param replicas The replicas, in order of preference
+     * @param request The HTTP request string
+     * @return A future of the response data: the stations, an empty object if not
+     *         modified, or null if the request was refused
+     */
+    public static CompletableFuture<JSONObject> requestHedged(List<InetSocketAddress> replicas, String request) {
+        clock.log("GETClient: sending hedged request", clock.tick());
+        return transport.sendHedged(replicas, request).thenApply(response -> {
+            int returnCode = response.getStatusCode();
+            if (returnCode == 200) {
+                try {
+                    return handleResponse(response);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
                 }
+            } else if (returnCode == 304) {
+                return new JSONObject();
             }
+            System.out.println("Server responded with " + returnCode);
+            return null;
+        });
+    }
+
+    /**
+     * Adds a header line to a request.
+     * @param request The HTTP request, ending with the blank line after its headers
+     * @param header The header line, without the line break
+     * @return The request with the header added last
+     */
+    static String withHeader(String request, String header) {
+        int end = request.indexOf("\r\n\r\n");
+        if (end < 0) {
+            return request;
         }
-        return result;
+        return request.substring(0, end + 2) + header + "\r\n" + request.substring(end + 2);
+    }
+
+    /**
+     * Waits for a response future, unwrapping its failure.
+     * @param response The response future
+     * @return The response
+     * @throws IOException if the request failed or the thread was interrupted
+     */
+    private static HttpMessage await(CompletableFuture<HttpMessage> response) throws IOException {
+        try {
+            return response.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the response");
+        }
+    }
+
+    /**
+     * Checks whether a response status means the request may succeed if sent again.
+     * @param statusCode The response status code
+     * @return true for server errors and 429 Too Many Requests
+     */
+    static boolean isRetryable(int statusCode) {
+        return statusCode >= 500 || statusCode == 429;
+    }
+
+    /**
+     * Sets the in-process response cache used by every request.
+     * @param cache The cache, or null to disable caching
+     */
+    public static void setResponseCache(GETResponseCache cache) {
+        responseCache = cache;
+    }
+
+    /**
+     * Sets whether requests ask for the stations in the binary format instead of JSON.
+     * @param enabled true to accept BinaryRecordCodec.CONTENT_TYPE responses
+     */
+    public static void setBinary(boolean enabled) {
+        binary = enabled;
+    }
+
+    /**
+     * Sets the retry policy used for every server, replacing its circuit breakers.
+     * @param policy The retry policy
+     */
+    public static void setRetryPolicy(RetryPolicy policy) {
+        AsyncGETClient previous = transport;
+        retryPolicy = policy;
+        transport = new AsyncGETClient(MAX_IDLE_CONNECTIONS, TIMEOUT_MILLIS, policy);
+        previous.close();
     }
 
     /**
@@ -113,13 +238,12 @@ public class GETClient {
         while ((currentLine = input.readLine()) != null && !currentLine.isEmpty()) {
             if (currentLine.startsWith("Lamport-Clock:")) {
                 String[] tokens = currentLine.split(":", 2);
-                clock.update(Integer.parseInt(tokens[1].trim()));
-                clock.log("GETClient: receive response");
+                clock.log("GETClient: receive response", clock.update(Long.parseLong(tokens[1].trim())));
                 break;
             }
         }
-        // Extract JSON data from response body
-        while ((currentLine = input.readLine()) != null && !currentLine.isEmpty()) {
+        // Extract JSON data from response body, skipping the rest of the headers
+        while ((currentLine = input.readLine()) != null) {
             if (currentLine.startsWith("{")) {
                 result = new JSONObject(currentLine);
                 break;
@@ -128,6 +252,50 @@ public class GETClient {
         return result;
     }
 
+    /**
+     * Handles a framed response from the server, updating the Lamport clock, decoding a
+     * gzip or deflate body and parsing the JSON or binary stations.
+     * @param response The response read from the server
+     * @return JSONObject with the response data
+     * @throws IOException if the body cannot be decoded
+     */
+    private static JSONObject handleResponse(HttpMessage response) throws IOException {
+        receiveClock(response);
+        byte[] decoded = ContentEncoding.decode(response.getBody(), response.getHeader("Content-Encoding"));
+        if (BinaryRecordCodec.isBinary(response.getHeader("Content-Type"))) {
+            try {
+                return BinaryRecordCodec.decodeAggregate(decoded, 0, decoded.length);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Invalid binary response: " + e.getMessage(), e);
+            }
+        }
+        String body = new String(decoded, StandardCharsets.UTF_8).trim();
+        return body.startsWith("{") ? new JSONObject(body) : new JSONObject();
+    }
+
+    /**
+     * Updates the Lamport clock from a response.
+     * @param response The response read from the server
+     * @return The server's Lamport time, or 0 if the response carries none
+     */
+    private static long receiveClock(HttpMessage response) {
+        long time = lamportOf(response);
+        if (response.getHeader("Lamport-Clock") != null) {
+            clock.log("GETClient: receive response", clock.update(time));
+        }
+        return time;
+    }
+
+    /**
+     * Gets the server's Lamport time from a response.
+     * @param response The response read from the server
+     * @return The Lamport time, or 0 if the response carries none
+     */
+    private static long lamportOf(HttpMessage response) {
+        String lamport = response.getHeader("Lamport-Clock");
+        return lamport == null ? 0 : Long.parseLong(lamport);
+    }
+
     /**
      * Processes the response from the server, updating the Lamport clock and extracting JSON data.
      * @param input BufferedReader containing the server response
@@ -161,9 +329,84 @@ public class GETClient {
         }
     }
 
+    /**
+     * Retrieves the stations to print. A station ID is first sent to the server as an
+     * exact match; if nothing matches, every station is fetched instead so that
+     * printJson() can still match a partial ID by substring.
+     * @param replicas The servers to ask, hedging across them when there are several
+     * @param stationID The station ID to request, or "NULL" for all stations
+     * @return The parsed response, or null if it could not be retrieved
+     * @throws Exception If the request fails
+     */
+    static JSONObject retrieve(List<InetSocketAddress> replicas, String stationID) throws Exception {
+        // Construct the HTTP GET request with Lamport clock, letting the server filter by station
+        JSONObject response = send(replicas, buildRequest(stationID, clock.getValue()));
+        if (response != null && response.length() == 0 && !stationID.equals("NULL")) {
+            response = send(replicas, buildRequest("NULL", clock.getValue()));
+        }
+        return response;
+    }
+
+    /**
+     * Sends a GET request to a single server, or hedged across several.
+     * @param replicas The servers to ask
+     * @param request The HTTP request string
+     * @return The parsed response, or null if it could not be retrieved
+     * @throws Exception If the request fails
+     */
+    private static JSONObject send(List<InetSocketAddress> replicas, String request) throws Exception {
+        if (replicas.size() > 1) {
+            return requestHedged(replicas, request).get();
+        }
+        GETClient client = new GETClient();
+        return client.request(replicas.get(0).getHostString(), replicas.get(0).getPort(), request);
+    }
+
+    /**
+     * Builds a GET request for the aggregate or, when a station ID is given, for that station
+     * only. The request accepts gzip and deflate encoded responses, and the binary
+     * format if it is enabled.
+     * @param stationID The station ID to request, or "NULL" for all stations
+     * @param lamport The Lamport clock value to send
+     * @return The HTTP request string
+     */
+    static String buildRequest(String stationID, long lamport) {
+        String target = "/weather.json";
+        if (!stationID.equals("NULL")) {
+            target += "?id=" + URLEncoder.encode(stationID, StandardCharsets.UTF_8);
+        }
+        String accept = binary ? "Accept: " + BinaryRecordCodec.CONTENT_TYPE + ", application/json;q=0.5\r\n" : "";
+        return "GET " + target + " HTTP/1.1\r\nLamport-Clock: " + lamport + "\r\n" + accept
+                + "Accept-Encoding: " + ContentEncoding.ACCEPTED + "\r\n\r\n";
+    }
+
+    /**
+     * Parses a server address of the form host:port.
+     * @param address The address
+     * @return The parsed address, or null if it is invalid
+     */
+    static InetSocketAddress parseAddress(String address) {
+        if (!address.contains(":")) {
+            return null;
+        }
+        String[] addressParts = address.split(":");
+        try {
+            if (addressParts.length < 3) {
+                return InetSocketAddress.createUnresolved(addressParts[0], Integer.parseInt(addressParts[1]));
+            } else if (addressParts.length == 3) {
+                return InetSocketAddress.createUnresolved(addressParts[0] + ":" + addressParts[1], Integer.parseInt(addressParts[2]));
+            }
+        } catch (IllegalArgumentException e) {
+            // Not a valid port
+        }
+        return null;
+    }
+
     /**
      * Main method to execute the GETClient.
-     * @param args Command line arguments (server address, port, and optional station ID)
+     * @param args Command line arguments: the server address, or several comma-separated
+     *             replica addresses to send a hedged request to, an optional station ID and
+     *             an optional --binary to receive the stations in the binary format
      */
     public static void main(String args[]) {
         if (args.length < 1) {
@@ -171,35 +414,26 @@ public class GETClient {
             return;
         }
 
-        String address = args[0];
-        int port = 4567;
-        if (address.contains(":")) {
-            String[] addressParts = address.split(":");
-            if (addressParts.length < 3) {
-                address = addressParts[0];
-                port = Integer.parseInt(addressParts[1]);
-            } else if (addressParts.length == 3) {
-                address = addressParts[0] + ":" + addressParts[1];
-                port = Integer.parseInt(addressParts[2]);
-            } else {
+        List<InetSocketAddress> replicas = new ArrayList<>();
+        for (String address : args[0].split(",")) {
+            InetSocketAddress replica = parseAddress(address);
+            if (replica == null) {
                 System.out.println("invalid address");
                 return;
             }
-        } else {
-            System.out.println("invalid address");
-            return;
+            replicas.add(replica);
         }
         String stationID = "NULL";
-        if (args.length > 1) {
-            stationID = args[1];
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--binary")) {
+                setBinary(true);
+            } else {
+                stationID = args[i];
+            }
         }
 
-        // Construct the HTTP GET request with Lamport clock
-        String request = "GET /weather.json? HTTP/1.1\r\nLamport-Clock: " + clock.getValue() + "\r\n\r\n";
-
         try {
-            GETClient client = new GETClient();
-            JSONObject response = client.request(address, port, request);
+            JSONObject response = retrieve(replicas, stationID);
             if (response == null || response.length() == 0) {
                 System.out.println("failed to retrieve data");
                 return;
@@ -209,6 +443,8 @@ public class GETClient {
             System.out.println("failed to retrieve data");
             System.out.println(e);
             return;
+        } finally {
+            clock.close();
         }
     }
 }
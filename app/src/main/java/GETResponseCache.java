@@ -0,0 +1,202 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import org.json.JSONObject;
+
+/**
+ * GETResponseCache keeps parsed GET responses in process, keyed by server and request
+ * target, so repeated reads of the same stations need neither a download nor a parse.
+ *
+ * An entry is served as is for the time-to-live after it was fetched or last
+ * revalidated. After that the client revalidates it with a conditional GET carrying
+ * the entry's ETag, which the server only answers with data if the store has changed
+ * since. Each entry also records the Lamport time of the response it came from, and a
+ * response from an earlier logical time never replaces a newer entry. The least
+ * recently used entries are evicted beyond the maximum size.
+ */
+public class GETResponseCache {
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final LongSupplier currentTimeMillis;
+    private final LinkedHashMap<String, Entry> entries;
+    private long hits;
+    private long misses;
+    private long revalidations;
+
+    /**
+     * A cached response.
+     */
+    public static class Entry {
+        private final JSONObject data;
+        private final String etag;
+        private volatile long lamport;
+        private volatile long validatedAt;
+
+        Entry(JSONObject data, String etag, long lamport, long validatedAt) {
+            this.data = data;
+            this.etag = etag;
+            this.lamport = lamport;
+            this.validatedAt = validatedAt;
+        }
+
+        /**
+         * Gets the cached data. It is shared by every reader and must not be modified.
+         * @return The parsed response body.
+         */
+        public JSONObject getData() {
+            return data;
+        }
+
+        /**
+         * Gets the entity tag the server sent with the data.
+         * @return The ETag, or null if the server sent none.
+         */
+        public String getETag() {
+            return etag;
+        }
+
+        /**
+         * Gets the Lamport time at which the data was last known to be current.
+         * @return The Lamport time.
+         */
+        public long getLamport() {
+            return lamport;
+        }
+    }
+
+    /**
+     * Constructor for GETResponseCache.
+     * @param maxEntries The most responses kept.
+     * @param ttlMillis How long a response is served without revalidation.
+     */
+    public GETResponseCache(int maxEntries, long ttlMillis) {
+        this(maxEntries, ttlMillis, System::currentTimeMillis);
+    }
+
+    /**
+     * Constructor for GETResponseCache with a custom time source.
+     * @param maxEntries The most responses kept.
+     * @param ttlMillis How long a response is served without revalidation.
+     * @param currentTimeMillis The time source, in milliseconds.
+     */
+    GETResponseCache(int maxEntries, long ttlMillis, LongSupplier currentTimeMillis) {
+        if (maxEntries < 1 || ttlMillis < 0) {
+            throw new IllegalArgumentException("Invalid cache settings");
+        }
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.currentTimeMillis = currentTimeMillis;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > GETResponseCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Builds the cache key of a request: the server and the request line, which holds
+     * the target and query.
+     * @param address The server address.
+     * @param port The server port.
+     * @param request The HTTP request.
+     * @return The key.
+     */
+    public static String key(String address, int port, String request) {
+        int end = request.indexOf('\r');
+        return address + ":" + port + " " + (end < 0 ? request : request.substring(0, end));
+    }
+
+    /**
+     * Looks up a response, marking it as recently used.
+     * @param key The request's key.
+     * @return The entry, fresh or not, or null if there is none.
+     */
+    public synchronized Entry lookup(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+        } else if (isFresh(entry)) {
+            hits++;
+        }
+        return entry;
+    }
+
+    /**
+     * Checks whether an entry may still be served without revalidation.
+     * @param entry The entry.
+     * @return true if it is within its time-to-live.
+     */
+    public boolean isFresh(Entry entry) {
+        return currentTimeMillis.getAsLong() - entry.validatedAt < ttlMillis;
+    }
+
+    /**
+     * Stores a response, unless the cached one is from a later Lamport time.
+     * @param key The request's key.
+     * @param data The parsed response body.
+     * @param etag The response's ETag, or null.
+     * @param lamport The response's Lamport time.
+     * @return The entry now cached for the key.
+     */
+    public synchronized Entry put(String key, JSONObject data, String etag, long lamport) {
+        Entry current = entries.get(key);
+        if (current != null && current.lamport > lamport) {
+            return current;
+        }
+        Entry entry = new Entry(data, etag, lamport, currentTimeMillis.getAsLong());
+        entries.put(key, entry);
+        return entry;
+    }
+
+    /**
+     * Records that the server confirmed an entry is still current, restarting its
+     * time-to-live.
+     * @param entry The entry.
+     * @param lamport The Lamport time of the confirmation.
+     */
+    public synchronized void revalidated(Entry entry, long lamport) {
+        revalidations++;
+        entry.lamport = Math.max(entry.lamport, lamport);
+        entry.validatedAt = currentTimeMillis.getAsLong();
+    }
+
+    /**
+     * Removes every entry.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Gets the number of cached responses.
+     * @return The number of entries.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Gets the number of lookups served from a fresh entry.
+     * @return The number of hits.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Gets the number of lookups that found no entry.
+     * @return The number of misses.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Gets the number of stale entries the server confirmed as current.
+     * @return The number of revalidations.
+     */
+    public synchronized long getRevalidations() {
+        return revalidations;
+    }
+}
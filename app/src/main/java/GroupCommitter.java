@@ -0,0 +1,213 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GroupCommitter collects concurrent persistence requests into groups and hands each
+ * group to a Sink on a single writer thread, so one write and one fsync acknowledge
+ * every request in the group.
+ *
+ * A group is closed when it reaches the maximum batch size or when the linger time
+ * since its first request has passed. With a linger time of zero, a group is whatever
+ * queued up while the previous group was being written.
+ */
+public class GroupCommitter implements Closeable {
+    private static final long IDLE_POLL_MILLIS = 100;
+    private static final long IDLE_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(IDLE_POLL_MILLIS);
+    private final LinkedBlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Sink sink;
+    private final int maxBatch;
+    private final long lingerNanos;
+    private final Thread writer;
+    private final Object queueLock = new Object();
+    private volatile boolean running = true;
+
+    /**
+     * Sink durably writes one group of changes.
+     */
+    public interface Sink {
+        /**
+         * Writes and syncs the given changes.
+         * @param ids The ids of the stations that changed, without duplicates.
+         * @throws IOException If the group could not be made durable.
+         */
+        void commit(Set<String> ids) throws IOException;
+    }
+
+    /**
+     * A request waiting for its group to be committed.
+     */
+    private static class Pending {
+        private final Collection<String> ids;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Pending(Collection<String> ids) {
+            this.ids = ids;
+        }
+    }
+
+    /**
+     * Constructor for GroupCommitter. Starts the writer thread.
+     * @param name The name of the writer thread.
+     * @param sink The sink that writes each group.
+     * @param maxBatch The maximum number of requests per group.
+     * @param lingerMillis The maximum time to wait for a group to fill.
+     */
+    public GroupCommitter(String name, Sink sink, int maxBatch, long lingerMillis) {
+        if (maxBatch < 1 || lingerMillis < 0) {
+            throw new IllegalArgumentException("Invalid group commit settings: batch " + maxBatch + ", linger " + lingerMillis);
+        }
+        this.sink = sink;
+        this.maxBatch = maxBatch;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+        this.writer = new Thread(this::run, name);
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queues a change without waiting for it to be committed.
+     * @param id The id of the station that changed.
+     * @return A future completed once the change is durable.
+     */
+    public CompletableFuture<Void> submit(String id) {
+        return submit(Collections.singletonList(id));
+    }
+
+    /**
+     * Queues several changes as one request without waiting for them to be committed.
+     * They always end up in the same group.
+     * @param ids The ids of the stations that changed.
+     * @return A future completed once all the changes are durable.
+     */
+    public CompletableFuture<Void> submit(Collection<String> ids) {
+        Pending pending = new Pending(ids);
+        // Checked and queued atomically, so nothing is queued once the writer has
+        // been told to stop and could already have drained the queue for the last time
+        synchronized (queueLock) {
+            if (running) {
+                queue.add(pending);
+                return pending.done;
+            }
+        }
+        pending.done.completeExceptionally(new IOException("Group committer is closed"));
+        return pending.done;
+    }
+
+    /**
+     * Queues a change and waits until its group has been committed.
+     * @param id The id of the station that changed.
+     * @throws IOException If the group could not be made durable.
+     */
+    public void commit(String id) throws IOException {
+        commit(Collections.singletonList(id));
+    }
+
+    /**
+     * Queues several changes as one request and waits until they have been committed,
+     * e.g. all the records of a bulk PUT.
+     * @param ids The ids of the stations that changed.
+     * @throws IOException If the group could not be made durable.
+     */
+    public void commit(Collection<String> ids) throws IOException {
+        try {
+            submit(ids).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for commit");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+    }
+
+    /**
+     * Stops accepting changes, commits what is already queued and stops the writer.
+     */
+    @Override
+    public void close() {
+        synchronized (queueLock) {
+            running = false;
+        }
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writer loop: waits for a first request, fills the group up to the batch size or
+     * linger deadline, then commits it and completes every request in it.
+     */
+    private void run() {
+        List<Pending> batch = new ArrayList<>(maxBatch);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatch - batch.size());
+                long deadline = System.nanoTime() + lingerNanos;
+                // Closing cuts the linger short, so queued requests commit right away
+                while (batch.size() < maxBatch && running) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    Pending next = queue.poll(Math.min(remaining, IDLE_POLL_NANOS), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        continue;
+                    }
+                    batch.add(next);
+                    queue.drainTo(batch, maxBatch - batch.size());
+                }
+            } catch (InterruptedException e) {
+                synchronized (queueLock) {
+                    running = false;
+                }
+            }
+            if (!batch.isEmpty()) {
+                commitBatch(batch);
+                batch.clear();
+            }
+        }
+        Pending left;
+        while ((left = queue.poll()) != null) {
+            left.done.completeExceptionally(new IOException("Group committer is closed"));
+        }
+    }
+
+    /**
+     * Commits one group and completes its requests.
+     * @param batch The requests in the group.
+     */
+    private void commitBatch(List<Pending> batch) {
+        Set<String> ids = new LinkedHashSet<>();
+        for (Pending pending : batch) {
+            ids.addAll(pending.ids);
+        }
+        try {
+            sink.commit(ids);
+            for (Pending pending : batch) {
+                pending.done.complete(null);
+            }
+        } catch (IOException | RuntimeException e) {
+            for (Pending pending : batch) {
+                pending.done.completeExceptionally(e);
+            }
+        }
+    }
+}
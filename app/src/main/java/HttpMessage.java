@@ -0,0 +1,460 @@
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HttpMessage is a parsed HTTP/1.1 request or response: the start line, the headers
+ * and a body framed by Content-Length. It is shared by the server engines and the clients.
+ */
+public class HttpMessage {
+    /** The largest request body either server engine accepts. */
+    public static final int MAX_BODY_SIZE = 1 << 20;
+    static final int MAX_HEAD_SIZE = 64 * 1024;
+    private static final byte[] EMPTY_BODY = new byte[0];
+    private final String startLine;
+    private final Map<String, String> headers;
+    private byte[] body;
+    private final int bodyLength;
+    private final int wireLength;
+    private BufferPool pool;
+
+    /**
+     * Constructor for HttpMessage.
+     * @param startLine The request line or status line.
+     * @param headers The headers, keyed by lower-case name.
+     * @param body The body bytes.
+     * @param wireLength The number of bytes the message took on the wire.
+     */
+    HttpMessage(String startLine, Map<String, String> headers, byte[] body, int wireLength) {
+        this(startLine, headers, body, body.length, wireLength, null);
+    }
+
+    /**
+     * Constructor for HttpMessage whose body may sit at the start of a longer pooled buffer.
+     * @param startLine The request line or status line.
+     * @param headers The headers, keyed by lower-case name.
+     * @param body The buffer holding the body.
+     * @param bodyLength The number of body bytes in the buffer.
+     * @param wireLength The number of bytes the message took on the wire.
+     * @param pool The pool the buffer came from, or null if it is not pooled.
+     */
+    private HttpMessage(String startLine, Map<String, String> headers, byte[] body, int bodyLength, int wireLength, BufferPool pool) {
+        this.startLine = startLine;
+        this.headers = headers;
+        this.body = body;
+        this.bodyLength = bodyLength;
+        this.wireLength = wireLength;
+        this.pool = pool;
+    }
+
+    /**
+     * Reads one complete message from a blocking stream.
+     * @param in The stream to read from; should be buffered since the head is read byte by byte.
+     * @return The message, or null if the stream ended before a new message started.
+     * @throws IOException If the stream ends mid-message or the message is malformed.
+     */
+    public static HttpMessage read(InputStream in) throws IOException {
+        return read(in, null);
+    }
+
+    /**
+     * Reads one complete response from a blocking stream, checking its status line so
+     * that getStatusCode() cannot fail on it.
+     * @param in The stream to read from; should be buffered since the head is read byte by byte.
+     * @return The response, or null if the stream ended before a new message started.
+     * @throws IOException If the stream ends mid-message, the message is malformed or
+     *         its start line is not a status line.
+     */
+    public static HttpMessage readResponse(InputStream in) throws IOException {
+        HttpMessage response = read(in, null);
+        if (response != null && !isStatusLine(response.startLine)) {
+            throw new IOException("Malformed status line: " + response.startLine);
+        }
+        return response;
+    }
+
+    /**
+     * Checks that a start line is a status line: a version, then a three-digit status.
+     * @param line The start line.
+     * @return true if getStatusCode() can parse it.
+     */
+    private static boolean isStatusLine(String line) {
+        String[] split = line.split(" ", 3);
+        if (split.length < 2 || !split[0].startsWith("HTTP/") || split[1].length() != 3) {
+            return false;
+        }
+        for (int i = 0; i < 3; i++) {
+            if (!Character.isDigit(split[1].charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads one complete message from a blocking stream into a body buffer taken from
+     * a pool. The buffer goes back to the pool on release().
+     * @param in The stream to read from; should be buffered since the head is read byte by byte.
+     * @param pool The pool to take the body buffer from, or null to allocate it.
+     * @return The message, or null if the stream ended before a new message started.
+     * @throws IOException If the stream ends mid-message or the message is malformed, or
+     *         PayloadTooLargeException if a request's body exceeds MAX_BODY_SIZE.
+     */
+    public static HttpMessage read(InputStream in, BufferPool pool) throws IOException {
+        ByteArrayOutputStream head = new ByteArrayOutputStream(256);
+        int matched = 0;
+        int b;
+        while (matched < 4) {
+            b = in.read();
+            if (b < 0) {
+                if (head.size() == 0) {
+                    return null;
+                }
+                throw new EOFException("Connection closed in message head");
+            }
+            // Skip stray line breaks between messages
+            if (head.size() == 0 && (b == '\r' || b == '\n')) {
+                continue;
+            }
+            head.write(b);
+            matched = (b == (matched % 2 == 0 ? '\r' : '\n')) ? matched + 1 : (b == '\r' ? 1 : 0);
+            if (head.size() > MAX_HEAD_SIZE) {
+                throw new IOException("Message head too large");
+            }
+        }
+
+        HttpMessage message = parseHead(new String(head.toByteArray(), 0, head.size() - 4, StandardCharsets.UTF_8), null, 0);
+        int length = message.checkedContentLength();
+        byte[] body = acquire(pool, length);
+        int offset = 0;
+        while (offset < length) {
+            int n = in.read(body, offset, length - offset);
+            if (n < 0) {
+                release(pool, body);
+                throw new EOFException("Connection closed in message body");
+            }
+            offset += n;
+        }
+        return new HttpMessage(message.startLine, message.headers, body, length, head.size() + length, pool);
+    }
+
+    /**
+     * Determines whether a buffer holds a complete message, i.e. the head followed by
+     * Content-Length bytes of body.
+     * @param bytes The buffer.
+     * @param offset The index of the first unread byte.
+     * @param limit The index after the last received byte.
+     * @return The length of the complete message counted from offset, or -1 if more bytes are needed.
+     * @throws IOException If the head is too large or declares an invalid length, or
+     *         PayloadTooLargeException if a request's body exceeds MAX_BODY_SIZE.
+     */
+    public static int frameLength(byte[] bytes, int offset, int limit) throws IOException {
+        for (int i = offset; i + 3 < limit; i++) {
+            if (bytes[i] == '\r' && bytes[i + 1] == '\n' && bytes[i + 2] == '\r' && bytes[i + 3] == '\n') {
+                String head = new String(bytes, offset, i - offset, StandardCharsets.UTF_8);
+                int total = i + 4 - offset + parseHead(head.trim(), null, 0).checkedContentLength();
+                return offset + total <= limit ? total : -1;
+            }
+        }
+        if (limit - offset > MAX_HEAD_SIZE) {
+            throw new IOException("Message head too large");
+        }
+        return -1;
+    }
+
+    /**
+     * Parses a complete message held in memory, as located by frameLength.
+     * @param bytes The buffer.
+     * @param offset The index of the first byte of the message.
+     * @param length The length of the message.
+     * @return The parsed message.
+     * @throws IOException If the message is malformed.
+     */
+    public static HttpMessage parse(byte[] bytes, int offset, int length) throws IOException {
+        return parse(bytes, offset, length, null);
+    }
+
+    /**
+     * Parses a complete message held in memory, copying the body into a buffer taken
+     * from a pool. The buffer goes back to the pool on release().
+     * @param bytes The buffer.
+     * @param offset The index of the first byte of the message.
+     * @param length The length of the message.
+     * @param pool The pool to take the body buffer from, or null to allocate it.
+     * @return The parsed message.
+     * @throws IOException If the message is malformed.
+     */
+    public static HttpMessage parse(byte[] bytes, int offset, int length, BufferPool pool) throws IOException {
+        int end = offset + length;
+        for (int i = offset; i + 3 < end; i++) {
+            if (bytes[i] == '\r' && bytes[i + 1] == '\n' && bytes[i + 2] == '\r' && bytes[i + 3] == '\n') {
+                HttpMessage message = parseHead(new String(bytes, offset, i - offset, StandardCharsets.UTF_8).trim(), null, length);
+                int bodyLength = end - i - 4;
+                byte[] body = acquire(pool, bodyLength);
+                System.arraycopy(bytes, i + 4, body, 0, bodyLength);
+                return new HttpMessage(message.startLine, message.headers, body, bodyLength, length, pool);
+            }
+        }
+        throw new IOException("Incomplete message head");
+    }
+
+    /**
+     * Takes a body buffer from a pool, or allocates an exact one without a pool.
+     * @param pool The pool, or null.
+     * @param length The body length.
+     * @return The buffer.
+     */
+    private static byte[] acquire(BufferPool pool, int length) {
+        if (length == 0) {
+            return EMPTY_BODY;
+        }
+        return pool == null ? new byte[length] : pool.acquire(length);
+    }
+
+    /**
+     * Returns a body buffer to its pool, if it has one.
+     * @param pool The pool, or null.
+     * @param buffer The buffer.
+     */
+    private static void release(BufferPool pool, byte[] buffer) {
+        if (pool != null && buffer != EMPTY_BODY) {
+            pool.release(buffer);
+        }
+    }
+
+    /**
+     * Splits a head into its start line and headers.
+     * @param head The head without the terminating blank line.
+     * @param body The body bytes, or null if not yet known.
+     * @param wireLength The length of the whole message on the wire, or 0 if not yet known.
+     * @return The message.
+     * @throws IOException If the head is empty or Content-Length is invalid.
+     */
+    private static HttpMessage parseHead(String head, byte[] body, int wireLength) throws IOException {
+        String[] lines = head.split("\r\n");
+        if (lines.length == 0 || lines[0].isEmpty()) {
+            throw new IOException("Empty message head");
+        }
+        Map<String, String> headers = new HashMap<>();
+        for (int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+            if (colon > 0) {
+                headers.put(lines[i].substring(0, colon).trim().toLowerCase(), lines[i].substring(colon + 1).trim());
+            }
+        }
+        String contentLength = headers.get("content-length");
+        if (contentLength != null) {
+            try {
+                if (Integer.parseInt(contentLength) < 0) {
+                    throw new IOException("Negative Content-Length");
+                }
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid Content-Length: " + contentLength);
+            }
+        }
+        return new HttpMessage(lines[0], headers, body == null ? EMPTY_BODY : body, wireLength);
+    }
+
+    /**
+     * Gets the request line or status line.
+     * @return The start line.
+     */
+    public String getStartLine() {
+        return startLine;
+    }
+
+    /**
+     * Gets the method of a request.
+     * @return The method token.
+     */
+    public String getMethod() {
+        return startLine.split(" ", 3)[0];
+    }
+
+    /**
+     * Gets the number of bytes the message took on the wire, head and body included.
+     * @return The length in bytes.
+     */
+    public int getWireLength() {
+        return wireLength;
+    }
+
+    /**
+     * Gets the request target, including any query string.
+     * @return The target, or an empty string if absent.
+     */
+    public String getTarget() {
+        String[] split = startLine.split(" ", 3);
+        return split.length > 1 ? split[1] : "";
+    }
+
+    /**
+     * Gets the path of the request target, without the query string.
+     * @return The path.
+     */
+    public String getPath() {
+        String target = getTarget();
+        int query = target.indexOf('?');
+        return query < 0 ? target : target.substring(0, query);
+    }
+
+    /**
+     * Gets the decoded query parameters of the request target. A parameter may be
+     * repeated, so each name maps to all of its values in order.
+     * @return The parameters, empty if there is no query string.
+     * @throws IllegalArgumentException If a parameter is not validly percent-encoded.
+     */
+    public Map<String, List<String>> getQueryParameters() {
+        Map<String, List<String>> parameters = new LinkedHashMap<>();
+        String target = getTarget();
+        int query = target.indexOf('?');
+        if (query < 0) {
+            return parameters;
+        }
+        for (String pair : target.substring(query + 1).split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int equals = pair.indexOf('=');
+            String name = URLDecoder.decode(equals < 0 ? pair : pair.substring(0, equals), StandardCharsets.UTF_8);
+            String value = equals < 0 ? "" : URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8);
+            parameters.computeIfAbsent(name, k -> new ArrayList<>()).add(value);
+        }
+        return parameters;
+    }
+
+    /**
+     * Gets the HTTP version of a request.
+     * @return The version, or HTTP/1.1 if absent.
+     */
+    public String getVersion() {
+        String[] split = startLine.split(" ", 3);
+        return split.length > 2 ? split[2].trim() : "HTTP/1.1";
+    }
+
+    /**
+     * Gets the status code of a response.
+     * @return The status code.
+     * @throws NumberFormatException If the start line has no numeric status.
+     */
+    public int getStatusCode() {
+        return Integer.parseInt(startLine.split(" ", 3)[1]);
+    }
+
+    /**
+     * Gets a header value.
+     * @param name The header name, case-insensitive.
+     * @return The value, or null if absent.
+     */
+    public String getHeader(String name) {
+        return headers.get(name.toLowerCase());
+    }
+
+    /**
+     * Gets the declared body length.
+     * @return The Content-Length value, or 0 if absent.
+     */
+    public int getContentLength() {
+        String value = headers.get("content-length");
+        return value == null ? 0 : Integer.parseInt(value);
+    }
+
+    /**
+     * Gets the declared body length, checked before any buffer is sized from it. The
+     * limit applies to requests only: responses are read by the clients from servers
+     * they chose, and a full aggregate may well exceed it.
+     * @return The body length.
+     * @throws IOException If the length is not a valid number, or
+     *         PayloadTooLargeException if a request's body exceeds MAX_BODY_SIZE.
+     */
+    private int checkedContentLength() throws IOException {
+        String value = headers.get("content-length");
+        if (value == null) {
+            return 0;
+        }
+        long length;
+        try {
+            length = Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid Content-Length: " + value);
+        }
+        boolean response = startLine.startsWith("HTTP/");
+        if (length < 0 || (response && length > Integer.MAX_VALUE - 8)) {
+            throw new IOException("Invalid Content-Length: " + value);
+        }
+        if (!response && length > MAX_BODY_SIZE) {
+            throw new PayloadTooLargeException(length);
+        }
+        return (int) length;
+    }
+
+    /**
+     * Gets the body bytes.
+     * @return The body, copied out if it sits in a longer pooled buffer.
+     */
+    public byte[] getBody() {
+        return body.length == bodyLength ? body : Arrays.copyOf(body, bodyLength);
+    }
+
+    /**
+     * Gets the buffer holding the body without copying it. Only the first
+     * getBodyLength() bytes belong to the body, and a pooled buffer is only valid
+     * until release().
+     * @return The body buffer.
+     */
+    public byte[] getBodyBuffer() {
+        return body;
+    }
+
+    /**
+     * Gets the number of body bytes.
+     * @return The body length.
+     */
+    public int getBodyLength() {
+        return bodyLength;
+    }
+
+    /**
+     * Gets the body decoded as UTF-8.
+     * @return The body text.
+     */
+    public String getBodyAsString() {
+        return new String(body, 0, bodyLength, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns a pooled body buffer to its pool once the message has been handled.
+     * The body must not be used afterwards; calling this again has no effect.
+     */
+    public void release() {
+        BufferPool owner = pool;
+        if (owner != null) {
+            pool = null;
+            byte[] buffer = body;
+            body = EMPTY_BODY;
+            release(owner, buffer);
+        }
+    }
+
+    /**
+     * Determines whether the connection should stay open after this message.
+     * HTTP/1.1 connections persist unless closed explicitly; HTTP/1.0 ones only on request.
+     * @return true if the connection should be kept alive.
+     */
+    public boolean isKeepAlive() {
+        String connection = getHeader("Connection");
+        if (connection != null) {
+            return !connection.equalsIgnoreCase("close");
+        }
+        return !startLine.contains("HTTP/1.0");
+    }
+}
@@ -0,0 +1,536 @@
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * JsonRecordParser reads a JSON object, or an array of them, from UTF-8 bytes straight
+ * into WeatherRecord.Builders, without building an intermediate JSONObject or decoding the
+ * body into a String first. Any whitespace and line breaks are accepted. Known keys
+ * map to shared constant strings, and numbers of the known numeric fields are parsed
+ * to primitive doubles, so a typical observation costs little more than its text values.
+ *
+ * Values of other fields are converted the same way JSONObject would, and nested
+ * objects or arrays are handed to JSONObject and JSONArray, so the record is the same
+ * as one built with WeatherRecord.fromJson(). Malformed input, including duplicate
+ * keys, is reported with a JSONException.
+ */
+public final class JsonRecordParser {
+    private static final String[] KNOWN_KEYS = {
+        "id", "name", "state", "time_zone", "local_date_time", "local_date_time_full", "cloud", "wind_dir",
+        "lat", "lon", "air_temp", "apparent_t", "dewpt", "press", "rel_hum", "wind_spd_kmh", "wind_spd_kt"
+    };
+    private static final int FIRST_NUMERIC_KEY = 8;
+    private static final byte[][] KNOWN_KEY_BYTES = new byte[KNOWN_KEYS.length][];
+    private static final double[] POWERS_OF_TEN = new double[23];
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    static {
+        for (int i = 0; i < KNOWN_KEYS.length; i++) {
+            KNOWN_KEY_BYTES[i] = KNOWN_KEYS[i].getBytes(StandardCharsets.UTF_8);
+        }
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final byte[] bytes;
+    private final int end;
+    private int pos;
+    private int seenKnownKeys;
+    private List<String> seenOtherKeys;
+    private int keyIndex;
+
+    /**
+     * Constructor for JsonRecordParser.
+     * @param bytes The buffer holding the JSON text.
+     * @param offset The index of the first byte of the text.
+     * @param length The length of the text.
+     */
+    private JsonRecordParser(byte[] bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.pos = offset;
+        this.end = offset + length;
+    }
+
+    /**
+     * Parses a JSON object into a builder, one field at a time.
+     * @param bytes The buffer holding the UTF-8 JSON text.
+     * @param offset The index of the first byte of the text.
+     * @param length The length of the text.
+     * @param builder The builder to set the fields on.
+     * @return The number of fields in the object.
+     * @throws JSONException If the text is not exactly one well-formed JSON object.
+     */
+    public static int parse(byte[] bytes, int offset, int length, WeatherRecord.Builder builder) {
+        JsonRecordParser parser = new JsonRecordParser(bytes, offset, length);
+        parser.skipWhitespace();
+        int fields = parser.readObject(builder);
+        parser.expectEnd();
+        return fields;
+    }
+
+    /**
+     * Parses a JSON array of objects into one builder per element, as sent by a bulk
+     * PUT. Elements that are not objects are consumed and reported as null, so the
+     * remaining records can still be stored.
+     * @param bytes The buffer holding the UTF-8 JSON text.
+     * @param offset The index of the first byte of the text.
+     * @param length The length of the text.
+     * @return The builders in array order, with null for elements that are not objects.
+     * @throws JSONException If the text is not exactly one well-formed JSON array.
+     */
+    public static List<WeatherRecord.Builder> parseArray(byte[] bytes, int offset, int length) {
+        JsonRecordParser parser = new JsonRecordParser(bytes, offset, length);
+        List<WeatherRecord.Builder> records = new ArrayList<>();
+        parser.skipWhitespace();
+        parser.expect('[');
+        parser.skipWhitespace();
+        if (parser.peek() == ']') {
+            parser.pos++;
+        } else {
+            while (true) {
+                parser.skipWhitespace();
+                if (parser.peek() == '{') {
+                    WeatherRecord.Builder builder = new WeatherRecord.Builder();
+                    parser.readObject(builder);
+                    records.add(builder);
+                } else {
+                    parser.readValue();
+                    records.add(null);
+                }
+                parser.skipWhitespace();
+                byte next = parser.peek();
+                parser.pos++;
+                if (next == ']') {
+                    break;
+                }
+                if (next != ',') {
+                    throw parser.error("Expected ',' or ']'");
+                }
+            }
+        }
+        parser.expectEnd();
+        return records;
+    }
+
+    /**
+     * Reads one object starting at the current position.
+     * @param builder The builder to set the fields on.
+     * @return The number of fields.
+     */
+    private int readObject(WeatherRecord.Builder builder) {
+        seenKnownKeys = 0;
+        seenOtherKeys = null;
+        expect('{');
+        int fields = 0;
+        skipWhitespace();
+        if (peek() == '}') {
+            pos++;
+        } else {
+            while (true) {
+                skipWhitespace();
+                if (peek() != '"') {
+                    throw error("Expected a string key");
+                }
+                String key = readKey();
+                skipWhitespace();
+                expect(':');
+                skipWhitespace();
+                byte first = peek();
+                if (keyIndex >= FIRST_NUMERIC_KEY && (first == '-' || isDigit(first))) {
+                    readNumericField(key, builder);
+                } else {
+                    builder.field(key, readValue());
+                }
+                fields++;
+                skipWhitespace();
+                byte next = peek();
+                pos++;
+                if (next == '}') {
+                    break;
+                }
+                if (next != ',') {
+                    throw error("Expected ',' or '}'");
+                }
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * Checks that nothing but whitespace follows the parsed value.
+     */
+    private void expectEnd() {
+        skipWhitespace();
+        if (pos < end) {
+            throw error("Unexpected data after the value");
+        }
+    }
+
+    /**
+     * Reads a key, returning the shared constant for known keys and rejecting keys
+     * already seen in this object.
+     * @return The key.
+     */
+    private String readKey() {
+        int start = pos + 1;
+        int close = start;
+        while (close < end && bytes[close] != '"' && bytes[close] != '\\') {
+            close++;
+        }
+        String key = null;
+        keyIndex = -1;
+        if (close < end && bytes[close] == '"') {
+            for (int i = 0; i < KNOWN_KEY_BYTES.length; i++) {
+                if (regionEquals(start, close - start, KNOWN_KEY_BYTES[i])) {
+                    keyIndex = i;
+                    key = KNOWN_KEYS[i];
+                    pos = close + 1;
+                    break;
+                }
+            }
+        }
+        if (key == null) {
+            key = readString();
+            for (int i = 0; i < KNOWN_KEYS.length && keyIndex < 0; i++) {
+                if (KNOWN_KEYS[i].equals(key)) {
+                    keyIndex = i;
+                    key = KNOWN_KEYS[i];
+                }
+            }
+        }
+
+        if (keyIndex >= 0) {
+            if ((seenKnownKeys & (1 << keyIndex)) != 0) {
+                throw error("Duplicate key " + JSONObject.quote(key));
+            }
+            seenKnownKeys |= 1 << keyIndex;
+        } else {
+            if (seenOtherKeys == null) {
+                seenOtherKeys = new ArrayList<>();
+            } else if (seenOtherKeys.contains(key)) {
+                throw error("Duplicate key " + JSONObject.quote(key));
+            }
+            seenOtherKeys.add(key);
+        }
+        return key;
+    }
+
+    /**
+     * Reads a number for a known numeric field and sets it without boxing. Numbers that
+     * do not fit a double are passed on as JSONObject would convert them.
+     * @param key The field name.
+     * @param builder The builder to set the field on.
+     */
+    private void readNumericField(String key, WeatherRecord.Builder builder) {
+        int start = pos;
+        double value = scanNumber();
+        if (Double.isNaN(value)) {
+            value = Double.parseDouble(ascii(start, pos));
+        }
+        if (Double.isFinite(value)) {
+            builder.numberField(key, value);
+        } else {
+            builder.field(key, JSONObject.stringToValue(ascii(start, pos)));
+        }
+    }
+
+    /**
+     * Reads any JSON value.
+     * @return The value as JSONObject would represent it.
+     */
+    private Object readValue() {
+        byte first = peek();
+        switch (first) {
+            case '"':
+                return readString();
+            case '{':
+            case '[': {
+                int start = pos;
+                skipNested();
+                String raw = new String(bytes, start, pos - start, StandardCharsets.UTF_8);
+                return first == '{' ? new JSONObject(raw) : new JSONArray(raw);
+            }
+            case 't':
+                expectLiteral("true");
+                return Boolean.TRUE;
+            case 'f':
+                expectLiteral("false");
+                return Boolean.FALSE;
+            case 'n':
+                expectLiteral("null");
+                return JSONObject.NULL;
+            default:
+                if (first == '-' || isDigit(first)) {
+                    int start = pos;
+                    scanNumber();
+                    return JSONObject.stringToValue(ascii(start, pos));
+                }
+                throw error("Unexpected character");
+        }
+    }
+
+    /**
+     * Scans a number, checking the JSON number grammar. Short decimals are converted on
+     * the way: a mantissa below 2^53 divided by an exact power of ten is correctly rounded.
+     * @return The value, or NaN if the number needs the slow path.
+     */
+    private double scanNumber() {
+        boolean negative = false;
+        if (peek() == '-') {
+            negative = true;
+            pos++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean exact = true;
+        if (peek() == '0') {
+            pos++;
+        } else if (isDigit(peek())) {
+            while (pos < end && isDigit(bytes[pos])) {
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (bytes[pos] - '0');
+                    digits++;
+                } else {
+                    exact = false;
+                }
+                pos++;
+            }
+        } else {
+            throw error("Invalid number");
+        }
+        if (pos < end && bytes[pos] == '.') {
+            pos++;
+            if (!(pos < end && isDigit(bytes[pos]))) {
+                throw error("Invalid number");
+            }
+            while (pos < end && isDigit(bytes[pos])) {
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (bytes[pos] - '0');
+                    digits++;
+                    fractionDigits++;
+                } else {
+                    exact = false;
+                }
+                pos++;
+            }
+        }
+        if (pos < end && (bytes[pos] == 'e' || bytes[pos] == 'E')) {
+            pos++;
+            if (pos < end && (bytes[pos] == '+' || bytes[pos] == '-')) {
+                pos++;
+            }
+            if (!(pos < end && isDigit(bytes[pos]))) {
+                throw error("Invalid number");
+            }
+            while (pos < end && isDigit(bytes[pos])) {
+                pos++;
+            }
+            exact = false;
+        }
+        if (!exact || mantissa >= MAX_EXACT_MANTISSA) {
+            return Double.NaN;
+        }
+        double value = mantissa / POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+
+    /**
+     * Reads a string value, decoding escapes. Strings without escapes are decoded
+     * directly from the buffer.
+     * @return The string.
+     */
+    private String readString() {
+        expect('"');
+        int start = pos;
+        while (pos < end) {
+            byte b = bytes[pos];
+            if (b == '"') {
+                pos++;
+                return new String(bytes, start, pos - 1 - start, StandardCharsets.UTF_8);
+            }
+            if (b == '\\') {
+                return readEscapedString(start);
+            }
+            if ((b & 0xff) < 0x20) {
+                throw error("Unescaped control character in string");
+            }
+            pos++;
+        }
+        throw error("Unterminated string");
+    }
+
+    /**
+     * Finishes reading a string once an escape has been found.
+     * @param start The index of the first byte of the string's content.
+     * @return The string.
+     */
+    private String readEscapedString(int start) {
+        StringBuilder out = new StringBuilder(pos - start + 16);
+        int run = start;
+        while (pos < end) {
+            byte b = bytes[pos];
+            if (b == '"') {
+                out.append(new String(bytes, run, pos - run, StandardCharsets.UTF_8));
+                pos++;
+                return out.toString();
+            }
+            if ((b & 0xff) < 0x20) {
+                throw error("Unescaped control character in string");
+            }
+            if (b != '\\') {
+                pos++;
+                continue;
+            }
+            out.append(new String(bytes, run, pos - run, StandardCharsets.UTF_8));
+            if (pos + 1 >= end) {
+                break;
+            }
+            byte escape = bytes[pos + 1];
+            pos += 2;
+            switch (escape) {
+                case '"': out.append('"'); break;
+                case '\\': out.append('\\'); break;
+                case '/': out.append('/'); break;
+                case 'b': out.append('\b'); break;
+                case 'f': out.append('\f'); break;
+                case 'n': out.append('\n'); break;
+                case 'r': out.append('\r'); break;
+                case 't': out.append('\t'); break;
+                case 'u': out.append(readHexChar()); break;
+                default: throw error("Invalid escape sequence");
+            }
+            run = pos;
+        }
+        throw error("Unterminated string");
+    }
+
+    /**
+     * Reads the four hex digits of a \\u escape.
+     * @return The escaped character.
+     */
+    private char readHexChar() {
+        if (pos + 4 > end) {
+            throw error("Invalid unicode escape");
+        }
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            int digit = Character.digit(bytes[pos++], 16);
+            if (digit < 0) {
+                throw error("Invalid unicode escape");
+            }
+            value = value << 4 | digit;
+        }
+        return (char) value;
+    }
+
+    /**
+     * Skips a nested object or array, including any strings inside it. Its structure is
+     * checked when JSONObject or JSONArray parses the skipped text.
+     */
+    private void skipNested() {
+        int depth = 0;
+        while (pos < end) {
+            byte b = bytes[pos++];
+            if (b == '"') {
+                while (pos < end && bytes[pos] != '"') {
+                    pos += bytes[pos] == '\\' ? 2 : 1;
+                }
+                pos++;
+            } else if (b == '{' || b == '[') {
+                depth++;
+            } else if (b == '}' || b == ']') {
+                if (--depth == 0) {
+                    return;
+                }
+            }
+        }
+        throw error("Unterminated value");
+    }
+
+    /**
+     * Consumes a literal such as true, false or null.
+     * @param literal The expected literal.
+     */
+    private void expectLiteral(String literal) {
+        for (int i = 0; i < literal.length(); i++) {
+            if (pos >= end || bytes[pos] != literal.charAt(i)) {
+                throw error("Invalid literal");
+            }
+            pos++;
+        }
+    }
+
+    /**
+     * Consumes one expected byte.
+     * @param expected The expected character.
+     */
+    private void expect(char expected) {
+        if (peek() != expected) {
+            throw error("Expected '" + expected + "'");
+        }
+        pos++;
+    }
+
+    /**
+     * Gets the next byte without consuming it.
+     * @return The byte.
+     */
+    private byte peek() {
+        if (pos >= end) {
+            throw error("Unexpected end of input");
+        }
+        return bytes[pos];
+    }
+
+    /**
+     * Skips JSON whitespace: spaces, tabs and line breaks.
+     */
+    private void skipWhitespace() {
+        while (pos < end && (bytes[pos] == ' ' || bytes[pos] == '\n' || bytes[pos] == '\r' || bytes[pos] == '\t')) {
+            pos++;
+        }
+    }
+
+    /**
+     * Checks whether a region of the input equals the given bytes.
+     * @return true if they are equal.
+     */
+    private boolean regionEquals(int start, int length, byte[] expected) {
+        if (length != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (bytes[start + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes a region known to hold only ASCII characters.
+     * @return The text.
+     */
+    private String ascii(int start, int stop) {
+        return new String(bytes, start, stop - start, StandardCharsets.ISO_8859_1);
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    /**
+     * Creates an exception that points at the current position.
+     * @param message The problem found.
+     * @return The exception to throw.
+     */
+    private JSONException error(String message) {
+        return new JSONException(message + " at byte " + pos);
+    }
+}
@@ -1,15 +1,18 @@
-import java.io.IOException;
-import java.util.logging.*;
 import java.nio.file.Paths;
-import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Represents a Lamport Clock for logical time in distributed systems.
  * This class provides methods to manage and log logical time events.
+ * The value is a lock-free AtomicLong, and events are handed to an asynchronous
+ * EventLog instead of being written on the calling thread.
  */
 public class LamportClock {
     private String time;
-    private int value;
+    private final AtomicLong value = new AtomicLong();
+    private final EventLog events;
+    private final AtomicBoolean closed = new AtomicBoolean();
 
     /**
      * Constructs a new LamportClock instance.
@@ -17,26 +20,38 @@ public class LamportClock {
      */
     public LamportClock() {
         this.time = String.format("%04d", System.currentTimeMillis());
-        this.value = 0;
+        this.events = EventLog.forFile(Paths.get("logs", this.time + ".log"));
+    }
+
+    /**
+     * Constructs a new LamportClock instance whose event log can queue the given
+     * number of events before dropping new ones.
+     *
+     * @param logCapacity The event log ring size
+     */
+    public LamportClock(int logCapacity) {
+        this.time = String.format("%04d", System.currentTimeMillis());
+        this.events = EventLog.forFile(Paths.get("logs", this.time + ".log"), logCapacity);
     }
 
     /**
      * Increments the logical clock value.
-     * This method is synchronized to ensure thread-safety.
+     *
+     * @return The new value of the logical clock
      */
-    public synchronized void tick() {
-        value++;
+    public long tick() {
+        return value.updateAndGet(LamportClock::next);
     }
 
     /**
      * Updates the logical clock value based on a received value.
-     * This method is synchronized to ensure thread-safety.
      *
      * @param newValue The received logical clock value
+     * @return The new value of the logical clock
      */
-    public synchronized void update(int newValue) {
+    public long update(long newValue) {
         // Set the value to the maximum of the received value + 1 and the current value + 1
-        value = Math.max(newValue + 1, value + 1);
+        return value.accumulateAndGet(newValue, (current, received) -> next(Math.max(current, received)));
     }
 
     /**
@@ -44,43 +59,58 @@ public class LamportClock {
      *
      * @return The current value of the logical clock
      */
-    public int getValue() {
-        return value;
+    public long getValue() {
+        return value.get();
     }
 
     /**
-     * Logs an event with the current logical clock value.
+     * Logs an event with the current logical clock value. The event is queued and
+     * written by a background thread, so this never waits for the disk.
      *
      * @param eventName The name of the event to be logged
      */
     public void log(String eventName) {
-        Logger logger = Logger.getLogger("lamportlogger");
-        String logDirPath = "logs";
-        String logFilePath = logDirPath + "/" + this.time + ".log";
-        FileHandler handler = null;
-        try {
-            // Create the log directory if it doesn't exist
-            Files.createDirectories(Paths.get(logDirPath));
-            
-            // Set up the file handler for logging
-            handler = new FileHandler(logFilePath, true);
-            logger.addHandler(handler);
-            logger.setUseParentHandlers(false);
-            
-            // Set up the formatter for log messages
-            SimpleFormatter formatter = new SimpleFormatter();
-            handler.setFormatter(formatter);
-            
-            // Log the event with the current logical clock value
-            logger.info(eventName + " " + value);
-        } catch (IOException e) {
-            // Print error message if logging fails
-            System.err.println("Failed to log event: " + e.getMessage());
-        } finally {
-            // Ensure the handler is closed to release resources
-            if (handler != null) {
-                handler.close();
-            }
+        events.append(eventName, value.get());
+    }
+
+    /**
+     * Logs an event with the clock value it happened at, as returned by tick() or
+     * update(), which may be older than the current value under concurrency.
+     *
+     * @param eventName The name of the event to be logged
+     * @param eventValue The logical clock value of the event
+     */
+    public void log(String eventName, long eventValue) {
+        events.append(eventName, eventValue);
+    }
+
+    /**
+     * Gets the event log this clock writes to.
+     *
+     * @return The event log
+     */
+    public EventLog getEventLog() {
+        return events;
+    }
+
+    /**
+     * Writes out the events logged so far and releases this clock's use of its event
+     * log. Calling it again does nothing.
+     */
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            events.close();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Computes the successor of a clock value, saturating at Long.MAX_VALUE rather
+     * than wrapping around to negative values.
+     *
+     * @param current The value to advance
+     * @return The next value
+     */
+    private static long next(long current) {
+        return current == Long.MAX_VALUE ? current : Math.max(current, -1) + 1;
+    }
+}
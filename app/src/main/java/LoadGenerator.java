@@ -0,0 +1,358 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.json.JSONObject;
+
+/**
+ * LoadGenerator drives an AggregationServer with many simulated station feeds and
+ * pollers at once, using the same PUT and GET requests as ContentServer and GETClient.
+ * Every feed and poller keeps one keep-alive connection and sends at a fixed rate.
+ *
+ * Latency is measured from the time a request was due rather than from the time it
+ * was sent, so a stalled server is charged for the requests that queued up behind the
+ * stall instead of hiding them. Throughput and latency percentiles are reported per
+ * operation type at the end of the run.
+ */
+public class LoadGenerator {
+    private final String address;
+    private final int port;
+    private int feeds = 100;
+    private int pollers = 10;
+    private double putRate = 1.0;
+    private double getRate = 1.0;
+    private long durationSeconds = 30;
+    private int payloadBytes = 0;
+    private boolean pollStations = false;
+    private final LamportClock clock = new LamportClock();
+    private final Operation puts = new Operation("PUT");
+    private final Operation gets = new Operation("GET");
+
+    /**
+     * Counters and latencies of one operation type.
+     */
+    private static class Operation {
+        private final String name;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+
+        Operation(String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * Constructor for LoadGenerator.
+     * @param address The server address.
+     * @param port The server port.
+     */
+    public LoadGenerator(String address, int port) {
+        this.address = address;
+        this.port = port;
+    }
+
+    /**
+     * Sets how many station feeds send PUTs and how often.
+     * @param feeds The number of concurrent feeds.
+     * @param putRate The PUTs per second sent by each feed.
+     */
+    public void setFeeds(int feeds, double putRate) {
+        this.feeds = feeds;
+        this.putRate = putRate;
+    }
+
+    /**
+     * Sets how many pollers send GETs and how often.
+     * @param pollers The number of concurrent pollers.
+     * @param getRate The GETs per second sent by each poller.
+     * @param pollStations Whether each poller asks for one station instead of the aggregate.
+     */
+    public void setPollers(int pollers, double getRate, boolean pollStations) {
+        this.pollers = pollers;
+        this.getRate = getRate;
+        this.pollStations = pollStations;
+    }
+
+    /**
+     * Sets the length of the run.
+     * @param durationSeconds The duration in seconds.
+     */
+    public void setDuration(long durationSeconds) {
+        this.durationSeconds = durationSeconds;
+    }
+
+    /**
+     * Sets the minimum size of each PUT body; records are padded up to it.
+     * @param payloadBytes The payload size in bytes, or 0 for plain records.
+     */
+    public void setPayloadBytes(int payloadBytes) {
+        this.payloadBytes = payloadBytes;
+    }
+
+    /**
+     * Runs all feeds and pollers until the duration has passed, then prints the report.
+     * @throws InterruptedException If interrupted while waiting for the run to finish.
+     */
+    public void run() throws InterruptedException {
+        ExecutorService executor = VirtualThreadEngine.newVirtualThreadExecutor(Executors::newCachedThreadPool);
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(durationSeconds);
+        System.out.println("Running " + feeds + " feeds at " + putRate + " PUT/s and " + pollers + " pollers at "
+                + getRate + " GET/s each against " + address + ":" + port + " for " + durationSeconds + "s");
+
+        for (int i = 0; i < feeds; i++) {
+            int feed = i;
+            executor.execute(() -> runFeed(feed, end));
+        }
+        for (int i = 0; i < pollers; i++) {
+            executor.execute(() -> runPoller(end));
+        }
+        executor.shutdown();
+        executor.awaitTermination(durationSeconds + 60, TimeUnit.SECONDS);
+        executor.shutdownNow();
+
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        System.out.println(report(puts, elapsed));
+        System.out.println(report(gets, elapsed));
+        clock.close();
+    }
+
+    /**
+     * Sends PUTs for one simulated station until the end time.
+     * @param feed The feed number, used to derive the station id.
+     * @param end The end time in System.nanoTime() units.
+     */
+    private void runFeed(int feed, long end) {
+        JSONObject record = buildRecord(String.format("LOAD%06d", feed));
+        run(puts, putRate, end, () -> {
+            record.put("air_temp", Math.round(ThreadLocalRandom.current().nextDouble(-10, 45) * 10) / 10.0);
+            byte[] body = record.toString().getBytes(StandardCharsets.UTF_8);
+            byte[] head = ContentServer.buildPutHead(body.length, clock.tick());
+            byte[] request = new byte[head.length + body.length];
+            System.arraycopy(head, 0, request, 0, head.length);
+            System.arraycopy(body, 0, request, head.length, body.length);
+            return request;
+        });
+    }
+
+    /**
+     * Sends GETs until the end time, for the aggregate or for random simulated stations.
+     * @param end The end time in System.nanoTime() units.
+     */
+    private void runPoller(long end) {
+        run(gets, getRate, end, () -> {
+            String station = pollStations && feeds > 0
+                    ? String.format("LOAD%06d", ThreadLocalRandom.current().nextInt(feeds))
+                    : "NULL";
+            return GETClient.buildRequest(station, clock.tick()).getBytes(StandardCharsets.UTF_8);
+        });
+    }
+
+    /**
+     * Supplies the next request to send.
+     */
+    private interface RequestSource {
+        byte[] next();
+    }
+
+    /**
+     * Sends requests on one keep-alive connection at a fixed rate until the end time,
+     * reconnecting after failures. The first request is due at a random offset within
+     * the interval so that simulated clients do not fire in lockstep.
+     * @param operation The operation to record results in.
+     * @param rate The requests per second.
+     * @param end The end time in System.nanoTime() units.
+     * @param source Supplies each request.
+     */
+    private void run(Operation operation, double rate, long end, RequestSource source) {
+        if (rate <= 0) {
+            return;
+        }
+        long interval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        long due = System.nanoTime() + ThreadLocalRandom.current().nextLong(Math.max(1, interval));
+        Socket socket = null;
+        InputStream input = null;
+        OutputStream output = null;
+        try {
+            while (due < end) {
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+                try {
+                    if (socket == null) {
+                        socket = new Socket(address, port);
+                        socket.setSoTimeout(10000);
+                        input = new BufferedInputStream(socket.getInputStream());
+                        output = new BufferedOutputStream(socket.getOutputStream());
+                    }
+                    byte[] request = source.next();
+                    output.write(request);
+                    output.flush();
+                    HttpMessage response = HttpMessage.readResponse(input);
+                    if (response == null) {
+                        throw new EOFException("Connection closed by server");
+                    }
+                    String lamport = response.getHeader("Lamport-Clock");
+                    if (lamport != null) {
+                        clock.update(Long.parseLong(lamport));
+                    }
+                    int status = response.getStatusCode();
+                    if (status >= 200 && status < 400) {
+                        operation.latency.record(System.nanoTime() - due);
+                        operation.bytes.add(request.length + response.getBody().length);
+                    } else {
+                        operation.errors.increment();
+                    }
+                    if (!response.isKeepAlive()) {
+                        socket.close();
+                        socket = null;
+                    }
+                } catch (IOException | RuntimeException e) {
+                    operation.errors.increment();
+                    closeQuietly(socket);
+                    socket = null;
+                }
+                due += interval;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closeQuietly(socket);
+        }
+    }
+
+    /**
+     * Builds the record a simulated station sends, padded to the configured payload size.
+     * @param id The station id.
+     * @return The record.
+     */
+    private JSONObject buildRecord(String id) {
+        JSONObject record = new JSONObject()
+                .put("id", id)
+                .put("name", "Load test station " + id)
+                .put("state", "SA")
+                .put("time_zone", "CST")
+                .put("lat", -34.9)
+                .put("lon", 138.6)
+                .put("local_date_time", "15/04:00pm")
+                .put("local_date_time_full", "20230715160000")
+                .put("air_temp", 13.3)
+                .put("apparent_t", 9.5)
+                .put("cloud", "Partly cloudy")
+                .put("dewpt", 5.7)
+                .put("press", 1023.9)
+                .put("rel_hum", 60)
+                .put("wind_dir", "S")
+                .put("wind_spd_kmh", 15)
+                .put("wind_spd_kt", 8);
+        int missing = payloadBytes - record.toString().length() - ",\"padding\":\"\"".length();
+        if (missing > 0) {
+            StringBuilder padding = new StringBuilder(missing);
+            for (int i = 0; i < missing; i++) {
+                padding.append('x');
+            }
+            record.put("padding", padding.toString());
+        }
+        return record;
+    }
+
+    /**
+     * Formats the results of one operation type.
+     * @param operation The operation.
+     * @param elapsedSeconds The length of the run in seconds.
+     * @return The report line.
+     */
+    private static String report(Operation operation, double elapsedSeconds) {
+        LatencyHistogram latency = operation.latency;
+        long count = latency.getCount();
+        return String.format("%-4s ops=%d errors=%d throughput=%.1f/s bytes=%d p50=%.3fms p99=%.3fms p99.9=%.3fms max=%.3fms",
+                operation.name, count, operation.errors.sum(), count / elapsedSeconds, operation.bytes.sum(),
+                millis(latency.getValueAtPercentile(50)), millis(latency.getValueAtPercentile(99)),
+                millis(latency.getValueAtPercentile(99.9)), millis(latency.getMax()));
+    }
+
+    /**
+     * Converts nanoseconds to milliseconds.
+     * @param nanos The duration in nanoseconds.
+     * @return The duration in milliseconds.
+     */
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    /**
+     * Closes a socket, ignoring errors.
+     * @param socket The socket, or null.
+     */
+    private static void closeQuietly(Socket socket) {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already broken, nothing to do
+            }
+        }
+    }
+
+    /**
+     * Main method to run the load generator.
+     * @param args host:port [--feeds=n] [--put-rate=r] [--pollers=n] [--get-rate=r]
+     *             [--poll=all|station] [--duration=s] [--payload-bytes=n]
+     */
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length < 1 || !args[0].contains(":")) {
+            System.out.println("usage: LoadGenerator host:port [--feeds=n] [--put-rate=r] [--pollers=n] [--get-rate=r]"
+                    + " [--poll=all|station] [--duration=s] [--payload-bytes=n]");
+            return;
+        }
+        int colon = args[0].lastIndexOf(':');
+        LoadGenerator generator = new LoadGenerator(args[0].substring(0, colon), Integer.parseInt(args[0].substring(colon + 1)));
+        int feeds = generator.feeds;
+        double putRate = generator.putRate;
+        int pollers = generator.pollers;
+        double getRate = generator.getRate;
+        boolean pollStations = generator.pollStations;
+        List<String> unknown = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            String arg = args[i];
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--feeds=")) {
+                feeds = Integer.parseInt(value);
+            } else if (arg.startsWith("--put-rate=")) {
+                putRate = Double.parseDouble(value);
+            } else if (arg.startsWith("--pollers=")) {
+                pollers = Integer.parseInt(value);
+            } else if (arg.startsWith("--get-rate=")) {
+                getRate = Double.parseDouble(value);
+            } else if (arg.startsWith("--poll=")) {
+                pollStations = value.equals("station");
+            } else if (arg.startsWith("--duration=")) {
+                generator.setDuration(Long.parseLong(value));
+            } else if (arg.startsWith("--payload-bytes=")) {
+                generator.setPayloadBytes(Integer.parseInt(value));
+            } else {
+                unknown.add(arg);
+            }
+        }
+        if (!unknown.isEmpty()) {
+            System.out.println("Unknown options: " + unknown);
+            return;
+        }
+        generator.setFeeds(feeds, putRate);
+        generator.setPollers(pollers, getRate, pollStations);
+        generator.run();
+    }
+}
@@ -0,0 +1,18 @@
+import java.io.IOException;
+
+/**
+ * PayloadTooLargeException is thrown when a request declares a body larger than
+ * HttpMessage.MAX_BODY_SIZE. It is raised from the head alone, before any of the body
+ * is read or a buffer is sized for it, so the engines can answer 413 and close.
+ */
+public class PayloadTooLargeException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructor for PayloadTooLargeException.
+     * @param length The declared body length.
+     */
+    public PayloadTooLargeException(long length) {
+        super("Request body of " + length + " bytes exceeds the limit of " + HttpMessage.MAX_BODY_SIZE);
+    }
+}
@@ -0,0 +1,169 @@
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * PipelinedSender writes requests over one persistent connection without waiting for
+ * the previous response, and a background reader completes each request's future as
+ * its response arrives. HTTP/1.1 answers pipelined requests in order, so responses are
+ * matched to requests first-in, first-out.
+ *
+ * At most a fixed number of requests are in flight; send() blocks while the window is
+ * full. If the connection fails, every outstanding request fails with the same
+ * exception and the sender is unusable, so the caller can resend them on a new sender.
+ */
+public class PipelinedSender implements Closeable {
+    private final Socket socket;
+    private final InputStream input;
+    private final OutputStream output;
+    private final Semaphore window;
+    private final Queue<CompletableFuture<HttpMessage>> inFlight = new ConcurrentLinkedQueue<>();
+    private final Thread reader;
+    private IOException failure;
+
+    /**
+     * Constructor for PipelinedSender. Connects and starts the response reader.
+     * @param host The server host.
+     * @param port The server port.
+     * @param maxInFlight The maximum number of requests awaiting a response.
+     * @param timeoutMillis The connect timeout, and how long to wait for an outstanding response.
+     * @throws IOException If the connection cannot be established.
+     */
+    public PipelinedSender(String host, int port, int maxInFlight, int timeoutMillis) throws IOException {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("Invalid in-flight window: " + maxInFlight);
+        }
+        this.window = new Semaphore(maxInFlight);
+        this.socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), timeoutMillis);
+            socket.setSoTimeout(timeoutMillis);
+            socket.setTcpNoDelay(true);
+            this.input = new BufferedInputStream(socket.getInputStream());
+            this.output = new BufferedOutputStream(socket.getOutputStream());
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        this.reader = new Thread(this::readResponses, "pipelined-sender-" + host + ":" + port);
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+
+    /**
+     * Writes a request, waiting first if the in-flight window is full.
+     * @param request The complete encoded request.
+     * @return A future completed with the response, or failed if the connection fails first.
+     * @throws IOException If the connection has already failed or the write fails.
+     */
+    public CompletableFuture<HttpMessage> send(byte[] request) throws IOException {
+        try {
+            window.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the in-flight window");
+        }
+        CompletableFuture<HttpMessage> response = new CompletableFuture<>();
+        // Requests must be queued in the order they are written
+        synchronized (this) {
+            if (failure != null) {
+                window.release();
+                throw new IOException("Connection failed", failure);
+            }
+            inFlight.add(response);
+            try {
+                output.write(request);
+                output.flush();
+            } catch (IOException e) {
+                fail(e);
+                throw e;
+            }
+        }
+        return response;
+    }
+
+    /**
+     * Gets the number of requests still waiting for a response.
+     * @return The number of requests in flight.
+     */
+    public int getInFlight() {
+        return inFlight.size();
+    }
+
+    /**
+     * Closes the connection. Requests still in flight fail.
+     */
+    @Override
+    public void close() {
+        fail(new EOFException("Sender closed"));
+        try {
+            reader.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Reader loop: completes the oldest outstanding request with each response until
+     * the connection fails or the server closes it.
+     */
+    private void readResponses() {
+        try {
+            while (true) {
+                HttpMessage response;
+                try {
+                    response = HttpMessage.readResponse(input);
+                } catch (SocketTimeoutException e) {
+                    if (inFlight.isEmpty()) {
+                        // Idle between requests, keep the connection
+                        continue;
+                    }
+                    throw e;
+                }
+                if (response == null) {
+                    throw new EOFException("Connection closed by server");
+                }
+                CompletableFuture<HttpMessage> pending = inFlight.poll();
+                if (pending == null) {
+                    throw new IOException("Response without a request");
+                }
+                window.release();
+                pending.complete(response);
+                if (!response.isKeepAlive()) {
+                    throw new EOFException("Connection closed by server");
+                }
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Marks the connection as failed, closes it and fails every outstanding request.
+     * The socket is closed before taking the lock, so a send blocked in a write is
+     * released. Only the first failure is kept.
+     * @param cause The failure.
+     */
+    private void fail(IOException cause) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            System.out.println(e);
+        }
+        synchronized (this) {
+            if (failure == null) {
+                failure = cause;
+            }
+            CompletableFuture<HttpMessage> pending;
+            while ((pending = inFlight.poll()) != null) {
+                window.release();
+                pending.completeExceptionally(failure);
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * RetryPolicy decides whether and when a failed request is retried, so that clients
+ * backing off from an overloaded server spread out instead of retrying in lockstep.
+ *
+ * Each retry waits a random time between zero and an exponentially growing ceiling
+ * (capped exponential backoff with full jitter). Retries are also limited by a budget:
+ * every request earns a fraction of a retry token and every retry spends a whole one,
+ * so retries can add only that fraction of extra load however many requests fail. On
+ * top of that, each server has a CircuitBreaker that refuses requests outright while
+ * the server keeps failing.
+ */
+public class RetryPolicy {
+    private final int maxRetries;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final double budgetRatio;
+    private final double budgetMax;
+    private final int breakerThreshold;
+    private final long breakerOpenMillis;
+    private final ConcurrentHashMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private double budget;
+
+    /**
+     * Constructor for RetryPolicy with the default settings: up to 3 retries with delays
+     * of up to 0.5, 1 and 2 seconds, a retry budget of 20% of requests with a reserve of
+     * 10 retries, and circuits that open for 5 seconds after 5 consecutive failures.
+     */
+    public RetryPolicy() {
+        this(3, 500, 10000, 0.2, 10, 5, 5000);
+    }
+
+    /**
+     * Constructor for RetryPolicy.
+     * @param maxRetries The maximum number of retries of one request.
+     * @param baseDelayMillis The ceiling of the first retry's delay; it doubles with every retry.
+     * @param maxDelayMillis The largest ceiling of any retry's delay.
+     * @param budgetRatio The retry tokens earned by every request.
+     * @param budgetMax The most retry tokens that can be saved up, and the initial reserve.
+     * @param breakerThreshold The consecutive failures that open a server's circuit.
+     * @param breakerOpenMillis How long a server's circuit stays open.
+     */
+    public RetryPolicy(int maxRetries, long baseDelayMillis, long maxDelayMillis, double budgetRatio, double budgetMax,
+                       int breakerThreshold, long breakerOpenMillis) {
+        if (maxRetries < 0 || baseDelayMillis < 0 || maxDelayMillis < baseDelayMillis || budgetRatio < 0 || budgetMax < 0) {
+            throw new IllegalArgumentException("Invalid retry policy settings");
+        }
+        this.maxRetries = maxRetries;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.budgetRatio = budgetRatio;
+        this.budgetMax = budgetMax;
+        this.breakerThreshold = breakerThreshold;
+        this.breakerOpenMillis = breakerOpenMillis;
+        this.budget = budgetMax;
+    }
+
+    /**
+     * Records a new request, earning its share of the retry budget. Retries of the
+     * request must not be recorded.
+     */
+    public synchronized void recordRequest() {
+        budget = Math.min(budgetMax, budget + budgetRatio);
+    }
+
+    /**
+     * Computes the delay before a retry: a random time up to the retry's ceiling.
+     * @param retry The number of retries already made, 0 for the first retry.
+     * @return The delay in milliseconds.
+     */
+    public long backoffMillis(int retry) {
+        long ceiling = Math.min(maxDelayMillis, baseDelayMillis << Math.min(retry, 30));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    /**
+     * Checks whether a request may be retried and, if so, spends a retry token and
+     * waits for the backoff delay.
+     * @param retry The number of retries already made, 0 for the first retry.
+     * @return true once the caller should retry; false if the retry limit or budget is
+     *         exhausted, or the thread was interrupted.
+     */
+    public boolean awaitRetry(int retry) {
+        if (retry >= maxRetries) {
+            return false;
+        }
+        synchronized (this) {
+            if (budget < 1) {
+                System.out.println("Retry budget exhausted, not retrying");
+                return false;
+            }
+            budget--;
+        }
+        try {
+            Thread.sleep(backoffMillis(retry));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Gets the circuit breaker for a server, creating it on first use.
+     * @param host The server host.
+     * @param port The server port.
+     * @return The server's circuit breaker.
+     */
+    public CircuitBreaker breaker(String host, int port) {
+        return breakers.computeIfAbsent(host + ":" + port, key -> new CircuitBreaker(breakerThreshold, breakerOpenMillis));
+    }
+
+    /**
+     * Gets the retry tokens currently available.
+     * @return The retry budget.
+     */
+    public synchronized double getBudget() {
+        return budget;
+    }
+}
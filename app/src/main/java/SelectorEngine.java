@@ -0,0 +1,266 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * SelectorEngine multiplexes all connections onto a single non-blocking selector thread.
+ * Complete requests are handed to worker threads and the responses are written back by
+ * the selector thread, so memory per idle keep-alive connection is just its read buffer.
+ *
+ * A PUT handler blocks until its group commit has been synced, so workers are not
+ * limited to the number of cores: each request gets its own virtual thread (or a
+ * cached pool thread before Java 21), and every PUT waiting on the disk can join the
+ * same group. A connection has at most one request in flight, so the number of busy
+ * workers is bounded by the number of open connections.
+ */
+public class SelectorEngine implements ConnectionEngine {
+    private static final int READ_BUFFER_SIZE = 8192;
+    private static final int MAX_REQUEST_SIZE = HttpMessage.MAX_HEAD_SIZE + HttpMessage.MAX_BODY_SIZE;
+    private static final int KEEP_ALIVE_TIMEOUT = 30000;
+    private static final int IDLE_CHECK_INTERVAL = 1000;
+    private final ExecutorService workers = VirtualThreadEngine.newVirtualThreadExecutor(Executors::newCachedThreadPool);
+    private final Queue<Connection> pendingWrites = new ConcurrentLinkedQueue<>();
+    private final BufferPool bodies = new BufferPool();
+    private volatile Selector selector;
+    private volatile ServerMetrics metrics = new ServerMetrics();
+    private volatile boolean running;
+    private long lastIdleCheck;
+
+    /**
+     * Per-connection state kept as the selection key attachment.
+     */
+    private static class Connection {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private ByteBuffer input = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private volatile ByteBuffer output;
+        private volatile boolean keepAlive;
+        private long lastActive = System.currentTimeMillis();
+
+        Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+    }
+
+    /**
+     * Runs the selector loop until stop() is called.
+     * @param port The port number to listen on.
+     * @param server The AggregationServer that handles each request.
+     * @throws IOException If the listening channel cannot be opened.
+     */
+    @Override
+    public void serve(int port, AggregationServer server) throws IOException {
+        try (Selector sel = Selector.open(); ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            serverChannel.bind(new InetSocketAddress(port));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(sel, SelectionKey.OP_ACCEPT);
+            selector = sel;
+            metrics = server.getMetrics();
+            running = true;
+            System.out.println("Server started on port: " + port + " (selector engine)");
+
+            while (running) {
+                sel.select(IDLE_CHECK_INTERVAL);
+
+                // Responses finished by the workers are switched to write interest here,
+                // since interest ops should only be changed from the selector thread
+                Connection ready;
+                while ((ready = pendingWrites.poll()) != null) {
+                    if (ready.key.isValid()) {
+                        ready.key.interestOps(SelectionKey.OP_WRITE);
+                    }
+                }
+
+                Iterator<SelectionKey> keys = sel.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    try {
+                        if (key.isAcceptable()) {
+                            accept(serverChannel, sel);
+                        } else if (key.isReadable()) {
+                            read(key, server);
+                        } else if (key.isWritable()) {
+                            write(key, server);
+                        }
+                    } catch (IOException e) {
+                        close(key);
+                    }
+                }
+                closeIdleConnections(sel);
+            }
+        } finally {
+            workers.shutdown();
+        }
+    }
+
+    /**
+     * Stops the selector loop.
+     */
+    @Override
+    public void stop() {
+        running = false;
+        if (selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Accepts a pending connection and registers it for reads.
+     * @param serverChannel The listening channel.
+     * @param sel The selector to register with.
+     * @throws IOException If the connection cannot be accepted.
+     */
+    private void accept(ServerSocketChannel serverChannel, Selector sel) throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        SelectionKey key = channel.register(sel, SelectionKey.OP_READ);
+        key.attach(new Connection(channel, key));
+        metrics.connectionOpened();
+    }
+
+    /**
+     * Reads available bytes and dispatches the next request once it is complete.
+     * @param key The selection key of the connection.
+     * @param server The AggregationServer that handles the request.
+     * @throws IOException If the read fails or the request is too large.
+     */
+    private void read(SelectionKey key, AggregationServer server) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        if (!connection.input.hasRemaining()) {
+            if (connection.input.capacity() >= MAX_REQUEST_SIZE) {
+                throw new IOException("Request too large");
+            }
+            ByteBuffer larger = ByteBuffer.allocate(connection.input.capacity() * 2);
+            connection.input.flip();
+            larger.put(connection.input);
+            connection.input = larger;
+        }
+        if (connection.channel.read(connection.input) < 0) {
+            close(key);
+            return;
+        }
+        connection.lastActive = System.currentTimeMillis();
+        dispatch(connection, server);
+    }
+
+    /**
+     * Hands the next complete request buffered on the connection to a worker. Only one
+     * request per connection is in flight at a time, so pipelined requests are answered
+     * in the order they arrived.
+     * @param connection The connection state.
+     * @param server The AggregationServer that handles the request.
+     * @throws IOException If the buffered request is malformed.
+     */
+    private void dispatch(Connection connection, AggregationServer server) throws IOException {
+        ByteBuffer input = connection.input;
+        int length;
+        try {
+            length = HttpMessage.frameLength(input.array(), 0, input.position());
+        } catch (PayloadTooLargeException e) {
+            // Answer without reading the body, then close once the response is written
+            System.out.println(e.getMessage());
+            connection.keepAlive = false;
+            connection.output = ByteBuffer.wrap(server.buildPayloadTooLargeResponse());
+            connection.key.interestOps(SelectionKey.OP_WRITE);
+            return;
+        }
+        if (length < 0) {
+            connection.key.interestOps(SelectionKey.OP_READ);
+            return;
+        }
+        HttpMessage request = HttpMessage.parse(input.array(), 0, length, bodies);
+        input.flip();
+        input.position(length);
+        input.compact();
+
+        // Stop reading until the response has been written
+        connection.key.interestOps(0);
+        workers.execute(() -> {
+            connection.keepAlive = request.isKeepAlive();
+            try {
+                connection.output = ByteBuffer.wrap(server.handleRequest(request));
+            } catch (RuntimeException e) {
+                // Still answer, or the key would wait at interestOps(0) forever
+                System.out.println("Request failed: " + e);
+                connection.keepAlive = false;
+                connection.output = ByteBuffer.wrap(server.buildInternalErrorResponse());
+            } finally {
+                request.release();
+            }
+            pendingWrites.add(connection);
+            selector.wakeup();
+        });
+    }
+
+    /**
+     * Writes as much of the pending response as the socket accepts. Once it has been
+     * fully sent, the connection is either closed or moves on to the next request.
+     * @param key The selection key of the connection.
+     * @param server The AggregationServer that handles further requests.
+     * @throws IOException If the write fails.
+     */
+    private void write(SelectionKey key, AggregationServer server) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        connection.channel.write(connection.output);
+        if (connection.output.hasRemaining()) {
+            return;
+        }
+        connection.output = null;
+        connection.lastActive = System.currentTimeMillis();
+        if (connection.keepAlive) {
+            dispatch(connection, server);
+        } else {
+            close(key);
+        }
+    }
+
+    /**
+     * Closes keep-alive connections that have been idle for longer than the timeout.
+     * Connections with a request in flight are left alone.
+     * @param sel The selector holding the connections.
+     */
+    private void closeIdleConnections(Selector sel) {
+        long now = System.currentTimeMillis();
+        if (now - lastIdleCheck < IDLE_CHECK_INTERVAL) {
+            return;
+        }
+        lastIdleCheck = now;
+        for (SelectionKey key : sel.keys()) {
+            Connection connection = (Connection) key.attachment();
+            if (connection != null && key.isValid() && key.interestOps() == SelectionKey.OP_READ
+                    && now - connection.lastActive > KEEP_ALIVE_TIMEOUT) {
+                close(key);
+            }
+        }
+    }
+
+    /**
+     * Cancels the key and closes its channel.
+     * @param key The selection key of the connection.
+     */
+    private void close(SelectionKey key) {
+        if (key.isValid() && key.attachment() instanceof Connection) {
+            metrics.connectionClosed();
+        }
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            System.out.println(e);
+        }
+    }
+}
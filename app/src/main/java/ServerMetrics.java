@@ -0,0 +1,201 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ServerMetrics collects request counters and latency histograms for the aggregation
+ * server and renders them in the Prometheus text exposition format.
+ *
+ * Everything on the request path is striped to keep recording cheap under contention:
+ * counters are LongAdders, and each histogram is split into randomly picked stripes
+ * that are only merged when the metrics are scraped.
+ */
+public class ServerMetrics {
+    private static final double[] LATENCY_BUCKETS_SECONDS = {
+        0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10
+    };
+    private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+    private static final String[] METHODS = {"GET", "PUT", "other"};
+    private final Map<String, LongAdder> responses = new ConcurrentHashMap<>();
+    private final StripedHistogram[] requestLatency = new StripedHistogram[METHODS.length];
+    private final StripedHistogram persistLatency = new StripedHistogram();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder connectionsOpened = new LongAdder();
+    private final LongAdder connectionsClosed = new LongAdder();
+
+    /**
+     * StripedHistogram spreads recording over several LatencyHistograms picked at
+     * random, so concurrent requests rarely touch the same counters.
+     */
+    private static class StripedHistogram {
+        private final LatencyHistogram[] stripes;
+
+        StripedHistogram() {
+            int count = Integer.highestOneBit(Math.min(8, Runtime.getRuntime().availableProcessors()));
+            stripes = new LatencyHistogram[count];
+            for (int i = 0; i < count; i++) {
+                stripes[i] = new LatencyHistogram();
+            }
+        }
+
+        void record(long nanos) {
+            stripes[ThreadLocalRandom.current().nextInt(stripes.length)].record(nanos);
+        }
+
+        LatencyHistogram merged() {
+            LatencyHistogram merged = new LatencyHistogram();
+            for (LatencyHistogram stripe : stripes) {
+                merged.add(stripe);
+            }
+            return merged;
+        }
+    }
+
+    /**
+     * Constructor for ServerMetrics.
+     */
+    public ServerMetrics() {
+        for (int i = 0; i < METHODS.length; i++) {
+            requestLatency[i] = new StripedHistogram();
+        }
+    }
+
+    /**
+     * Records one handled request.
+     * @param method The request method; anything but GET and PUT is counted as "other".
+     * @param status The response status code.
+     * @param received The size of the request in bytes.
+     * @param sent The size of the response in bytes.
+     * @param nanos The time from receiving the request to having the response ready.
+     */
+    public void recordRequest(String method, int status, long received, long sent, long nanos) {
+        int index = methodIndex(method);
+        responses.computeIfAbsent(METHODS[index] + " " + status, key -> new LongAdder()).increment();
+        requestLatency[index].record(nanos);
+        bytesReceived.add(received);
+        bytesSent.add(sent);
+    }
+
+    /**
+     * Records the duration of one persistence write, i.e. one commit group.
+     * @param nanos The time taken to write and sync the group.
+     */
+    public void recordPersist(long nanos) {
+        persistLatency.record(nanos);
+    }
+
+    /**
+     * Records a newly accepted client connection.
+     */
+    public void connectionOpened() {
+        connectionsOpened.increment();
+    }
+
+    /**
+     * Records a closed client connection.
+     */
+    public void connectionClosed() {
+        connectionsClosed.increment();
+    }
+
+    /**
+     * Gets the number of responses sent for a method and status.
+     * @param method The request method.
+     * @param status The response status code.
+     * @return The count.
+     */
+    public long getResponseCount(String method, int status) {
+        LongAdder count = responses.get(METHODS[methodIndex(method)] + " " + status);
+        return count == null ? 0 : count.sum();
+    }
+
+    /**
+     * Renders all metrics in the Prometheus text format.
+     * @param stations The current number of stations.
+     * @param expired The number of stations expired since startup.
+     * @return The exposition text.
+     */
+    public String render(int stations, long expired) {
+        StringBuilder out = new StringBuilder(4096);
+        out.append("# HELP aggregation_responses_total Responses sent, by request method and status code.\n");
+        out.append("# TYPE aggregation_responses_total counter\n");
+        for (Map.Entry<String, LongAdder> entry : responses.entrySet()) {
+            String[] key = entry.getKey().split(" ");
+            out.append("aggregation_responses_total{method=\"").append(key[0]).append("\",status=\"").append(key[1])
+                .append("\"} ").append(entry.getValue().sum()).append('\n');
+        }
+        counter(out, "aggregation_bytes_received_total", "Request bytes received.", bytesReceived.sum());
+        counter(out, "aggregation_bytes_sent_total", "Response bytes sent.", bytesSent.sum());
+        counter(out, "aggregation_connections_total", "Client connections accepted.", connectionsOpened.sum());
+        out.append("# HELP aggregation_active_connections Client connections currently open.\n");
+        out.append("# TYPE aggregation_active_connections gauge\n");
+        out.append("aggregation_active_connections ").append(connectionsOpened.sum() - connectionsClosed.sum()).append('\n');
+        out.append("# HELP aggregation_stations Stations currently stored.\n");
+        out.append("# TYPE aggregation_stations gauge\n");
+        out.append("aggregation_stations ").append(stations).append('\n');
+        counter(out, "aggregation_expired_stations_total", "Stations removed for not being updated in time.", expired);
+
+        LatencyHistogram[] merged = new LatencyHistogram[METHODS.length];
+        for (int i = 0; i < METHODS.length; i++) {
+            merged[i] = requestLatency[i].merged();
+        }
+        out.append("# HELP aggregation_request_seconds Time from receiving a request to having its response ready.\n");
+        out.append("# TYPE aggregation_request_seconds histogram\n");
+        for (int i = 0; i < METHODS.length; i++) {
+            histogram(out, "aggregation_request_seconds", "method=\"" + METHODS[i] + "\",", merged[i]);
+        }
+        out.append("# HELP aggregation_request_latency_seconds Request latency percentiles since startup.\n");
+        out.append("# TYPE aggregation_request_latency_seconds summary\n");
+        for (int i = 0; i < METHODS.length; i++) {
+            for (double quantile : QUANTILES) {
+                out.append("aggregation_request_latency_seconds{method=\"").append(METHODS[i]).append("\",quantile=\"")
+                    .append(quantile).append("\"} ").append(merged[i].getValueAtPercentile(quantile * 100) / 1e9).append('\n');
+            }
+            out.append("aggregation_request_latency_seconds_sum{method=\"").append(METHODS[i]).append("\"} ")
+                .append(merged[i].getSum() / 1e9).append('\n');
+            out.append("aggregation_request_latency_seconds_count{method=\"").append(METHODS[i]).append("\"} ")
+                .append(merged[i].getCount()).append('\n');
+        }
+        out.append("# HELP aggregation_persist_seconds Time to write and sync one group of changes.\n");
+        out.append("# TYPE aggregation_persist_seconds histogram\n");
+        histogram(out, "aggregation_persist_seconds", "", persistLatency.merged());
+        return out.toString();
+    }
+
+    /**
+     * Appends a counter with its help and type lines.
+     */
+    private static void counter(StringBuilder out, String name, String help, long value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" counter\n");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    /**
+     * Appends the cumulative buckets, sum and count of a histogram in seconds.
+     */
+    private static void histogram(StringBuilder out, String name, String labels, LatencyHistogram histogram) {
+        for (double bound : LATENCY_BUCKETS_SECONDS) {
+            out.append(name).append("_bucket{").append(labels).append("le=\"").append(bound).append("\"} ")
+                .append(histogram.getCountAtOrBelow((long) (bound * 1e9))).append('\n');
+        }
+        long count = histogram.getCount();
+        out.append(name).append("_bucket{").append(labels).append("le=\"+Inf\"} ").append(count).append('\n');
+        String suffix = labels.isEmpty() ? "" : "{" + labels.substring(0, labels.length() - 1) + "}";
+        out.append(name).append("_sum").append(suffix).append(' ').append(histogram.getSum() / 1e9).append('\n');
+        out.append(name).append("_count").append(suffix).append(' ').append(count).append('\n');
+    }
+
+    /**
+     * Maps a request method to its label index. The server matches methods loosely, so
+     * the same loose match is used here.
+     */
+    private static int methodIndex(String method) {
+        if (method.contains("GET")) {
+            return 0;
+        }
+        return method.contains("PUT") ? 1 : 2;
+    }
+}
@@ -0,0 +1,163 @@
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * StationQuery selects a subset of stations for a GET request. It is built from the
+ * query parameters of the request target:
+ *
+ *   id=IDS1&id=IDS2 or id=IDS1,IDS2   any of the listed station ids
+ *   prefix=IDS6                         station ids starting with the prefix
+ *   state=SA                            stations in the given state
+ *   since=42                            stations stored after Lamport time 42
+ *
+ * All given criteria must match. A query without criteria selects every station.
+ */
+public final class StationQuery {
+    private static final StationQuery ALL = new StationQuery(Collections.emptySet(), null, null, -1);
+    private final Set<String> ids;
+    private final String prefix;
+    private final String state;
+    private final long since;
+
+    /**
+     * Constructor for StationQuery.
+     * @param ids The accepted station ids, or an empty set to accept any id.
+     * @param prefix The required id prefix, or null.
+     * @param state The required state, or null.
+     */
+    public StationQuery(Set<String> ids, String prefix, String state) {
+        this(ids, prefix, state, -1);
+    }
+
+    /**
+     * Constructor for StationQuery with a Lamport time lower bound.
+     * @param ids The accepted station ids, or an empty set to accept any id.
+     * @param prefix The required id prefix, or null.
+     * @param state The required state, or null.
+     * @param since Only stations stored after this Lamport time match, or -1 for any time.
+     */
+    public StationQuery(Set<String> ids, String prefix, String state, long since) {
+        this.ids = Collections.unmodifiableSet(new LinkedHashSet<>(ids));
+        this.prefix = prefix;
+        this.state = state;
+        this.since = since;
+    }
+
+    /**
+     * Gets the query that selects every station.
+     * @return The query.
+     */
+    public static StationQuery all() {
+        return ALL;
+    }
+
+    /**
+     * Builds a query from decoded request parameters. Parameters other than id,
+     * prefix, state and since are ignored; empty values do not restrict the result.
+     * @param parameters The query parameters, as returned by HttpMessage.getQueryParameters().
+     * @return The query.
+     * @throws IllegalArgumentException If since is not a non-negative integer.
+     */
+    public static StationQuery fromParameters(Map<String, List<String>> parameters) {
+        Set<String> ids = new LinkedHashSet<>();
+        for (String value : parameters.getOrDefault("id", Collections.emptyList())) {
+            for (String id : value.split(",")) {
+                if (!id.trim().isEmpty()) {
+                    ids.add(id.trim());
+                }
+            }
+        }
+        String prefix = last(parameters, "prefix");
+        String state = last(parameters, "state");
+        String sinceValue = last(parameters, "since");
+        long since = sinceValue == null ? -1 : Long.parseLong(sinceValue);
+        if (sinceValue != null && since < 0) {
+            throw new IllegalArgumentException("Negative since: " + sinceValue);
+        }
+        if (ids.isEmpty() && prefix == null && state == null && since < 0) {
+            return ALL;
+        }
+        return new StationQuery(ids, prefix, state, since);
+    }
+
+    /**
+     * Gets this query without its Lamport time bound, e.g. when the bound cannot be
+     * honoured and the client needs a full answer.
+     * @return The query without since.
+     */
+    public StationQuery withoutSince() {
+        if (since < 0) {
+            return this;
+        }
+        return ids.isEmpty() && prefix == null && state == null ? ALL : new StationQuery(ids, prefix, state);
+    }
+
+    /**
+     * Checks whether the query selects every station.
+     * @return true if no criteria are set.
+     */
+    public boolean isAll() {
+        return ids.isEmpty() && prefix == null && state == null && since < 0;
+    }
+
+    /**
+     * Checks whether a record matches every criterion of the query.
+     * @param record The record to check.
+     * @return true if the record is selected.
+     */
+    public boolean matches(WeatherRecord record) {
+        return (ids.isEmpty() || ids.contains(record.getId()))
+            && (prefix == null || record.getId().startsWith(prefix))
+            && (state == null || state.equals(record.getState()))
+            && record.getLamport() > since;
+    }
+
+    /**
+     * Gets the accepted station ids.
+     * @return The ids, empty if any id is accepted.
+     */
+    public Set<String> getIds() {
+        return ids;
+    }
+
+    /**
+     * Gets the required id prefix.
+     * @return The prefix, or null.
+     */
+    public String getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * Gets the required state.
+     * @return The state, or null.
+     */
+    public String getState() {
+        return state;
+    }
+
+    /**
+     * Gets the Lamport time lower bound.
+     * @return The bound, or -1 if any time matches.
+     */
+    public long getSince() {
+        return since;
+    }
+
+    /**
+     * Gets the last non-empty value of a parameter.
+     * @param parameters The query parameters.
+     * @param name The parameter name.
+     * @return The trimmed value, or null if absent or empty.
+     */
+    private static String last(Map<String, List<String>> parameters, String name) {
+        List<String> values = parameters.get(name);
+        if (values == null || values.isEmpty() || values.get(values.size() - 1).trim().isEmpty()) {
+            return null;
+        }
+        return values.get(values.size() - 1).trim();
+    }
+}
@@ -0,0 +1,400 @@
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import org.json.JSONObject;
+
+/**
+ * StationStore holds the latest WeatherRecord for every station. It is backed by a
+ * ConcurrentHashMap, so reads never block and writes to different stations do not
+ * contend with each other.
+ *
+ * Every change bumps a version counter, and the serialized aggregate is cached as an
+ * immutable Snapshot tagged with the version it was built from, so readers only pay
+ * for serialization after the data has actually changed.
+ *
+ * Two secondary indices serve filtered reads without scanning every station: a sorted
+ * set of ids for prefix queries and a map from state to ids. They are updated inside
+ * the map's per-key compute, so they always agree with the stored record of each id.
+ */
+public class StationStore {
+    private final ConcurrentHashMap<String, WeatherRecord> records = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<String> sortedIds = new ConcurrentSkipListSet<>();
+    private final ConcurrentHashMap<String, Set<String>> idsByState = new ConcurrentHashMap<>();
+    private final AtomicLong version = new AtomicLong();
+    private final Object snapshotLock = new Object();
+    private volatile Snapshot snapshot = new Snapshot(0, List.of(), "{}".getBytes(StandardCharsets.UTF_8));
+
+    /**
+     * Snapshot is the encoded aggregate at one store version. The byte arrays are shared
+     * between all readers and must not be modified. The gzip and deflate forms are
+     * compressed on first request and then kept with the snapshot, so each version is
+     * compressed at most once per coding. The binary form is encoded the same way, from
+     * the records the JSON was written from.
+     */
+    public static final class Snapshot {
+        private final long version;
+        private final List<WeatherRecord> records;
+        private final byte[] json;
+        private volatile byte[] gzip;
+        private volatile byte[] deflate;
+        private volatile byte[] binary;
+
+        private Snapshot(long version, List<WeatherRecord> records, byte[] json) {
+            this.version = version;
+            this.records = records;
+            this.json = json;
+        }
+
+        /**
+         * Gets the store version this snapshot was built from.
+         * @return The version.
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * Gets the aggregate JSON encoded as UTF-8.
+         * @return The shared, read-only bytes.
+         */
+        public byte[] getBytes() {
+            return json;
+        }
+
+        /**
+         * Gets the aggregate in a content coding, compressing it on first use.
+         * @param coding ContentEncoding.GZIP, ContentEncoding.DEFLATE, or null for the plain JSON.
+         * @return The shared, read-only bytes.
+         */
+        public byte[] getBytes(String coding) {
+            if (coding == null) {
+                return json;
+            }
+            boolean gzipped = coding.equals(ContentEncoding.GZIP);
+            byte[] encoded = gzipped ? gzip : deflate;
+            if (encoded == null) {
+                synchronized (this) {
+                    encoded = gzipped ? gzip : deflate;
+                    if (encoded == null) {
+                        encoded = ContentEncoding.encode(json, coding);
+                        if (gzipped) {
+                            gzip = encoded;
+                        } else {
+                            deflate = encoded;
+                        }
+                    }
+                }
+            }
+            return encoded;
+        }
+
+        /**
+         * Gets the aggregate in the binary format, encoding it on first use.
+         * @return The shared, read-only bytes.
+         */
+        public byte[] getBinaryBytes() {
+            byte[] encoded = binary;
+            if (encoded == null) {
+                synchronized (this) {
+                    encoded = binary;
+                    if (encoded == null) {
+                        encoded = BinaryRecordCodec.encode(records);
+                        binary = encoded;
+                    }
+                }
+            }
+            return encoded;
+        }
+    }
+
+    /**
+     * Stores a record, replacing any previous record for the same station.
+     * @param record The record to store.
+     * @return true if the station was not present before.
+     */
+    public boolean put(WeatherRecord record) {
+        boolean[] created = new boolean[1];
+        records.compute(record.getId(), (id, previous) -> {
+            created[0] = previous == null;
+            reindex(id, previous, record);
+            return record;
+        });
+        version.incrementAndGet();
+        return created[0];
+    }
+
+    /**
+     * Refreshes the receive time of a station whose data has not changed. The store
+     * version is not bumped, since the aggregate's content stays the same.
+     * @param id The station id.
+     * @param receivedAt The new receive time in milliseconds.
+     * @return The refreshed record, or null if the station is not present.
+     */
+    public WeatherRecord touch(String id, long receivedAt) {
+        return records.computeIfPresent(id, (key, current) -> current.withReceivedAt(receivedAt));
+    }
+
+    /**
+     * Gets the record for a station.
+     * @param id The station id.
+     * @return The record, or null if absent.
+     */
+    public WeatherRecord get(String id) {
+        return records.get(id);
+    }
+
+    /**
+     * Checks whether a station is present.
+     * @param id The station id.
+     * @return true if the station has a record.
+     */
+    public boolean contains(String id) {
+        return records.containsKey(id);
+    }
+
+    /**
+     * Removes a station only if its record is still the given one, so a concurrent
+     * update is never lost to an expiry.
+     * @param record The record expected to be current.
+     * @return true if the record was removed.
+     */
+    public boolean remove(WeatherRecord record) {
+        boolean[] removed = new boolean[1];
+        records.computeIfPresent(record.getId(), (id, current) -> {
+            if (current != record) {
+                return current;
+            }
+            removed[0] = true;
+            reindex(id, current, null);
+            return null;
+        });
+        if (removed[0]) {
+            version.incrementAndGet();
+        }
+        return removed[0];
+    }
+
+    /**
+     * Removes a station regardless of its current record.
+     * @param id The station id.
+     * @return true if the station was present.
+     */
+    public boolean remove(String id) {
+        boolean[] removed = new boolean[1];
+        records.computeIfPresent(id, (key, current) -> {
+            removed[0] = true;
+            reindex(key, current, null);
+            return null;
+        });
+        if (removed[0]) {
+            version.incrementAndGet();
+        }
+        return removed[0];
+    }
+
+    /**
+     * Removes every record received before the cutoff time.
+     * @param cutoff The cutoff time in milliseconds.
+     * @return The number of records removed.
+     */
+    public int expireOlderThan(long cutoff) {
+        return expireOlderThan(cutoff, id -> { });
+    }
+
+    /**
+     * Removes every record received before the cutoff time, reporting each removal.
+     * @param cutoff The cutoff time in milliseconds.
+     * @param onExpired Called with the id of every removed station.
+     * @return The number of records removed.
+     */
+    public int expireOlderThan(long cutoff, Consumer<String> onExpired) {
+        int expired = 0;
+        for (WeatherRecord record : records.values()) {
+            if (record.getReceivedAt() < cutoff && remove(record)) {
+                onExpired.accept(record.getId());
+                expired++;
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Gets a live view of all records.
+     * @return The records.
+     */
+    public Collection<WeatherRecord> records() {
+        return records.values();
+    }
+
+    /**
+     * Gets the number of stations.
+     * @return The station count.
+     */
+    public int size() {
+        return records.size();
+    }
+
+    /**
+     * Removes all records.
+     */
+    public void clear() {
+        for (String id : records.keySet()) {
+            remove(id);
+        }
+        version.incrementAndGet();
+    }
+
+    /**
+     * Gets the records selected by a query. Explicit ids are looked up directly, a state
+     * or prefix is resolved through its index, and only the candidates found that way
+     * are checked against the remaining criteria. A query by Lamport time alone has no
+     * index and checks every station.
+     * @param query The query.
+     * @return The matching records.
+     */
+    public List<WeatherRecord> query(StationQuery query) {
+        Collection<String> candidates;
+        if (!query.getIds().isEmpty()) {
+            candidates = query.getIds();
+        } else if (query.getState() != null) {
+            candidates = idsByState.getOrDefault(query.getState(), Set.of());
+        } else if (query.getPrefix() != null) {
+            candidates = sortedIds.subSet(query.getPrefix(), query.getPrefix() + Character.MAX_VALUE);
+        } else if (query.isAll()) {
+            return new ArrayList<>(records.values());
+        } else {
+            candidates = records.keySet();
+        }
+
+        List<WeatherRecord> matches = new ArrayList<>();
+        for (String id : candidates) {
+            WeatherRecord record = records.get(id);
+            if (record != null && query.matches(record)) {
+                matches.add(record);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Replaces the contents with the stations of a persisted aggregate, as written by
+     * toJsonString(). Entries that are not valid records are skipped.
+     * @param data The aggregate keyed by station id.
+     * @param receivedAt The receive time to assign to the loaded records.
+     */
+    public void load(JSONObject data, long receivedAt) {
+        clear();
+        for (String key : data.keySet()) {
+            Object value = data.get(key);
+            if (value instanceof JSONObject) {
+                try {
+                    put(WeatherRecord.fromJson((JSONObject) value, receivedAt));
+                } catch (IllegalArgumentException e) {
+                    System.out.println("Skipping invalid record " + key + ": " + e.getMessage());
+                }
+            }
+        }
+        version.incrementAndGet();
+    }
+
+    /**
+     * Gets the current store version, which changes whenever a record is stored or removed.
+     * @return The version.
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Gets the encoded aggregate, rebuilding it only if the store changed since the
+     * last snapshot. Writers update the map before bumping the version, so a snapshot
+     * may briefly contain data newer than its version but never older.
+     * @return The current snapshot.
+     */
+    public Snapshot snapshot() {
+        Snapshot current = snapshot;
+        if (current.version == version.get()) {
+            return current;
+        }
+        synchronized (snapshotLock) {
+            long latest = version.get();
+            current = snapshot;
+            if (current.version != latest) {
+                List<WeatherRecord> view = new ArrayList<>(records.values());
+                current = new Snapshot(latest, view, toJsonString(view).getBytes(StandardCharsets.UTF_8));
+                snapshot = current;
+            }
+            return current;
+        }
+    }
+
+    /**
+     * Serializes all stations as one JSON object keyed by station id.
+     * @return The aggregate JSON text.
+     */
+    public String toJsonString() {
+        return toJsonString(records.values());
+    }
+
+    /**
+     * Serializes the given records as one JSON object keyed by station id, in the same
+     * form as the full aggregate.
+     * @param selected The records to serialize.
+     * @return The JSON text.
+     */
+    public static String toJsonString(Collection<WeatherRecord> selected) {
+        StringBuilder out = new StringBuilder(64 + selected.size() * 320);
+        out.append('{');
+        boolean first = true;
+        for (WeatherRecord record : selected) {
+            if (!first) {
+                out.append(',');
+            }
+            first = false;
+            out.append(JSONObject.quote(record.getId())).append(':');
+            record.writeJson(out);
+        }
+        out.append('}');
+        return out.toString();
+    }
+
+    /**
+     * Moves an id between index entries when its record changes. Called inside the
+     * map's compute for that id, so updates of one id are applied in order.
+     * @param id The station id.
+     * @param previous The record being replaced, or null.
+     * @param next The new record, or null if the station is being removed.
+     */
+    private void reindex(String id, WeatherRecord previous, WeatherRecord next) {
+        String previousState = previous == null ? null : previous.getState();
+        String nextState = next == null ? null : next.getState();
+        if (next == null) {
+            sortedIds.remove(id);
+        } else {
+            sortedIds.add(id);
+        }
+        if (previousState != null && !previousState.equals(nextState)) {
+            idsByState.computeIfPresent(previousState, (state, ids) -> {
+                ids.remove(id);
+                return ids.isEmpty() ? null : ids;
+            });
+        }
+        if (nextState != null) {
+            idsByState.computeIfAbsent(nextState, state -> ConcurrentHashMap.newKeySet()).add(id);
+        }
+    }
+
+    /**
+     * Converts all stations to a JSONObject keyed by station id.
+     * @return A new JSONObject, independent of the store.
+     */
+    public JSONObject toJson() {
+        return new JSONObject(toJsonString());
+    }
+}
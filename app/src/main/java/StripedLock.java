@@ -0,0 +1,59 @@
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * StripedLock guards per-key critical sections with a fixed set of locks. Each key
+ * maps to one stripe by its hash, so operations on keys in different stripes never
+ * wait for each other, while operations on the same key are always serialized.
+ * Memory stays constant however many keys there are.
+ */
+public class StripedLock {
+    private final ReentrantLock[] stripes;
+    private final int mask;
+
+    /**
+     * Constructor for StripedLock.
+     * @param stripes The number of stripes, rounded up to a power of two.
+     */
+    public StripedLock(int stripes) {
+        if (stripes < 1 || stripes > (1 << 16)) {
+            throw new IllegalArgumentException("Invalid stripe count: " + stripes);
+        }
+        int size = Integer.highestOneBit(stripes);
+        if (size < stripes) {
+            size <<= 1;
+        }
+        this.stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Gets the lock guarding a key.
+     * @param key The key.
+     * @return The key's stripe.
+     */
+    public ReentrantLock forKey(Object key) {
+        return stripes[indexOf(key)];
+    }
+
+    /**
+     * Gets the index of the stripe guarding a key, e.g. to keep per-stripe state
+     * alongside the locks.
+     * @param key The key.
+     * @return The stripe index, below getStripes().
+     */
+    public int indexOf(Object key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * Gets the number of stripes.
+     * @return The stripe count.
+     */
+    public int getStripes() {
+        return stripes.length;
+    }
+}
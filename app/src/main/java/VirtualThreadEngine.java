@@ -0,0 +1,129 @@
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * VirtualThreadEngine serves each connection on its own virtual thread, so blocking
+ * socket I/O stays cheap even with tens of thousands of open keep-alive connections.
+ */
+public class VirtualThreadEngine implements ConnectionEngine {
+    private static final int FALLBACK_POOL_SIZE = 256;
+    private static final int KEEP_ALIVE_TIMEOUT = 30000;
+    private final ExecutorService executor = newVirtualThreadExecutor(() -> {
+        System.out.println("Virtual threads unavailable, using a pool of " + FALLBACK_POOL_SIZE + " threads");
+        return Executors.newFixedThreadPool(FALLBACK_POOL_SIZE);
+    });
+    private final BufferPool bodies = new BufferPool();
+    private volatile ServerSocket serverSocket;
+
+    /**
+     * Accepts connections and hands each one to the executor.
+     * @param port The port number to listen on.
+     * @param server The AggregationServer that handles each request.
+     * @throws IOException If the listening socket cannot be opened.
+     */
+    @Override
+    public void serve(int port, AggregationServer server) throws IOException {
+        serverSocket = new ServerSocket(port);
+        System.out.println("Server started on port: " + port + " (virtual thread engine)");
+
+        try {
+            while (!serverSocket.isClosed()) {
+                Socket clientSocket;
+                try {
+                    clientSocket = serverSocket.accept();
+                } catch (SocketException e) {
+                    // Thrown by accept() once stop() has closed the socket
+                    if (serverSocket.isClosed()) {
+                        break;
+                    }
+                    throw e;
+                }
+                executor.execute(() -> handleConnection(clientSocket, server));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Stops accepting connections.
+     */
+    @Override
+    public void stop() {
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            System.out.println(e);
+        }
+    }
+
+    /**
+     * Serves requests on a connection until the client closes it, asks for it to be
+     * closed, or leaves it idle. Pipelined requests are answered in order, and the
+     * output is only flushed once no further request is already buffered.
+     * @param clientSocket The socket for the client connection.
+     * @param server The AggregationServer that handles the requests.
+     */
+    private void handleConnection(Socket clientSocket, AggregationServer server) {
+        server.getMetrics().connectionOpened();
+        try (Socket socket = clientSocket;
+             InputStream input = new BufferedInputStream(socket.getInputStream());
+             OutputStream output = new BufferedOutputStream(socket.getOutputStream())) {
+            socket.setSoTimeout(KEEP_ALIVE_TIMEOUT);
+            while (true) {
+                HttpMessage request;
+                try {
+                    request = HttpMessage.read(input, bodies);
+                } catch (PayloadTooLargeException e) {
+                    System.out.println(e.getMessage());
+                    output.write(server.buildPayloadTooLargeResponse());
+                    break;
+                }
+                if (request == null) {
+                    break;
+                }
+                try {
+                    output.write(server.handleRequest(request));
+                } finally {
+                    request.release();
+                }
+                if (!request.isKeepAlive()) {
+                    break;
+                }
+                if (input.available() == 0) {
+                    output.flush();
+                }
+            }
+            output.flush();
+        } catch (SocketTimeoutException e) {
+            // Idle keep-alive connection, nothing left to answer
+        } catch (IOException e) {
+            System.out.println(e);
+        } finally {
+            server.getMetrics().connectionClosed();
+        }
+    }
+
+    /**
+     * Creates a virtual-thread-per-task executor. The lookup is reflective so the sources
+     * still compile with the pre-21 javac used by the Makefile; on such runtimes the
+     * fallback executor is used instead.
+     * @param fallback Creates the executor to use when virtual threads are unavailable.
+     * @return The executor.
+     */
+    static ExecutorService newVirtualThreadExecutor(Supplier<ExecutorService> fallback) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return fallback.get();
+        }
+    }
+}
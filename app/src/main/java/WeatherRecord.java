@@ -0,0 +1,478 @@
+import java.util.ArrayList;
+import java.util.List;
+import org.json.JSONObject;
+
+/**
+ * WeatherRecord is an immutable, compact copy of one station's latest observation.
+ * Known numeric fields are stored as primitive doubles (NaN when absent) and known text
+ * fields as plain strings; any other fields are kept as-is so nothing sent is lost.
+ * Numeric fields sent as strings, as the text feeds send them, are stored typed too,
+ * with a bit per field recording that they came as strings, so they are returned as
+ * the same strings. Only text that would not print back exactly, such as "1023.90",
+ * is kept verbatim as an extra field instead.
+ */
+public final class WeatherRecord {
+    private static final String[] NO_KEYS = new String[0];
+    private static final Object[] NO_VALUES = new Object[0];
+
+    private final String id;
+    private final String name;
+    private final String state;
+    private final String timeZone;
+    private final double lat;
+    private final double lon;
+    private final String localDateTime;
+    private final String localDateTimeFull;
+    private final double airTemp;
+    private final double apparentT;
+    private final String cloud;
+    private final double dewpt;
+    private final double press;
+    private final double relHum;
+    private final String windDir;
+    private final double windSpdKmh;
+    private final double windSpdKt;
+    private final String[] extraKeys;
+    private final Object[] extraValues;
+    private final int quoted;
+    private final long receivedAt;
+    private final long lamport;
+
+    /**
+     * Constructor for WeatherRecord, used by the Builder.
+     * @param b The builder holding the field values.
+     */
+    private WeatherRecord(Builder b) {
+        this.id = b.id;
+        this.name = b.name;
+        this.state = b.state;
+        this.timeZone = b.timeZone;
+        this.lat = b.lat;
+        this.lon = b.lon;
+        this.localDateTime = b.localDateTime;
+        this.localDateTimeFull = b.localDateTimeFull;
+        this.airTemp = b.airTemp;
+        this.apparentT = b.apparentT;
+        this.cloud = b.cloud;
+        this.dewpt = b.dewpt;
+        this.press = b.press;
+        this.relHum = b.relHum;
+        this.windDir = b.windDir;
+        this.windSpdKmh = b.windSpdKmh;
+        this.windSpdKt = b.windSpdKt;
+        this.extraKeys = b.extraKeys.isEmpty() ? NO_KEYS : b.extraKeys.toArray(NO_KEYS);
+        this.extraValues = b.extraValues.isEmpty() ? NO_VALUES : b.extraValues.toArray();
+        this.quoted = b.quoted;
+        this.receivedAt = b.receivedAt;
+        this.lamport = b.lamport;
+    }
+
+    /**
+     * Constructor for a copy of a record with a new receive time.
+     * @param other The record to copy.
+     * @param receivedAt The new receive time in milliseconds.
+     */
+    private WeatherRecord(WeatherRecord other, long receivedAt) {
+        this.id = other.id;
+        this.name = other.name;
+        this.state = other.state;
+        this.timeZone = other.timeZone;
+        this.lat = other.lat;
+        this.lon = other.lon;
+        this.localDateTime = other.localDateTime;
+        this.localDateTimeFull = other.localDateTimeFull;
+        this.airTemp = other.airTemp;
+        this.apparentT = other.apparentT;
+        this.cloud = other.cloud;
+        this.dewpt = other.dewpt;
+        this.press = other.press;
+        this.relHum = other.relHum;
+        this.windDir = other.windDir;
+        this.windSpdKmh = other.windSpdKmh;
+        this.windSpdKt = other.windSpdKt;
+        this.extraKeys = other.extraKeys;
+        this.extraValues = other.extraValues;
+        this.quoted = other.quoted;
+        this.receivedAt = receivedAt;
+        this.lamport = other.lamport;
+    }
+
+    /**
+     * Creates a record from a JSON object as sent by a content server.
+     * @param json The JSON object; must contain a non-empty "id".
+     * @param receivedAt The time the record was received, in milliseconds.
+     * @return The record.
+     * @throws IllegalArgumentException If the id is missing or empty.
+     */
+    public static WeatherRecord fromJson(JSONObject json, long receivedAt) {
+        return fromJson(json, receivedAt, 0);
+    }
+
+    /**
+     * Creates a record from a JSON object, stamped with the logical time it was stored at.
+     * @param json The JSON object; must contain a non-empty "id".
+     * @param receivedAt The time the record was received, in milliseconds.
+     * @param lamport The Lamport clock value at which the record was stored.
+     * @return The record.
+     * @throws IllegalArgumentException If the id is missing or empty.
+     */
+    public static WeatherRecord fromJson(JSONObject json, long receivedAt, long lamport) {
+        Builder builder = new Builder();
+        for (String key : json.keySet()) {
+            builder.field(key, json.get(key));
+        }
+        return builder.receivedAt(receivedAt).lamport(lamport).build();
+    }
+
+    /**
+     * Gets the station id.
+     * @return The id.
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Gets the station state.
+     * @return The state, or null if absent.
+     */
+    public String getState() {
+        return state;
+    }
+
+    /**
+     * Gets the air temperature.
+     * @return The air temperature, or NaN if absent.
+     */
+    public double getAirTemp() {
+        return airTemp;
+    }
+
+    /**
+     * Gets the time the record was received.
+     * @return The receive time in milliseconds.
+     */
+    public long getReceivedAt() {
+        return receivedAt;
+    }
+
+    /**
+     * Creates a copy of this record received at another time, e.g. when a content
+     * server confirms that the station is unchanged. The data and Lamport time are kept.
+     * @param time The new receive time in milliseconds.
+     * @return The copy.
+     */
+    public WeatherRecord withReceivedAt(long time) {
+        return new WeatherRecord(this, time);
+    }
+
+    /**
+     * Gets the Lamport clock value at which the record was stored. It is not part of
+     * the JSON form, so records recovered from disk start again at 0.
+     * @return The Lamport time.
+     */
+    public long getLamport() {
+        return lamport;
+    }
+
+    /**
+     * Appends this record as a JSON object.
+     * @param out The builder to append to.
+     */
+    public void writeJson(StringBuilder out) {
+        out.append('{');
+        boolean first = writeString(out, true, "id", id);
+        first = writeString(out, first, "name", name);
+        first = writeString(out, first, "state", state);
+        first = writeString(out, first, "time_zone", timeZone);
+        first = writeNumber(out, first, "lat", lat, quoted & 1);
+        first = writeNumber(out, first, "lon", lon, quoted & (1 << 1));
+        first = writeString(out, first, "local_date_time", localDateTime);
+        first = writeString(out, first, "local_date_time_full", localDateTimeFull);
+        first = writeNumber(out, first, "air_temp", airTemp, quoted & (1 << 2));
+        first = writeNumber(out, first, "apparent_t", apparentT, quoted & (1 << 3));
+        first = writeString(out, first, "cloud", cloud);
+        first = writeNumber(out, first, "dewpt", dewpt, quoted & (1 << 4));
+        first = writeNumber(out, first, "press", press, quoted & (1 << 5));
+        first = writeNumber(out, first, "rel_hum", relHum, quoted & (1 << 6));
+        first = writeString(out, first, "wind_dir", windDir);
+        first = writeNumber(out, first, "wind_spd_kmh", windSpdKmh, quoted & (1 << 7));
+        first = writeNumber(out, first, "wind_spd_kt", windSpdKt, quoted & (1 << 8));
+        for (int i = 0; i < extraKeys.length; i++) {
+            if (!first) {
+                out.append(',');
+            }
+            first = false;
+            out.append(JSONObject.quote(extraKeys[i])).append(':').append(JSONObject.valueToString(extraValues[i]));
+        }
+        out.append('}');
+    }
+
+    /**
+     * Converts this record to a JSONObject.
+     * @return A new JSONObject holding the record's fields.
+     */
+    public JSONObject toJson() {
+        StringBuilder out = new StringBuilder(256);
+        writeJson(out);
+        return new JSONObject(out.toString());
+    }
+
+    /**
+     * Appends this record to a binary message.
+     * @param encoder The encoder to append to.
+     */
+    public void writeBinary(BinaryRecordCodec.Encoder encoder) {
+        encoder.write(
+                new String[] {id, name, state, timeZone, localDateTime, localDateTimeFull, cloud, windDir},
+                new double[] {lat, lon, airTemp, apparentT, dewpt, press, relHum, windSpdKmh, windSpdKt},
+                quoted, extraKeys, extraValues);
+    }
+
+    /**
+     * Appends a string field if present.
+     * @return Whether the object is still empty.
+     */
+    private static boolean writeString(StringBuilder out, boolean first, String key, String value) {
+        if (value == null) {
+            return first;
+        }
+        if (!first) {
+            out.append(',');
+        }
+        out.append('"').append(key).append("\":").append(JSONObject.quote(value));
+        return false;
+    }
+
+    /**
+     * Appends a numeric field if present, writing integral values without a fraction.
+     * @param quoted Non-zero if the value was sent as a string and is written as one.
+     * @return Whether the object is still empty.
+     */
+    private static boolean writeNumber(StringBuilder out, boolean first, String key, double value, int quoted) {
+        if (Double.isNaN(value)) {
+            return first;
+        }
+        if (!first) {
+            out.append(',');
+        }
+        out.append('"').append(key).append("\":");
+        if (quoted != 0) {
+            out.append('"');
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        if (quoted != 0) {
+            out.append('"');
+        }
+        return false;
+    }
+
+    /**
+     * Formats a number the way writeJson() writes it.
+     * @param value The number.
+     * @return The text.
+     */
+    static String formatNumber(double value) {
+        return value == Math.rint(value) && Math.abs(value) < 1e15 ? Long.toString((long) value) : Double.toString(value);
+    }
+
+    /**
+     * Builder collects fields one at a time, so records can be assembled from a
+     * JSONObject or directly by a parser.
+     */
+    public static final class Builder {
+        private String id;
+        private String name;
+        private String state;
+        private String timeZone;
+        private double lat = Double.NaN;
+        private double lon = Double.NaN;
+        private String localDateTime;
+        private String localDateTimeFull;
+        private double airTemp = Double.NaN;
+        private double apparentT = Double.NaN;
+        private String cloud;
+        private double dewpt = Double.NaN;
+        private double press = Double.NaN;
+        private double relHum = Double.NaN;
+        private String windDir;
+        private double windSpdKmh = Double.NaN;
+        private double windSpdKt = Double.NaN;
+        private final List<String> extraKeys = new ArrayList<>();
+        private final List<Object> extraValues = new ArrayList<>();
+        private int quoted;
+        private long receivedAt;
+        private long lamport;
+
+        /**
+         * Sets a field by its JSON name. Numeric fields accept numbers, and strings
+         * that print back exactly from the parsed number; values that do not fit the
+         * typed field are kept as extra fields.
+         * @param key The JSON field name.
+         * @param value The JSON value.
+         * @return This builder.
+         */
+        public Builder field(String key, Object value) {
+            switch (key) {
+                case "id": id = text(key, value); break;
+                case "name": name = text(key, value); break;
+                case "state": state = text(key, value); break;
+                case "time_zone": timeZone = text(key, value); break;
+                case "local_date_time": localDateTime = text(key, value); break;
+                case "local_date_time_full": localDateTimeFull = text(key, value); break;
+                case "cloud": cloud = text(key, value); break;
+                case "wind_dir": windDir = text(key, value); break;
+                case "lat": lat = number(key, value); break;
+                case "lon": lon = number(key, value); break;
+                case "air_temp": airTemp = number(key, value); break;
+                case "apparent_t": apparentT = number(key, value); break;
+                case "dewpt": dewpt = number(key, value); break;
+                case "press": press = number(key, value); break;
+                case "rel_hum": relHum = number(key, value); break;
+                case "wind_spd_kmh": windSpdKmh = number(key, value); break;
+                case "wind_spd_kt": windSpdKt = number(key, value); break;
+                default: extra(key, value); break;
+            }
+            return this;
+        }
+
+        /**
+         * Sets a numeric field by its JSON name without boxing the value. A key that is
+         * not a numeric field is kept as an extra field holding the number.
+         * @param key The JSON field name.
+         * @param value The number.
+         * @return This builder.
+         */
+        public Builder numberField(String key, double value) {
+            return numberField(key, value, false);
+        }
+
+        /**
+         * Sets a numeric field by its JSON name, recording whether it was sent as a
+         * string. A key that is not a numeric field is kept as an extra field.
+         * @param key The JSON field name.
+         * @param value The number.
+         * @param sentAsString true to write the value back as a string.
+         * @return This builder.
+         */
+        public Builder numberField(String key, double value, boolean sentAsString) {
+            switch (key) {
+                case "lat": lat = value; break;
+                case "lon": lon = value; break;
+                case "air_temp": airTemp = value; break;
+                case "apparent_t": apparentT = value; break;
+                case "dewpt": dewpt = value; break;
+                case "press": press = value; break;
+                case "rel_hum": relHum = value; break;
+                case "wind_spd_kmh": windSpdKmh = value; break;
+                case "wind_spd_kt": windSpdKt = value; break;
+                default:
+                    extra(key, sentAsString ? formatNumber(value) : value);
+                    return this;
+            }
+            int bit = numberBit(key);
+            quoted = sentAsString ? quoted | bit : quoted & ~bit;
+            return this;
+        }
+
+        /**
+         * Gets the station id set so far.
+         * @return The id, or null if none has been set.
+         */
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * Sets the receive time.
+         * @param receivedAt The receive time in milliseconds.
+         * @return This builder.
+         */
+        public Builder receivedAt(long receivedAt) {
+            this.receivedAt = receivedAt;
+            return this;
+        }
+
+        /**
+         * Sets the Lamport time at which the record is stored.
+         * @param lamport The Lamport clock value.
+         * @return This builder.
+         */
+        public Builder lamport(long lamport) {
+            this.lamport = lamport;
+            return this;
+        }
+
+        /**
+         * Builds the record.
+         * @return The record.
+         * @throws IllegalArgumentException If the id is missing or empty.
+         */
+        public WeatherRecord build() {
+            if (id == null || id.isEmpty()) {
+                throw new IllegalArgumentException("Record has no id");
+            }
+            return new WeatherRecord(this);
+        }
+
+        private String text(String key, Object value) {
+            if (value instanceof String) {
+                return (String) value;
+            }
+            extra(key, value);
+            return null;
+        }
+
+        private double number(String key, Object value) {
+            int bit = numberBit(key);
+            quoted &= ~bit;
+            if (value instanceof Number) {
+                return ((Number) value).doubleValue();
+            }
+            if (value instanceof String) {
+                String text = (String) value;
+                try {
+                    double parsed = Double.parseDouble(text);
+                    if (Double.isFinite(parsed) && formatNumber(parsed).equals(text)) {
+                        quoted |= bit;
+                        return parsed;
+                    }
+                } catch (NumberFormatException e) {
+                    // Fall through and keep the original text
+                }
+            }
+            extra(key, value);
+            return Double.NaN;
+        }
+
+        /**
+         * Gets the bit of a numeric field in the sent-as-string mask, in the order of
+         * BinaryRecordCodec.NUMBER_KEYS.
+         * @param key The JSON field name.
+         * @return The bit, or 0 if the key is not a numeric field.
+         */
+        private static int numberBit(String key) {
+            switch (key) {
+                case "lat": return 1;
+                case "lon": return 1 << 1;
+                case "air_temp": return 1 << 2;
+                case "apparent_t": return 1 << 3;
+                case "dewpt": return 1 << 4;
+                case "press": return 1 << 5;
+                case "rel_hum": return 1 << 6;
+                case "wind_spd_kmh": return 1 << 7;
+                case "wind_spd_kt": return 1 << 8;
+                default: return 0;
+            }
+        }
+
+        private void extra(String key, Object value) {
+            extraKeys.add(key);
+            extraValues.add(value);
+        }
+    }
+}
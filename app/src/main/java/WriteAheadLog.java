@@ -0,0 +1,238 @@
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * WriteAheadLog persists station changes as an append-only sequence of segment files,
+ * so each accepted PUT costs one small write instead of rewriting the whole dataset.
+ *
+ * Each line is either "P {json}" for a stored record or "X id" for an expired station.
+ * A line always describes the state of the station in the StationStore at the time the
+ * line is written, so concurrent updates to one station are logged in store order.
+ * When a segment grows past its size limit, a new segment is started with a checkpoint
+ * of the whole store and the older segments are deleted.
+ */
+public class WriteAheadLog implements Closeable {
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final long DEFAULT_MAX_SEGMENT_BYTES = 16L * 1024 * 1024;
+    private final Path directory;
+    private final StationStore stations;
+    private final long maxSegmentBytes;
+    private FileChannel segment;
+    private long segmentNumber;
+
+    /**
+     * Constructor for WriteAheadLog.
+     * @param directory The directory holding the segment files.
+     * @param stations The store whose changes are logged and replayed.
+     */
+    public WriteAheadLog(Path directory, StationStore stations) {
+        this(directory, stations, DEFAULT_MAX_SEGMENT_BYTES);
+    }
+
+    /**
+     * Constructor for WriteAheadLog with an explicit segment size limit.
+     * @param directory The directory holding the segment files.
+     * @param stations The store whose changes are logged and replayed.
+     * @param maxSegmentBytes The size after which a new segment is started.
+     */
+    public WriteAheadLog(Path directory, StationStore stations, long maxSegmentBytes) {
+        this.directory = directory;
+        this.stations = stations;
+        this.maxSegmentBytes = maxSegmentBytes;
+    }
+
+    /**
+     * Replays all segments into the store, then compacts them into a fresh segment.
+     * A torn or corrupt line, as left by a crash mid-write, is skipped.
+     * @throws IOException If the segments cannot be read or written.
+     */
+    public synchronized void replay() throws IOException {
+        Files.createDirectories(directory);
+        List<Path> segments = listSegments();
+        stations.clear();
+        long now = System.currentTimeMillis();
+        int applied = 0;
+        for (Path path : segments) {
+            try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (applyLine(line, now)) {
+                        applied++;
+                    } else if (!line.isEmpty()) {
+                        System.out.println("Skipping corrupt log line in " + path.getFileName());
+                    }
+                }
+            }
+        }
+        System.out.println("Replayed " + applied + " log entries from " + segments.size() + " segment(s)");
+
+        segmentNumber = segments.isEmpty() ? 0 : segmentNumber(segments.get(segments.size() - 1));
+        rollSegment();
+    }
+
+    /**
+     * Logs the current state of a station: its record if present, otherwise its removal.
+     * @param id The station id that changed.
+     * @throws IOException If the log cannot be written.
+     */
+    public void append(String id) throws IOException {
+        appendAll(Collections.singletonList(id));
+    }
+
+    /**
+     * Logs the current state of several stations with a single write and fsync, so a
+     * whole commit group costs one disk flush.
+     * @param ids The station ids that changed.
+     * @throws IOException If the log cannot be written or synced.
+     */
+    public synchronized void appendAll(Collection<String> ids) throws IOException {
+        if (segment == null) {
+            throw new IOException("Write-ahead log is not open");
+        }
+        ByteArrayOutputStream group = new ByteArrayOutputStream(ids.size() * 330);
+        for (String id : ids) {
+            group.write(encode(id));
+        }
+        writeFully(group.toByteArray());
+        segment.force(false);
+        if (segment.size() >= maxSegmentBytes) {
+            rollSegment();
+        }
+    }
+
+    /**
+     * Closes the current segment.
+     */
+    @Override
+    public synchronized void close() {
+        try {
+            if (segment != null) {
+                segment.close();
+                segment = null;
+            }
+        } catch (IOException e) {
+            System.out.println(e);
+        }
+    }
+
+    /**
+     * Encodes the log line for the current state of a station.
+     * @param id The station id.
+     * @return The encoded line.
+     */
+    private byte[] encode(String id) {
+        WeatherRecord record = stations.get(id);
+        StringBuilder line = new StringBuilder(320);
+        if (record != null) {
+            line.append("P ");
+            record.writeJson(line);
+        } else {
+            line.append("X ").append(id);
+        }
+        line.append('\n');
+        return line.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Applies one log line to the store.
+     * @param line The line without its terminator.
+     * @param receivedAt The receive time to assign to replayed records.
+     * @return true if the line was valid.
+     */
+    private boolean applyLine(String line, long receivedAt) {
+        if (line.startsWith("P ")) {
+            try {
+                stations.put(WeatherRecord.fromJson(new JSONObject(line.substring(2)), receivedAt));
+                return true;
+            } catch (JSONException | IllegalArgumentException e) {
+                return false;
+            }
+        } else if (line.startsWith("X ") && line.length() > 2) {
+            stations.remove(line.substring(2));
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Starts a new segment holding a checkpoint of the whole store, then deletes the
+     * older segments, which the checkpoint supersedes.
+     * @throws IOException If the segment cannot be created.
+     */
+    private void rollSegment() throws IOException {
+        List<Path> old = listSegments();
+        if (segment != null) {
+            segment.close();
+        }
+        segmentNumber++;
+        Path path = directory.resolve(String.format("%s%010d%s", SEGMENT_PREFIX, segmentNumber, SEGMENT_SUFFIX));
+        segment = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+
+        StringBuilder checkpoint = new StringBuilder(64 + stations.size() * 330);
+        for (WeatherRecord record : stations.records()) {
+            checkpoint.append("P ");
+            record.writeJson(checkpoint);
+            checkpoint.append('\n');
+        }
+        writeFully(checkpoint.toString().getBytes(StandardCharsets.UTF_8));
+        segment.force(false);
+
+        for (Path stale : old) {
+            Files.deleteIfExists(stale);
+        }
+    }
+
+    /**
+     * Writes all bytes to the current segment.
+     * @param bytes The bytes to write.
+     * @throws IOException If the write fails.
+     */
+    private void writeFully(byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            segment.write(buffer);
+        }
+    }
+
+    /**
+     * Lists the segment files in ascending order.
+     * @return The segment paths.
+     * @throws IOException If the directory cannot be read.
+     */
+    private List<Path> listSegments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                segments.add(path);
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    /**
+     * Extracts the sequence number from a segment file name.
+     * @param path The segment path.
+     * @return The sequence number.
+     */
+    private static long segmentNumber(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
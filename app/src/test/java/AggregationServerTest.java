@@ -1,9 +1,18 @@
 import org.json.JSONObject;
 import org.junit.jupiter.api.*;
-import java.io.IOException;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Test class for AggregationServer functionality.
@@ -24,13 +33,15 @@ public class AggregationServerTest {
 
     /**
      * Tear down method run after each test.
-     * Stores an empty JSON object in the server to reset its state.
+     * Stores an empty JSON object in the server to reset its state, then stops it so
+     * its commit and expiry threads do not outlive the test.
      */
     @AfterEach
     public void tearDown() {
         JSONObject emptyData = new JSONObject();
         emptyData.put("id", "");
         server.store(emptyData);
+        server.stopServer();
     }
 
     /**
@@ -147,6 +158,321 @@ public class AggregationServerTest {
         }
     }
 
+    /**
+     * Test that GET query parameters return only the matching stations.
+     */
+    @Test
+    public void testGetFiltersStations() throws IOException {
+        server.store(new JSONObject().put("id", "IDS1").put("state", "SA"));
+        server.store(new JSONObject().put("id", "IDS2").put("state", "NSW"));
+        server.store(new JSONObject().put("id", "IDV1").put("state", "VIC"));
+
+        Assertions.assertEquals(Set.of("IDS2"), getStations("/weather.json?id=IDS2"));
+        Assertions.assertEquals(Set.of("IDS1", "IDV1"), getStations("/weather.json?id=IDS1,IDV1"));
+        Assertions.assertEquals(Set.of("IDS1", "IDS2"), getStations("/weather.json?prefix=IDS"));
+        Assertions.assertEquals(Set.of("IDV1"), getStations("/weather.json?state=VIC"));
+        Assertions.assertEquals(Set.of(), getStations("/weather.json?id=missing"));
+        Assertions.assertEquals(Set.of("IDS1", "IDS2", "IDV1"), getStations("/weather.json"));
+    }
+
+    /**
+     * Test that an unchanged store answers If-None-Match with 304 and that since returns only newer stations.
+     */
+    @Test
+    public void testConditionalAndDeltaGet() throws IOException {
+        server.store(new JSONObject().put("id", "IDS1").put("state", "SA"));
+        HttpMessage first = get("/weather.json", "");
+        String etag = first.getHeader("ETag");
+        long watermark = Long.parseLong(first.getHeader("Lamport-Watermark"));
+        Assertions.assertNotNull(etag);
+
+        HttpMessage notModified = get("/weather.json", "If-None-Match: " + etag + "\r\n");
+        Assertions.assertEquals(304, notModified.getStatusCode());
+        Assertions.assertEquals(0, notModified.getBody().length);
+
+        server.store(new JSONObject().put("id", "IDS2").put("state", "SA"));
+        server.store(new JSONObject().put("id", "IDS3").put("state", "SA"));
+        long stamp = server.getStations().get("IDS2").getLamport();
+        Assertions.assertTrue(stamp > watermark);
+        // Each store ticks, so a watermark taken between two stores separates them
+        Assertions.assertTrue(server.getStations().get("IDS3").getLamport() > stamp);
+        Assertions.assertEquals(Set.of("IDS3"), getStations("/weather.json?since=" + stamp));
+        Assertions.assertEquals(200, get("/weather.json", "If-None-Match: " + etag + "\r\n").getStatusCode());
+        Assertions.assertEquals(Set.of("IDS2", "IDS3"), getStations("/weather.json?since=" + watermark));
+        Assertions.assertEquals(Set.of(), getStations("/weather.json?since=" + watermark + "&id=IDS1"));
+
+        // A time from the future, e.g. from before a server restart, gets the full data
+        Assertions.assertEquals(Set.of("IDS1", "IDS2", "IDS3"), getStations("/weather.json?since=" + (watermark + 1000)));
+        Assertions.assertEquals(400, get("/weather.json?since=abc", "").getStatusCode());
+    }
+
+    /**
+     * Test that, while stores run concurrently, every record stamped at or below a
+     * response's watermark is in that response.
+     */
+    @Test
+    public void testWatermarkUnderConcurrentStores() throws Exception {
+        AtomicBoolean done = new AtomicBoolean();
+        List<Thread> writers = new ArrayList<>();
+        for (int w = 0; w < 4; w++) {
+            int writer = w;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; !done.get(); i++) {
+                    server.store(new JSONObject().put("id", "W" + writer + "-" + (i % 500)).put("air_temp", i));
+                }
+            });
+            thread.start();
+            writers.add(thread);
+        }
+        try {
+            for (int round = 0; round < 200; round++) {
+                HttpMessage response = get("/weather.json", "");
+                long watermark = Long.parseLong(response.getHeader("Lamport-Watermark"));
+                JSONObject body = new JSONObject(response.getBodyAsString());
+                for (WeatherRecord record : server.getStations().records()) {
+                    if (record.getLamport() <= watermark) {
+                        Assertions.assertTrue(body.has(record.getId()), record.getId() + " at " + record.getLamport());
+                    }
+                }
+            }
+        } finally {
+            done.set(true);
+            for (Thread thread : writers) {
+                thread.join();
+            }
+        }
+    }
+
+    /**
+     * Test that /metrics reports request counts and latencies in Prometheus format.
+     */
+    @Test
+    public void testMetricsEndpoint() throws IOException {
+        String body = "{\"id\":\"IDS1\",\"air_temp\":13}";
+        String put = "PUT /weather.json HTTP/1.1\r\nContent-Length: " + body.length() + "\r\nLamport-Clock: 1\r\n\r\n" + body;
+        byte[] response = server.handleRequest(HttpMessage.read(new ByteArrayInputStream(put.getBytes(StandardCharsets.UTF_8))));
+        Assertions.assertEquals(201, HttpMessage.read(new ByteArrayInputStream(response)).getStatusCode());
+        get("/weather.json", "");
+        Assertions.assertEquals(1, server.getMetrics().getResponseCount("PUT", 201));
+        Assertions.assertEquals(1, server.getMetrics().getResponseCount("GET", 200));
+
+        HttpMessage metrics = get("/metrics", "");
+        Assertions.assertEquals(200, metrics.getStatusCode());
+        Assertions.assertTrue(metrics.getHeader("Content-Type").startsWith("text/plain"));
+        String text = metrics.getBodyAsString();
+        Assertions.assertTrue(text.contains("aggregation_responses_total{method=\"PUT\",status=\"201\"} 1\n"), text);
+        Assertions.assertTrue(text.contains("aggregation_stations 1\n"), text);
+        Assertions.assertTrue(text.contains("aggregation_request_seconds_bucket{method=\"PUT\",le=\"+Inf\"} 1\n"), text);
+        Assertions.assertTrue(text.contains("aggregation_request_seconds_count{method=\"GET\"} 1\n"), text);
+        Assertions.assertTrue(text.contains("aggregation_persist_seconds_count 1\n"), text);
+    }
+
+    /**
+     * Test bulk PUTs as a JSON array and as NDJSON, with a status per record.
+     */
+    @Test
+    public void testBulkPut() throws IOException {
+        HttpMessage response = put("[{\"id\":\"IDS1\",\"air_temp\":13},\n {\"id\":\"IDS2\"}, 5, {\"name\":\"x\"}]", "");
+        Assertions.assertEquals(200, response.getStatusCode());
+        JSONObject summary = new JSONObject(response.getBodyAsString());
+        Assertions.assertEquals(2, summary.getInt("created"));
+        Assertions.assertEquals(2, summary.getInt("failed"));
+        Assertions.assertEquals(201, summary.getJSONArray("results").getJSONObject(0).getInt("status"));
+        Assertions.assertEquals("IDS2", summary.getJSONArray("results").getJSONObject(1).getString("id"));
+        Assertions.assertEquals(400, summary.getJSONArray("results").getJSONObject(2).getInt("status"));
+        Assertions.assertEquals(400, summary.getJSONArray("results").getJSONObject(3).getInt("status"));
+
+        response = put("{\"id\":\"IDS1\",\"air_temp\":14}\n\n{\"id\":\"IDS3\"\n{\"id\":\"IDS3\"}\n", "Content-Type: application/x-ndjson\r\n");
+        summary = new JSONObject(response.getBodyAsString());
+        Assertions.assertEquals(1, summary.getInt("created"));
+        Assertions.assertEquals(1, summary.getInt("updated"));
+        Assertions.assertEquals(1, summary.getInt("failed"));
+        Assertions.assertEquals(14, server.getDataStorage().getJSONObject("IDS1").getInt("air_temp"));
+        Assertions.assertEquals(Set.of("IDS1", "IDS2", "IDS3"), getStations("/weather.json"));
+
+        // A malformed array rejects the whole request
+        Assertions.assertEquals(400, put("[{\"id\":\"IDS4\"},", "").getStatusCode());
+        Assertions.assertFalse(server.getDataStorage().has("IDS4"));
+    }
+
+    /**
+     * Test that large GET responses are compressed when the client accepts it, with an
+     * ETag per coding, and small ones are not.
+     */
+    @Test
+    public void testCompressedGet() throws IOException {
+        put("{\"id\":\"IDS1\",\"air_temp\":13}", "");
+        HttpMessage small = get("/weather.json", "Accept-Encoding: gzip\r\n");
+        Assertions.assertNull(small.getHeader("Content-Encoding"));
+
+        StringBuilder bulk = new StringBuilder("[");
+        for (int i = 0; i < 100; i++) {
+            bulk.append(i == 0 ? "" : ",").append("{\"id\":\"IDS").append(i).append("\",\"wind_spd_kmh\":").append(i).append('}');
+        }
+        put(bulk.append(']').toString(), "");
+        HttpMessage plain = get("/weather.json", "");
+        HttpMessage gzip = get("/weather.json", "Accept-Encoding: gzip, deflate\r\n");
+        Assertions.assertNull(plain.getHeader("Content-Encoding"));
+        Assertions.assertEquals("gzip", gzip.getHeader("Content-Encoding"));
+        Assertions.assertEquals("Accept, Accept-Encoding", gzip.getHeader("Vary"));
+        Assertions.assertTrue(gzip.getBodyLength() * 5 < plain.getBodyLength());
+        Assertions.assertEquals(plain.getBodyAsString(),
+                new String(ContentEncoding.decode(gzip.getBody(), "gzip"), StandardCharsets.UTF_8));
+        Assertions.assertNotEquals(plain.getHeader("ETag"), gzip.getHeader("ETag"));
+        Assertions.assertEquals(304, get("/weather.json", "Accept-Encoding: gzip\r\nIf-None-Match: " + gzip.getHeader("ETag") + "\r\n").getStatusCode());
+
+        HttpMessage deflate = get("/weather.json?prefix=IDS", "Accept-Encoding: deflate\r\n");
+        Assertions.assertEquals("deflate", deflate.getHeader("Content-Encoding"));
+        Assertions.assertEquals(100, new JSONObject(new String(ContentEncoding.decode(deflate.getBody(), "deflate"), StandardCharsets.UTF_8)).length());
+    }
+
+    /**
+     * Test that records can be sent and fetched in the binary format.
+     */
+    @Test
+    public void testBinaryPutAndGet() throws IOException {
+        String binaryType = "Content-Type: " + BinaryRecordCodec.CONTENT_TYPE + "\r\n";
+        byte[] body = BinaryRecordCodec.encode(List.of(
+                WeatherRecord.fromJson(new JSONObject("{\"id\":\"IDS1\",\"name\":\"Adelaide\",\"air_temp\":13.3,\"rel_hum\":60}"), 0),
+                WeatherRecord.fromJson(new JSONObject("{\"id\":\"IDS2\",\"state\":\"SA\",\"uv\":[1,2]}"), 0)));
+        HttpMessage response = put(body, binaryType);
+        Assertions.assertEquals(200, response.getStatusCode());
+        Assertions.assertEquals(2, new JSONObject(response.getBodyAsString()).getInt("created"));
+
+        HttpMessage json = get("/weather.json", "");
+        HttpMessage binary = get("/weather.json", "Accept: " + BinaryRecordCodec.CONTENT_TYPE + "\r\nAccept-Encoding: gzip\r\n");
+        Assertions.assertEquals(BinaryRecordCodec.CONTENT_TYPE, binary.getHeader("Content-Type"));
+        Assertions.assertNull(binary.getHeader("Content-Encoding"));
+        JSONObject decoded = BinaryRecordCodec.decodeAggregate(binary.getBody(), 0, binary.getBodyLength());
+        Assertions.assertTrue(new JSONObject(json.getBodyAsString()).similar(decoded));
+        Assertions.assertNotEquals(json.getHeader("ETag"), binary.getHeader("ETag"));
+        Assertions.assertEquals(304, get("/weather.json", "Accept: " + BinaryRecordCodec.CONTENT_TYPE + "\r\nIf-None-Match: "
+                + binary.getHeader("ETag") + "\r\n").getStatusCode());
+        Assertions.assertEquals(200, get("/weather.json", "If-None-Match: " + binary.getHeader("ETag") + "\r\n").getStatusCode());
+
+        HttpMessage filtered = get("/weather.json?state=SA", "Accept: " + BinaryRecordCodec.CONTENT_TYPE + "\r\n");
+        Assertions.assertEquals(Set.of("IDS2"), BinaryRecordCodec.decodeAggregate(filtered.getBody(), 0, filtered.getBodyLength()).keySet());
+
+        Assertions.assertEquals(400, put(Arrays.copyOf(body, body.length - 3), binaryType).getStatusCode());
+    }
+
+    /**
+     * Test that heartbeats renew stored stations without changing them and report missing ones.
+     */
+    @Test
+    public void testHeartbeat() throws IOException {
+        put("{\"id\":\"IDS1\",\"air_temp\":13}", "");
+        String etag = get("/weather.json", "").getHeader("ETag");
+
+        HttpMessage response = heartbeat("[\"IDS1\",\"IDS2\"]");
+        Assertions.assertEquals(200, response.getStatusCode());
+        JSONObject summary = new JSONObject(response.getBodyAsString());
+        Assertions.assertEquals(1, summary.getInt("refreshed"));
+        Assertions.assertEquals("IDS2", summary.getJSONArray("missing").getString(0));
+        Assertions.assertEquals(1, summary.getJSONArray("missing").length());
+        Assertions.assertEquals(etag, get("/weather.json", "").getHeader("ETag"));
+        Assertions.assertEquals(13, server.getDataStorage().getJSONObject("IDS1").getInt("air_temp"));
+
+        Assertions.assertEquals(400, heartbeat("{\"id\":\"IDS1\"}").getStatusCode());
+    }
+
+    /**
+     * Sends a heartbeat to the test server without going through a socket.
+     * @param body The JSON array of station ids.
+     * @return The parsed response.
+     */
+    private HttpMessage heartbeat(String body) throws IOException {
+        String raw = "PUT /heartbeat HTTP/1.1\r\nContent-Length: " + body.length() + "\r\nLamport-Clock: 1\r\n\r\n" + body;
+        byte[] response = server.handleRequest(HttpMessage.read(new ByteArrayInputStream(raw.getBytes(StandardCharsets.US_ASCII))));
+        return HttpMessage.read(new ByteArrayInputStream(response));
+    }
+
+    /**
+     * Sends a PUT request to the test server without going through a socket.
+     * @param body The request body.
+     * @param headers Further header lines, each terminated by CRLF.
+     * @return The parsed response.
+     */
+    private HttpMessage put(String body, String headers) throws IOException {
+        return put(body.getBytes(StandardCharsets.UTF_8), headers);
+    }
+
+    /**
+     * Sends a PUT request with a raw body to the test server without going through a socket.
+     * @param bytes The encoded request body.
+     * @param headers Further header lines, each terminated by CRLF.
+     * @return The parsed response.
+     */
+    private HttpMessage put(byte[] bytes, String headers) throws IOException {
+        String head = "PUT /weather.json HTTP/1.1\r\nContent-Length: " + bytes.length + "\r\nLamport-Clock: 1\r\n" + headers + "\r\n";
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        raw.write(head.getBytes(StandardCharsets.US_ASCII));
+        raw.write(bytes);
+        byte[] response = server.handleRequest(HttpMessage.read(new ByteArrayInputStream(raw.toByteArray())));
+        return HttpMessage.read(new ByteArrayInputStream(response));
+    }
+
+    /**
+     * Sends a GET request for the target to the test server and returns the station ids in the response.
+     * @param target The request target.
+     * @return The station ids.
+     */
+    private Set<String> getStations(String target) throws IOException {
+        HttpMessage message = get(target, "");
+        Assertions.assertEquals(200, message.getStatusCode());
+        return new JSONObject(message.getBodyAsString()).keySet();
+    }
+
+    /**
+     * Sends a GET request to the test server without going through a socket.
+     * @param target The request target.
+     * @param headers Further header lines, each terminated by CRLF.
+     * @return The parsed response.
+     */
+    private HttpMessage get(String target, String headers) throws IOException {
+        byte[] raw = ("GET " + target + " HTTP/1.1\r\nLamport-Clock: 0\r\n" + headers + "\r\n").getBytes(StandardCharsets.US_ASCII);
+        byte[] response = server.handleRequest(HttpMessage.read(new ByteArrayInputStream(raw)));
+        return HttpMessage.read(new ByteArrayInputStream(response));
+    }
+
+    /**
+     * Test that stopping the server commits a PUT still lingering in its group, closes
+     * the write-ahead log and ends the commit and expiry threads.
+     */
+    @Test
+    public void testStopServerCommitsQueuedChanges(@TempDir Path directory) throws Exception {
+        AggregationServer walServer = new AggregationServer(4612);
+        walServer.useWriteAheadLog(directory);
+        walServer.recoverData();
+        walServer.setGroupCommit(1000, 60000);
+        byte[] body = "{\"id\":\"IDS9\",\"air_temp\":9}".getBytes(StandardCharsets.UTF_8);
+        String raw = "PUT /weather.json HTTP/1.1\r\nContent-Length: " + body.length + "\r\n\r\n" + new String(body, StandardCharsets.UTF_8);
+        List<HttpMessage> responses = new ArrayList<>();
+        Thread writer = new Thread(() -> {
+            try {
+                byte[] response = walServer.handleRequest(HttpMessage.read(new ByteArrayInputStream(raw.getBytes(StandardCharsets.UTF_8))));
+                responses.add(HttpMessage.read(new ByteArrayInputStream(response)));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        writer.start();
+        Thread.sleep(200);
+
+        walServer.stopServer();
+        writer.join(5000);
+        Assertions.assertFalse(writer.isAlive());
+        Assertions.assertEquals(201, responses.get(0).getStatusCode());
+        Assertions.assertTrue(Thread.getAllStackTraces().keySet().stream()
+                .noneMatch(thread -> thread.getName().equals("group-commit-4612") && thread.isAlive()));
+
+        AggregationServer restarted = new AggregationServer(4613);
+        restarted.useWriteAheadLog(directory);
+        restarted.recoverData();
+        Assertions.assertEquals(9, restarted.getDataStorage().getJSONObject("IDS9").getInt("air_temp"));
+        restarted.stopServer();
+    }
+
     /**
      * Test that the Janitor thread removes old data.
      */
@@ -197,4 +523,187 @@ public class AggregationServerTest {
         }
     }
 
+    /**
+     * Test that the selector engine serves a GET request.
+     */
+    @Test
+    public void testSelectorEngineServesGet() throws Exception {
+        assertEngineServesGet("selector", 4601);
+    }
+
+    /**
+     * Test that the virtual thread engine serves a GET request.
+     */
+    @Test
+    public void testVirtualThreadEngineServesGet() throws Exception {
+        assertEngineServesGet("virtual", 4602);
+    }
+
+    /**
+     * Test that the selector engine answers 500 and closes the connection when handling
+     * a request throws, instead of leaving the connection waiting forever.
+     */
+    @Test
+    public void testSelectorEngineAnswersFailedRequest() throws Exception {
+        AggregationServer failing = new AggregationServer(4603, ConnectionEngine.create("selector")) {
+            @Override
+            public byte[] handleRequest(HttpMessage request) {
+                throw new IllegalStateException("Handler failed");
+            }
+        };
+        Thread serverThread = new Thread(() -> {
+            try {
+                failing.startServer();
+            } catch (IOException e) {
+                System.out.println(e);
+            }
+        });
+        serverThread.setDaemon(true);
+        serverThread.start();
+
+        try {
+            String response = null;
+            for (int attempt = 0; attempt < 50 && response == null; attempt++) {
+                try {
+                    response = sendRaw(4603, "GET /weather.json HTTP/1.1\r\nLamport-Clock: 0\r\n\r\n");
+                } catch (IOException e) {
+                    // Server not listening yet
+                    TimeUnit.MILLISECONDS.sleep(100);
+                }
+            }
+            Assertions.assertNotNull(response, "Server did not accept connections");
+            Assertions.assertTrue(response.startsWith("HTTP/1.1 500"), response);
+        } finally {
+            failing.stopServer();
+        }
+    }
+
+    /**
+     * Test that the selector engine keeps more PUTs in flight than there are cores, so
+     * they can all join one commit group instead of waiting out the linger in turns.
+     */
+    @Test
+    public void testSelectorEngineGroupsConcurrentPuts() throws Exception {
+        int puts = Runtime.getRuntime().availableProcessors() * 2 + 1;
+        AggregationServer engineServer = new AggregationServer(4604, ConnectionEngine.create("selector"));
+        engineServer.clearDataStorage();
+        // A group only commits before the long linger once every PUT has joined it
+        engineServer.setGroupCommit(puts, 10000);
+        Thread serverThread = new Thread(() -> {
+            try {
+                engineServer.startServer();
+            } catch (IOException e) {
+                System.out.println(e);
+            }
+        });
+        serverThread.setDaemon(true);
+        serverThread.start();
+
+        try {
+            String response = null;
+            for (int attempt = 0; attempt < 50 && response == null; attempt++) {
+                try {
+                    response = sendRaw(4604, "GET /weather.json HTTP/1.1\r\nLamport-Clock: 0\r\nConnection: close\r\n\r\n");
+                } catch (IOException e) {
+                    // Server not listening yet
+                    TimeUnit.MILLISECONDS.sleep(100);
+                }
+            }
+            Assertions.assertNotNull(response, "Server did not accept connections");
+
+            List<String> responses = Collections.synchronizedList(new ArrayList<>());
+            List<Thread> clients = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int i = 0; i < puts; i++) {
+                String body = "{\"id\":\"group" + i + "\"}";
+                Thread client = new Thread(() -> {
+                    try {
+                        responses.add(sendRaw(4604, "PUT /weather.json HTTP/1.1\r\nContent-Length: " + body.length()
+                                + "\r\nLamport-Clock: 1\r\nConnection: close\r\n\r\n" + body));
+                    } catch (IOException e) {
+                        responses.add(e.toString());
+                    }
+                });
+                client.start();
+                clients.add(client);
+            }
+            for (Thread client : clients) {
+                client.join(15000);
+            }
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            Assertions.assertEquals(puts, responses.size());
+            for (String put : responses) {
+                Assertions.assertTrue(put.startsWith("HTTP/1.1 201") || put.startsWith("HTTP/1.1 200"), put);
+            }
+            Assertions.assertTrue(elapsedMillis < 5000, "PUTs waited " + elapsedMillis + "ms for their group");
+        } finally {
+            engineServer.stopServer();
+        }
+    }
+
+    /**
+     * Starts a server with the given engine, stores a record and checks that a GET returns it.
+     * @param mode The connection engine mode.
+     * @param port The port to run the server on.
+     */
+    private void assertEngineServesGet(String mode, int port) throws Exception {
+        AggregationServer engineServer = new AggregationServer(port, ConnectionEngine.create(mode));
+        engineServer.clearDataStorage();
+        engineServer.store(new JSONObject().put("id", "engine1").put("value", mode));
+        Thread serverThread = new Thread(() -> {
+            try {
+                engineServer.startServer();
+            } catch (IOException e) {
+                System.out.println(e);
+            }
+        });
+        serverThread.setDaemon(true);
+        serverThread.start();
+
+        try {
+            String response = null;
+            for (int attempt = 0; attempt < 50 && response == null; attempt++) {
+                try {
+                    response = sendRaw(port, "GET /weather.json HTTP/1.1\r\nLamport-Clock: 0\r\nConnection: close\r\n\r\n");
+                } catch (IOException e) {
+                    // Server not listening yet
+                    TimeUnit.MILLISECONDS.sleep(100);
+                }
+            }
+            Assertions.assertNotNull(response, "Server did not accept connections");
+            Assertions.assertTrue(response.startsWith("HTTP/1.1 200 OK"));
+            Assertions.assertTrue(response.contains("\"engine1\""));
+
+            // A PUT and a GET pipelined on one keep-alive connection are answered in order
+            String body = "{\"id\":\"engine2\",\"value\":\"" + mode + "\"}";
+            String pipelined = "PUT /weather.json HTTP/1.1\r\nContent-Length: " + body.length() + "\r\nLamport-Clock: 1\r\n\r\n" + body
+                    + "GET /weather.json HTTP/1.1\r\nLamport-Clock: 2\r\nConnection: close\r\n\r\n";
+            response = sendRaw(port, pipelined);
+            Assertions.assertTrue(response.startsWith("HTTP/1.1 201 OK"), response);
+            int second = response.indexOf("HTTP/1.1 200 OK");
+            Assertions.assertTrue(second > 0, response);
+            Assertions.assertTrue(response.substring(second).contains("\"engine2\""));
+
+            // A body over the limit is refused from the head, before any of it is read
+            response = sendRaw(port, "PUT /weather.json HTTP/1.1\r\nContent-Length: 2147483647\r\nLamport-Clock: 3\r\n\r\n");
+            Assertions.assertTrue(response.startsWith("HTTP/1.1 413"), response);
+        } finally {
+            engineServer.stopServer();
+        }
+    }
+
+    /**
+     * Sends a raw request and reads the response until the server closes the connection.
+     * @param port The server port.
+     * @param request The raw request.
+     * @return The raw response.
+     */
+    private String sendRaw(int port, String request) throws IOException {
+        try (Socket socket = new Socket("localhost", port)) {
+            socket.setSoTimeout(5000);
+            socket.getOutputStream().write(request.getBytes(StandardCharsets.UTF_8));
+            socket.getOutputStream().flush();
+            return new String(socket.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
 }
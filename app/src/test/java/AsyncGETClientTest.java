@@ -0,0 +1,147 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test class for AsyncGETClient.
+ */
+public class AsyncGETClientTest {
+    private static final String REQUEST = "GET /weather.json HTTP/1.1\r\nLamport-Clock: 0\r\n\r\n";
+    private final List<ServerSocket> listeners = new ArrayList<>();
+    private final AsyncGETClient client = new AsyncGETClient(4, 5000, new RetryPolicy());
+
+    /**
+     * Closes the client and the fake servers.
+     */
+    @AfterEach
+    public void tearDown() throws IOException {
+        client.close();
+        for (ServerSocket listener : listeners) {
+            listener.close();
+        }
+    }
+
+    /**
+     * Starts a fake keep-alive server that answers every request with its name as the body.
+     * @param name The body of every response.
+     * @param delayMillis How long to wait before each response.
+     * @param status The status line of every response, without the protocol.
+     * @param connections Counts the connections accepted.
+     * @return The server's address.
+     */
+    private InetSocketAddress startServer(String name, long delayMillis, String status, AtomicInteger connections) throws IOException {
+        ServerSocket listener = new ServerSocket(0);
+        listeners.add(listener);
+        Thread acceptor = new Thread(() -> {
+            while (!listener.isClosed()) {
+                try {
+                    Socket socket = listener.accept();
+                    connections.incrementAndGet();
+                    Thread handler = new Thread(() -> serve(socket, name, delayMillis, status));
+                    handler.setDaemon(true);
+                    handler.start();
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return new InetSocketAddress("localhost", listener.getLocalPort());
+    }
+
+    /**
+     * Answers requests on one connection until the client closes it.
+     */
+    private static void serve(Socket socket, String name, long delayMillis, String status) {
+        try (Socket s = socket) {
+            InputStream input = new BufferedInputStream(s.getInputStream());
+            while (HttpMessage.read(input) != null) {
+                Thread.sleep(delayMillis);
+                s.getOutputStream().write(("HTTP/1.1 " + status + "\r\nContent-Length: " + name.length() + "\r\n\r\n" + name)
+                        .getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (IOException | InterruptedException e) {
+            // Connection closed
+        }
+    }
+
+    /**
+     * Tests that sequential requests to one server reuse a pooled connection.
+     */
+    @Test
+    public void testReusesConnections() throws Exception {
+        AtomicInteger connections = new AtomicInteger();
+        InetSocketAddress server = startServer("a", 0, "200 OK", connections);
+
+        for (int i = 0; i < 5; i++) {
+            HttpMessage response = client.send("localhost", server.getPort(), REQUEST).get(5, TimeUnit.SECONDS);
+            assertEquals("a", response.getBodyAsString());
+        }
+        assertEquals(1, connections.get());
+        assertEquals(1, client.getOpenedConnections());
+    }
+
+    /**
+     * Tests that a hedged request is answered by a fast replica when the first one is slow.
+     */
+    @Test
+    public void testHedgedRequestTakesFastestReplica() throws Exception {
+        AtomicInteger connections = new AtomicInteger();
+        InetSocketAddress slow = startServer("slow", 3000, "200 OK", connections);
+        InetSocketAddress fast = startServer("fast", 0, "200 OK", connections);
+
+        long start = System.nanoTime();
+        HttpMessage response = client.sendHedged(List.of(slow, fast), REQUEST, 50).get(5, TimeUnit.SECONDS);
+        assertEquals("fast", response.getBodyAsString());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2), "The hedge should not wait for the slow replica");
+    }
+
+    /**
+     * Tests that failed replicas hand over at once and that the request fails only when all do.
+     */
+    @Test
+    public void testHedgedRequestFailover() throws Exception {
+        AtomicInteger connections = new AtomicInteger();
+        InetSocketAddress failing = startServer("down", 0, "503 Service Unavailable", connections);
+        InetSocketAddress healthy = startServer("up", 0, "200 OK", connections);
+
+        HttpMessage response = client.sendHedged(List.of(failing, healthy), REQUEST, 60000).get(5, TimeUnit.SECONDS);
+        assertEquals("up", response.getBodyAsString());
+
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> client.sendHedged(List.of(failing, failing), REQUEST, 60000).get(5, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof IOException);
+    }
+
+    /**
+     * Tests that a response without a valid status line fails the request and counts as
+     * a breaker failure, and that a hedged request moves on to the next replica.
+     */
+    @Test
+    public void testMalformedStatusLine() throws Exception {
+        AtomicInteger connections = new AtomicInteger();
+        InetSocketAddress malformed = startServer("bad", 0, "OK", connections);
+        InetSocketAddress healthy = startServer("up", 0, "200 OK", connections);
+        RetryPolicy policy = new RetryPolicy(3, 500, 10000, 0.2, 10, 1, 60000);
+        try (AsyncGETClient strict = new AsyncGETClient(4, 5000, policy)) {
+            ExecutionException e = assertThrows(ExecutionException.class,
+                    () -> strict.send(malformed.getHostString(), malformed.getPort(), REQUEST).get(5, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof IOException);
+            assertEquals(CircuitBreaker.State.OPEN, policy.breaker(malformed.getHostString(), malformed.getPort()).getState());
+        }
+
+        HttpMessage response = client.sendHedged(List.of(malformed, healthy), REQUEST, 60000).get(5, TimeUnit.SECONDS);
+        assertEquals("up", response.getBodyAsString());
+    }
+}
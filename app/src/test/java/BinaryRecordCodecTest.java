@@ -0,0 +1,94 @@
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Test class for BinaryRecordCodec.
+ */
+public class BinaryRecordCodecTest {
+    private static final String FULL = "{\"id\":\"IDS60901\",\"name\":\"Adelaide (West Terrace / ngayirdapira)\","
+            + "\"state\":\"SA\",\"time_zone\":\"CST\",\"lat\":-34.9,\"lon\":138.6,\"local_date_time\":\"15/04:00pm\","
+            + "\"local_date_time_full\":\"20230715160000\",\"air_temp\":13.3,\"apparent_t\":9.5,\"cloud\":\"Partly cloudy\","
+            + "\"dewpt\":5.7,\"press\":1023.9,\"rel_hum\":60,\"wind_dir\":\"S\",\"wind_spd_kmh\":15,\"wind_spd_kt\":8}";
+
+    /**
+     * Tests that records round-trip with every known field, extra fields of each JSON
+     * type and text that needs more than one byte per character.
+     */
+    @Test
+    public void testRoundTrip() {
+        WeatherRecord full = WeatherRecord.fromJson(new JSONObject(FULL), 0);
+        WeatherRecord sparse = WeatherRecord.fromJson(new JSONObject(
+                "{\"id\":\"IDS2\",\"name\":\"Mt \u00c9toile\",\"air_temp\":\"n/a\",\"uv\":[1,2],\"gust\":{\"kt\":12},\"flag\":true,\"note\":null}"), 0);
+        WeatherRecord feed = WeatherRecord.fromJson(new JSONObject(
+                "{\"id\":\"IDS3\",\"air_temp\":\"13.3\",\"rel_hum\":\"60\",\"press\":\"1023.90\"}"), 0);
+
+        byte[] message = BinaryRecordCodec.encode(List.of(full, sparse, feed));
+        List<WeatherRecord.Builder> builders = BinaryRecordCodec.decode(message, 0, message.length);
+        assertEquals(3, builders.size());
+        assertTrue(full.toJson().similar(builders.get(0).build().toJson()));
+        assertTrue(sparse.toJson().similar(builders.get(1).build().toJson()));
+        WeatherRecord decodedFeed = builders.get(2).build();
+        assertTrue(feed.toJson().similar(decodedFeed.toJson()));
+        assertEquals(13.3, decodedFeed.getAirTemp());
+
+        JSONObject aggregate = BinaryRecordCodec.decodeAggregate(message, 0, message.length);
+        assertTrue(new JSONObject(StationStore.toJsonString(List.of(full, sparse, feed))).similar(aggregate));
+        assertEquals("13.3", aggregate.getJSONObject("IDS3").get("air_temp"));
+        assertEquals("1023.90", aggregate.getJSONObject("IDS3").get("press"));
+    }
+
+    /**
+     * Tests that repeated strings are stored once and the message is much smaller than JSON.
+     */
+    @Test
+    public void testSmallerThanJson() {
+        List<WeatherRecord> records = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            JSONObject json = new JSONObject(FULL).put("id", "IDS" + i).put("air_temp", i % 40);
+            records.add(WeatherRecord.fromJson(json, 0));
+        }
+        byte[] binary = BinaryRecordCodec.encode(records);
+        byte[] json = StationStore.toJsonString(records).getBytes(StandardCharsets.UTF_8);
+        assertTrue(binary.length * 2 < json.length, binary.length + " bytes vs " + json.length + " bytes of JSON");
+        assertEquals(500, BinaryRecordCodec.decodeAggregate(binary, 0, binary.length).length());
+    }
+
+    /**
+     * Tests that malformed messages are rejected with the offset of the problem.
+     */
+    @Test
+    public void testMalformed() {
+        byte[] message = BinaryRecordCodec.encode(List.of(WeatherRecord.fromJson(new JSONObject(FULL), 0)));
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> BinaryRecordCodec.decode(message, 0, message.length - 1));
+        assertTrue(e.getMessage().contains("at byte"));
+        assertThrows(IllegalArgumentException.class, () -> BinaryRecordCodec.decode(Arrays.copyOf(message, message.length + 1), 0, message.length + 1));
+        assertThrows(IllegalArgumentException.class, () -> BinaryRecordCodec.decode("{\"id\":1}".getBytes(StandardCharsets.UTF_8), 0, 8));
+
+        byte[] hugeDictionary = {'W', 'X', 'B', '1', (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x07, 0};
+        e = assertThrows(IllegalArgumentException.class, () -> BinaryRecordCodec.decode(hugeDictionary, 0, hugeDictionary.length));
+        assertTrue(e.getMessage().contains("exceeds"));
+        byte[] hugeRecordCount = {'W', 'X', 'B', '1', 0, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0x7f};
+        assertThrows(IllegalArgumentException.class, () -> BinaryRecordCodec.decodeAggregate(hugeRecordCount, 0, hugeRecordCount.length));
+
+        byte[] badIndex = message.clone();
+        badIndex[4] = 0;
+        assertThrows(IllegalArgumentException.class, () -> BinaryRecordCodec.decode(badIndex, 0, badIndex.length));
+    }
+
+    /**
+     * Tests content type detection in Content-Type and Accept headers.
+     */
+    @Test
+    public void testIsBinary() {
+        assertTrue(BinaryRecordCodec.isBinary(BinaryRecordCodec.CONTENT_TYPE));
+        assertTrue(BinaryRecordCodec.isBinary("Application/X-Weather-Binary, application/json;q=0.5"));
+        assertFalse(BinaryRecordCodec.isBinary("application/json"));
+        assertFalse(BinaryRecordCodec.isBinary(null));
+    }
+}
@@ -0,0 +1,57 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Test class for CircuitBreaker.
+ */
+public class CircuitBreakerTest {
+
+    /**
+     * Tests that consecutive failures open the circuit and a success resets the count.
+     */
+    @Test
+    public void testOpensAfterConsecutiveFailures() {
+        AtomicLong now = new AtomicLong();
+        CircuitBreaker breaker = new CircuitBreaker(3, 1000, now::get);
+
+        breaker.recordFailure();
+        breaker.recordFailure();
+        breaker.recordSuccess();
+        breaker.recordFailure();
+        breaker.recordFailure();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+
+        breaker.recordFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+    }
+
+    /**
+     * Tests that only one trial request is let through once the open period has passed,
+     * and that its outcome closes or reopens the circuit.
+     */
+    @Test
+    public void testHalfOpenTrial() {
+        AtomicLong now = new AtomicLong();
+        CircuitBreaker breaker = new CircuitBreaker(1, 1000, now::get);
+        breaker.recordFailure();
+
+        now.addAndGet(999_000_000L);
+        assertFalse(breaker.allowRequest());
+        now.addAndGet(1_000_000L);
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.allowRequest(), "Only one trial request at a time");
+
+        breaker.recordFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+
+        now.addAndGet(1_000_000_000L);
+        assertTrue(breaker.allowRequest());
+        breaker.recordSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+    }
+}
@@ -0,0 +1,51 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Test class for ContentEncoding.
+ */
+public class ContentEncodingTest {
+
+    /**
+     * Tests Accept-Encoding negotiation with quality values and wildcards.
+     */
+    @Test
+    public void testNegotiate() {
+        assertNull(ContentEncoding.negotiate(null));
+        assertNull(ContentEncoding.negotiate("identity"));
+        assertNull(ContentEncoding.negotiate("br"));
+        assertEquals("gzip", ContentEncoding.negotiate("gzip, deflate"));
+        assertEquals("gzip", ContentEncoding.negotiate("deflate, gzip"));
+        assertEquals("deflate", ContentEncoding.negotiate("gzip;q=0.5, deflate"));
+        assertEquals("deflate", ContentEncoding.negotiate("br, deflate"));
+        assertEquals("gzip", ContentEncoding.negotiate("*"));
+        assertEquals("deflate", ContentEncoding.negotiate("*, gzip;q=0"));
+        assertNull(ContentEncoding.negotiate("gzip;q=0, deflate;q=0"));
+        assertNull(ContentEncoding.negotiate("*;q=0"));
+    }
+
+    /**
+     * Tests that both codings round-trip and that repetitive JSON shrinks substantially.
+     */
+    @Test
+    public void testRoundTrip() throws IOException {
+        StringBuilder json = new StringBuilder("{");
+        for (int i = 0; i < 200; i++) {
+            json.append("\"IDS").append(i).append("\":{\"id\":\"IDS").append(i)
+                .append("\",\"local_date_time_full\":\"20230715160000\",\"wind_spd_kmh\":").append(i % 30).append("},");
+        }
+        json.setCharAt(json.length() - 1, '}');
+        byte[] plain = json.toString().getBytes(StandardCharsets.UTF_8);
+
+        for (String coding : new String[] {ContentEncoding.GZIP, ContentEncoding.DEFLATE}) {
+            byte[] encoded = ContentEncoding.encode(plain, coding);
+            assertTrue(encoded.length * 5 < plain.length, coding + ": " + encoded.length + " of " + plain.length);
+            assertArrayEquals(plain, ContentEncoding.decode(encoded, coding));
+        }
+        assertSame(plain, ContentEncoding.decode(plain, null));
+        assertThrows(IOException.class, () -> ContentEncoding.decode(plain, "br"));
+        assertThrows(IOException.class, () -> ContentEncoding.decode(plain, ContentEncoding.GZIP));
+    }
+}
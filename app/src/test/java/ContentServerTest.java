@@ -7,13 +7,17 @@ import org.mockito.Mockito;
 import static org.mockito.Mockito.*;
 import org.json.JSONObject;
 import java.io.*;
+import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.time.Duration;
 
 /**
  * Test class for ContentServer functionality.
@@ -68,8 +72,10 @@ public class ContentServerTest {
         new File(invalidFilePath).delete();
         new File(testFilePath).delete();
 
-        // Clear server instances
+        // Clear server instances and fan-out settings
         ContentServer.clearServerInstances();
+        ContentServer.setWriteQuorum(0);
+        ContentServer.setServerDeadlineMillis(30000);
     }
 
     /**
@@ -273,4 +279,117 @@ public class ContentServerTest {
         Mockito.verify(server2, Mockito.times(1)).sendJsons(Mockito.<ArrayList<JSONObject>>any());
         Mockito.verify(server3, Mockito.times(1)).sendJsons(Mockito.<ArrayList<JSONObject>>any());
     }
+
+    /**
+     * Test that a write quorum returns once enough servers acknowledged, while a slow
+     * server is still being updated in the background.
+     */
+    @Test
+    public void testWriteQuorumReturnsBeforeStragglers() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ContentServer fast1 = Mockito.mock(ContentServer.class);
+        ContentServer fast2 = Mockito.mock(ContentServer.class);
+        ContentServer slow = Mockito.mock(ContentServer.class);
+        Mockito.doAnswer(invocation -> {
+            release.await();
+            return null;
+        }).when(slow).sendJsons(Mockito.<ArrayList<JSONObject>>any());
+        ContentServer.addServerInstance(fast1);
+        ContentServer.addServerInstance(slow);
+        ContentServer.addServerInstance(fast2);
+        ContentServer.setWriteQuorum(2);
+
+        List<JSONObject> testData = List.of(new JSONObject("{\"id\": \"IDS1\"}"));
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> ContentServer.sendDataToAllServers(testData));
+
+        Mockito.verify(slow, Mockito.timeout(5000)).sendJsons(Mockito.<ArrayList<JSONObject>>any());
+        release.countDown();
+        ContentServer.awaitPendingSends();
+    }
+
+    /**
+     * Test that the call fails as soon as the write quorum can no longer be reached.
+     */
+    @Test
+    public void testWriteQuorumUnreachable() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ContentServer failing1 = Mockito.mock(ContentServer.class);
+        ContentServer failing2 = Mockito.mock(ContentServer.class);
+        ContentServer slow = Mockito.mock(ContentServer.class);
+        Mockito.doThrow(new IOException("Simulated failure")).when(failing1).sendJsons(Mockito.<ArrayList<JSONObject>>any());
+        Mockito.doThrow(new IOException("Simulated failure")).when(failing2).sendJsons(Mockito.<ArrayList<JSONObject>>any());
+        Mockito.doAnswer(invocation -> {
+            release.await();
+            return null;
+        }).when(slow).sendJsons(Mockito.<ArrayList<JSONObject>>any());
+        ContentServer.addServerInstance(failing1);
+        ContentServer.addServerInstance(slow);
+        ContentServer.addServerInstance(failing2);
+        ContentServer.setWriteQuorum(2);
+
+        List<JSONObject> testData = List.of(new JSONObject("{\"id\": \"IDS1\"}"));
+        assertTimeoutPreemptively(Duration.ofSeconds(5),
+                () -> assertThrows(IOException.class, () -> ContentServer.sendDataToAllServers(testData)));
+        release.countDown();
+        ContentServer.awaitPendingSends();
+    }
+
+    /**
+     * Test that a server missing its deadline is cancelled and counted as failed.
+     */
+    @Test
+    public void testServerDeadline() throws Exception {
+        ContentServer fast = Mockito.mock(ContentServer.class);
+        ContentServer hung = Mockito.mock(ContentServer.class);
+        Mockito.doAnswer(invocation -> {
+            Thread.sleep(60000);
+            return null;
+        }).when(hung).sendJsons(Mockito.<ArrayList<JSONObject>>any());
+        ContentServer.addServerInstance(fast);
+        ContentServer.addServerInstance(hung);
+        ContentServer.setServerDeadlineMillis(200);
+
+        List<JSONObject> testData = List.of(new JSONObject("{\"id\": \"IDS1\"}"));
+        // Without a quorum every server is waited for, but only until its deadline
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> ContentServer.sendDataToAllServers(testData));
+
+        ContentServer.setWriteQuorum(2);
+        assertTimeoutPreemptively(Duration.ofSeconds(5),
+                () -> assertThrows(IOException.class, () -> ContentServer.sendDataToAllServers(testData)));
+    }
+
+    /**
+     * Test that a malformed heartbeat response to the trial request of a half-open
+     * circuit opens it again instead of leaving it half-open.
+     */
+    @Test
+    public void testMalformedHeartbeatResponseReopensCircuit() throws Exception {
+        RetryPolicy policy = new RetryPolicy(3, 500, 10000, 0.2, 10, 1, 50);
+        ContentServer.setRetryPolicy(policy);
+        try (ServerSocket listener = new ServerSocket(0)) {
+            Thread responder = new Thread(() -> {
+                try (Socket socket = listener.accept()) {
+                    InputStream input = new BufferedInputStream(socket.getInputStream());
+                    while (HttpMessage.read(input) != null) {
+                        socket.getOutputStream().write("HTTP/1.1 200 OK\r\nContent-Length: 8\r\n\r\nnot json"
+                                .getBytes(StandardCharsets.UTF_8));
+                    }
+                } catch (IOException e) {
+                    // Connection closed
+                }
+            });
+            responder.setDaemon(true);
+            responder.start();
+
+            ContentServer server = new ContentServer(testAddress, listener.getLocalPort(), testFilePath);
+            CircuitBreaker breaker = policy.breaker(testAddress, listener.getLocalPort());
+            breaker.recordFailure();
+            Thread.sleep(100);
+
+            assertThrows(IOException.class, () -> server.sendHeartbeat(List.of("IDS60901")));
+            assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        } finally {
+            ContentServer.setRetryPolicy(new RetryPolicy());
+        }
+    }
 }
@@ -0,0 +1,91 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class ExpiryWheelTest {
+    private ExpiryWheel wheel;
+
+    @AfterEach
+    public void tearDown() {
+        if (wheel != null) {
+            wheel.stop();
+        }
+    }
+
+    private static WeatherRecord record(String id, long receivedAt) {
+        return new WeatherRecord.Builder().field("id", id).receivedAt(receivedAt).build();
+    }
+
+    /**
+     * Test that a station is removed once its window has passed.
+     */
+    @Test
+    public void testExpiresStaleStation() throws InterruptedException {
+        StationStore stations = new StationStore();
+        List<String> expired = new CopyOnWriteArrayList<>();
+        wheel = new ExpiryWheel(stations, 200, 20, expired::add);
+
+        WeatherRecord record = record("IDS1", System.currentTimeMillis());
+        stations.put(record);
+        wheel.schedule(record);
+
+        Thread.sleep(100);
+        assertTrue(stations.contains("IDS1"));
+        Thread.sleep(400);
+        assertFalse(stations.contains("IDS1"));
+        assertEquals(List.of("IDS1"), expired);
+        assertEquals(1, wheel.getExpiredTotal());
+    }
+
+    /**
+     * Test that an update pushes the expiry back, and the stale entry is ignored.
+     */
+    @Test
+    public void testUpdateDefersExpiry() throws InterruptedException {
+        StationStore stations = new StationStore();
+        wheel = new ExpiryWheel(stations, 300, 20, id -> { });
+
+        WeatherRecord first = record("IDS1", System.currentTimeMillis());
+        stations.put(first);
+        wheel.schedule(first);
+
+        Thread.sleep(200);
+        WeatherRecord second = record("IDS1", System.currentTimeMillis());
+        stations.put(second);
+        wheel.schedule(second);
+
+        // The first entry is due now, but the station holds a newer record
+        Thread.sleep(200);
+        assertSame(second, stations.get("IDS1"));
+
+        Thread.sleep(400);
+        assertFalse(stations.contains("IDS1"));
+        assertEquals(1, wheel.getExpiredTotal());
+    }
+
+    /**
+     * Test that windows longer than one revolution of the wheel still expire on time.
+     */
+    @Test
+    public void testWindowLongerThanWheel() throws InterruptedException {
+        StationStore stations = new StationStore();
+        wheel = new ExpiryWheel(stations, 150, 10, id -> { });
+
+        // Received in the past, so the deadline is well before the first tick
+        WeatherRecord old = record("IDS1", System.currentTimeMillis() - 1000);
+        WeatherRecord fresh = record("IDS2", System.currentTimeMillis() + 200);
+        stations.put(old);
+        stations.put(fresh);
+        wheel.schedule(old);
+        wheel.schedule(fresh);
+
+        Thread.sleep(100);
+        assertFalse(stations.contains("IDS1"));
+        assertTrue(stations.contains("IDS2"));
+        Thread.sleep(450);
+        assertFalse(stations.contains("IDS2"));
+    }
+}
@@ -0,0 +1,70 @@
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test class for FeedReader.
+ */
+public class FeedReaderTest {
+    @TempDir
+    Path dir;
+
+    /**
+     * Tests the feed format: quotes, trailing commas, braces, blank lines and CRLF line breaks.
+     */
+    @Test
+    public void testParsesRecords() throws IOException {
+        Path feed = dir.resolve("feed.txt");
+        Files.write(feed, ("{\r\n  \"id\": \"IDS1\",\r\n  \"name\": \"Adelaide: West\",\r\n\r\n  \"air_temp\": 13.3\r\n},\n"
+                + "{\nid:IDS2\nnot a pair\nstate : SA\n}").getBytes(StandardCharsets.UTF_8));
+        List<JSONObject> records = new ArrayList<>();
+
+        assertEquals(2, new FeedReader().read(feed, records::add));
+
+        assertEquals(2, records.size());
+        assertEquals("IDS1", records.get(0).getString("id"));
+        assertEquals("Adelaide: West", records.get(0).getString("name"));
+        assertEquals("13.3", records.get(0).getString("air_temp"));
+        assertEquals("IDS2", records.get(1).getString("id"));
+        assertEquals("SA", records.get(1).getString("state"));
+        assertEquals(2, records.get(1).length());
+    }
+
+    /**
+     * Tests that lines split across mapped windows are read whole, with any window size.
+     */
+    @Test
+    public void testLinesAcrossWindows() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            text.append("id: IDS").append(i).append("\nname: Station ").append(i).append('\n');
+        }
+        Path feed = dir.resolve("feed.txt");
+        Files.write(feed, text.toString().getBytes(StandardCharsets.UTF_8));
+
+        for (long window : new long[] {20, 37, 64, 4096}) {
+            List<JSONObject> records = new ArrayList<>();
+            assertEquals(200, new FeedReader(window).read(feed, records::add));
+            assertEquals("IDS199", records.get(199).getString("id"));
+            assertEquals("Station 57", records.get(57).getString("name"));
+        }
+    }
+
+    /**
+     * Tests that a line longer than the window is reported instead of being split.
+     */
+    @Test
+    public void testLineLongerThanWindow() throws IOException {
+        Path feed = dir.resolve("feed.txt");
+        Files.write(feed, "id: IDS1\nname: a very long station name\nstate: SA\n".getBytes(StandardCharsets.UTF_8));
+
+        assertThrows(IOException.class, () -> new FeedReader(16).read(feed, record -> { }));
+    }
+}
@@ -0,0 +1,97 @@
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test class for FeedWatcher.
+ */
+public class FeedWatcherTest {
+    @TempDir
+    Path dir;
+
+    /**
+     * Writes a feed file with one record per station.
+     * @param feed The file.
+     * @param temps The air temperature of stations IDS0, IDS1, ...
+     */
+    private static void writeFeed(Path feed, int... temps) throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < temps.length; i++) {
+            text.append("id: IDS").append(i).append("\nair_temp: ").append(temps[i]).append('\n');
+        }
+        Files.write(feed, text.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Tests that only new and changed stations are sent, and that removed ones are forgotten.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSyncSendsOnlyChanges() throws IOException {
+        Path feed = dir.resolve("feed.txt");
+        ContentServer server = Mockito.mock(ContentServer.class);
+        FeedWatcher watcher = new FeedWatcher(server, feed, 1000);
+
+        writeFeed(feed, 10, 11, 12);
+        assertEquals(3, watcher.sync());
+        assertEquals(0, watcher.sync());
+
+        writeFeed(feed, 10, 21);
+        assertEquals(1, watcher.sync());
+        assertEquals(2, watcher.getTrackedCount());
+
+        ArgumentCaptor<ArrayList<JSONObject>> sent = ArgumentCaptor.forClass(ArrayList.class);
+        Mockito.verify(server, Mockito.times(2)).sendJsons(sent.capture());
+        assertEquals("IDS1", sent.getAllValues().get(1).get(0).getString("id"));
+        assertEquals("21", sent.getAllValues().get(1).get(0).getString("air_temp"));
+    }
+
+    /**
+     * Tests that a failed send is not recorded, so the stations are sent again.
+     */
+    @Test
+    public void testFailedSyncIsRetried() throws IOException {
+        Path feed = dir.resolve("feed.txt");
+        ContentServer server = Mockito.mock(ContentServer.class);
+        Mockito.doThrow(new IOException("Simulated failure")).doNothing().when(server).sendJsons(Mockito.any());
+        FeedWatcher watcher = new FeedWatcher(server, feed, 1000);
+
+        writeFeed(feed, 10, 11);
+        assertThrows(IOException.class, watcher::sync);
+        assertEquals(2, watcher.sync());
+    }
+
+    /**
+     * Tests that heartbeats cover every sent station and stations the server lost are sent in full.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testHeartbeatResendsMissing() throws IOException {
+        Path feed = dir.resolve("feed.txt");
+        ContentServer server = Mockito.mock(ContentServer.class);
+        Mockito.when(server.sendHeartbeat(Mockito.any())).thenReturn(List.of("IDS1"));
+        FeedWatcher watcher = new FeedWatcher(server, feed, 1000);
+
+        assertEquals(0, watcher.heartbeat());
+        writeFeed(feed, 10, 11, 12);
+        watcher.sync();
+        assertEquals(1, watcher.heartbeat());
+
+        ArgumentCaptor<List<String>> ids = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(server).sendHeartbeat(ids.capture());
+        assertEquals(3, ids.getValue().size());
+        ArgumentCaptor<ArrayList<JSONObject>> sent = ArgumentCaptor.forClass(ArrayList.class);
+        Mockito.verify(server, Mockito.times(2)).sendJsons(sent.capture());
+        assertEquals(1, sent.getValue().size());
+        assertEquals("IDS1", sent.getValue().get(0).getString("id"));
+    }
+}
@@ -4,6 +4,12 @@ import static org.junit.jupiter.api.Assertions.*;
 import org.mockito.Mockito;
 import static org.mockito.Mockito.*;
 import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Test class for GETClient functionality.
@@ -95,4 +101,139 @@ public class GETClientTest {
         assertFalse(capturedOutput.contains("station2"));
         assertFalse(capturedOutput.contains("value2"));
     }
+
+    /**
+     * Tests that server errors are retried, that other errors are not, and that the
+     * circuit breaker stops requests to a failing server.
+     */
+    @Test
+    public void testRetriesServerErrorsAndOpensCircuit() throws Exception {
+        GETClient.setRetryPolicy(new RetryPolicy(3, 0, 0, 0.2, 10, 4, 60000));
+        AtomicInteger requests = new AtomicInteger();
+        String[] statuses = {"503 Service Unavailable", "200 OK", "400 Bad Request",
+                "500 Internal Server Error", "500 Internal Server Error", "500 Internal Server Error", "500 Internal Server Error"};
+        try (ServerSocket listener = new ServerSocket(0)) {
+            Thread server = new Thread(() -> {
+                for (String status : statuses) {
+                    try (Socket socket = listener.accept()) {
+                        BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                        String line;
+                        while ((line = reader.readLine()) != null && !line.isEmpty()) {
+                            // Skip the request head
+                        }
+                        requests.incrementAndGet();
+                        String body = "{\"IDS1\":{\"id\":\"IDS1\"}}";
+                        socket.getOutputStream().write(("HTTP/1.1 " + status + "\r\nContent-Length: " + body.length()
+                                + "\r\nLamport-Clock: 1\r\n\r\n" + body).getBytes(StandardCharsets.UTF_8));
+                    } catch (IOException e) {
+                        return;
+                    }
+                }
+            });
+            server.start();
+            GETClient client = new GETClient();
+            String request = GETClient.buildRequest("NULL", 0);
+            int port = listener.getLocalPort();
+
+            assertTrue(client.request("localhost", port, request).has("IDS1"));
+            assertEquals(2, requests.get());
+            assertNull(client.request("localhost", port, request));
+            assertEquals(3, requests.get(), "A client error is not retried");
+            assertNull(client.request("localhost", port, request));
+            assertEquals(7, requests.get());
+            assertNull(client.request("localhost", port, request));
+            assertEquals(7, requests.get(), "The circuit is open");
+            server.join(5000);
+        } finally {
+            GETClient.setRetryPolicy(new RetryPolicy());
+        }
+    }
+
+    /**
+     * Tests that cached responses are served locally while fresh and revalidated with
+     * If-None-Match once stale, downloading them again only when they changed.
+     */
+    @Test
+    public void testResponseCache() throws Exception {
+        GETResponseCache cache = new GETResponseCache(16, 60000);
+        GETClient.setResponseCache(cache);
+        AtomicInteger requests = new AtomicInteger();
+        AtomicInteger version = new AtomicInteger(1);
+        try (ServerSocket listener = new ServerSocket(0)) {
+            Thread server = new Thread(() -> {
+                while (!listener.isClosed()) {
+                    try (Socket socket = listener.accept()) {
+                        HttpMessage request = HttpMessage.read(new BufferedInputStream(socket.getInputStream()));
+                        requests.incrementAndGet();
+                        String etag = "\"" + version.get() + "\"";
+                        String response;
+                        if (etag.equals(request.getHeader("If-None-Match"))) {
+                            response = "HTTP/1.1 304 Not Modified\r\nETag: " + etag + "\r\nLamport-Clock: 5\r\nConnection: close\r\n\r\n";
+                        } else {
+                            String body = "{\"IDS1\":{\"id\":\"IDS1\",\"v\":" + version.get() + "}}";
+                            response = "HTTP/1.1 200 OK\r\nETag: " + etag + "\r\nLamport-Clock: 5\r\nConnection: close\r\nContent-Length: "
+                                    + body.length() + "\r\n\r\n" + body;
+                        }
+                        socket.getOutputStream().write(response.getBytes(StandardCharsets.UTF_8));
+                    } catch (IOException e) {
+                        return;
+                    }
+                }
+            });
+            server.start();
+            GETClient client = new GETClient();
+            int port = listener.getLocalPort();
+
+            JSONObject first = client.request("localhost", port, GETClient.buildRequest("NULL", 0));
+            assertEquals(1, first.getJSONObject("IDS1").getInt("v"));
+            assertSame(first, client.request("localhost", port, GETClient.buildRequest("NULL", 1)));
+            assertEquals(1, requests.get(), "A fresh response is served locally");
+
+            // Once stale, an unchanged response is revalidated without being downloaded again
+            GETClient.setResponseCache(cache = new GETResponseCache(16, 0));
+            client.request("localhost", port, GETClient.buildRequest("NULL", 0));
+            assertSame(cache.lookup(GETResponseCache.key("localhost", port, GETClient.buildRequest("NULL", 0))).getData(),
+                    client.request("localhost", port, GETClient.buildRequest("NULL", 0)));
+            assertEquals(1, cache.getRevalidations());
+
+            version.set(2);
+            assertEquals(2, client.request("localhost", port, GETClient.buildRequest("NULL", 0)).getJSONObject("IDS1").getInt("v"));
+            assertEquals(4, requests.get());
+        } finally {
+            GETClient.setResponseCache(null);
+        }
+    }
+
+    /**
+     * Tests that an exact station ID is answered by the server's filter alone, and that
+     * a partial ID falls back to fetching every station so it still matches by substring.
+     */
+    @Test
+    public void testRetrieveFallsBackForPartialId() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        try (ServerSocket listener = new ServerSocket(0)) {
+            Thread server = new Thread(() -> {
+                while (!listener.isClosed()) {
+                    try (Socket socket = listener.accept()) {
+                        HttpMessage request = HttpMessage.read(new BufferedInputStream(socket.getInputStream()));
+                        requests.incrementAndGet();
+                        String target = request.getTarget();
+                        String body = target.endsWith("?id=IDS60901") || !target.contains("?")
+                                ? "{\"IDS60901\":{\"id\":\"IDS60901\"}}" : "{}";
+                        socket.getOutputStream().write(("HTTP/1.1 200 OK\r\nLamport-Clock: 1\r\nConnection: close\r\nContent-Length: "
+                                + body.length() + "\r\n\r\n" + body).getBytes(StandardCharsets.UTF_8));
+                    } catch (IOException e) {
+                        return;
+                    }
+                }
+            });
+            server.start();
+            List<InetSocketAddress> replicas = List.of(InetSocketAddress.createUnresolved("localhost", listener.getLocalPort()));
+
+            assertTrue(GETClient.retrieve(replicas, "IDS60901").has("IDS60901"));
+            assertEquals(1, requests.get());
+            assertTrue(GETClient.retrieve(replicas, "60901").has("IDS60901"));
+            assertEquals(3, requests.get());
+        }
+    }
 }
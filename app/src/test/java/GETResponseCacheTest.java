@@ -0,0 +1,73 @@
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Test class for GETResponseCache.
+ */
+public class GETResponseCacheTest {
+
+    /**
+     * Tests that the key covers the server and request line but not the headers.
+     */
+    @Test
+    public void testKey() {
+        String first = GETResponseCache.key("localhost", 4567, "GET /weather.json?id=IDS1 HTTP/1.1\r\nLamport-Clock: 1\r\n\r\n");
+        assertEquals(first, GETResponseCache.key("localhost", 4567, "GET /weather.json?id=IDS1 HTTP/1.1\r\nLamport-Clock: 9\r\n\r\n"));
+        assertNotEquals(first, GETResponseCache.key("localhost", 4568, "GET /weather.json?id=IDS1 HTTP/1.1\r\n\r\n"));
+        assertNotEquals(first, GETResponseCache.key("localhost", 4567, "GET /weather.json HTTP/1.1\r\n\r\n"));
+    }
+
+    /**
+     * Tests that entries are fresh for the time-to-live and again after a revalidation.
+     */
+    @Test
+    public void testTimeToLive() {
+        AtomicLong now = new AtomicLong(1000);
+        GETResponseCache cache = new GETResponseCache(10, 100, now::get);
+        assertNull(cache.lookup("a"));
+        cache.put("a", new JSONObject().put("id", "a"), "\"1\"", 5);
+
+        GETResponseCache.Entry entry = cache.lookup("a");
+        assertTrue(cache.isFresh(entry));
+        now.addAndGet(100);
+        assertFalse(cache.isFresh(cache.lookup("a")));
+
+        cache.revalidated(entry, 8);
+        assertTrue(cache.isFresh(cache.lookup("a")));
+        assertEquals(8, entry.getLamport());
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getRevalidations());
+    }
+
+    /**
+     * Tests that a response from an earlier Lamport time does not replace a newer entry.
+     */
+    @Test
+    public void testOlderResponseDoesNotReplaceNewer() {
+        GETResponseCache cache = new GETResponseCache(10, 1000);
+        cache.put("a", new JSONObject().put("v", 2), "\"2\"", 20);
+        GETResponseCache.Entry kept = cache.put("a", new JSONObject().put("v", 1), "\"1\"", 10);
+        assertEquals(2, kept.getData().getInt("v"));
+        assertEquals(3, cache.put("a", new JSONObject().put("v", 3), "\"3\"", 30).getData().getInt("v"));
+    }
+
+    /**
+     * Tests that the least recently used entry is evicted beyond the maximum size.
+     */
+    @Test
+    public void testLruEviction() {
+        GETResponseCache cache = new GETResponseCache(2, 1000);
+        cache.put("a", new JSONObject(), null, 1);
+        cache.put("b", new JSONObject(), null, 1);
+        cache.lookup("a");
+        cache.put("c", new JSONObject(), null, 1);
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.lookup("a"));
+        assertNull(cache.lookup("b"));
+        assertNotNull(cache.lookup("c"));
+    }
+}
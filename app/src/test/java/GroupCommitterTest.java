@@ -0,0 +1,122 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test class for GroupCommitter batching.
+ */
+public class GroupCommitterTest {
+
+    /**
+     * Tests that requests queued while a group is being written share the next commit.
+     */
+    @Test
+    public void testConcurrentRequestsShareOneCommit() throws Exception {
+        AtomicInteger commits = new AtomicInteger();
+        AtomicInteger committedIds = new AtomicInteger();
+        CountDownLatch firstCommitStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirstCommit = new CountDownLatch(1);
+        GroupCommitter committer = new GroupCommitter("test-commit", (Set<String> ids) -> {
+            if (commits.incrementAndGet() == 1) {
+                firstCommitStarted.countDown();
+                try {
+                    releaseFirstCommit.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            committedIds.addAndGet(ids.size());
+        }, 100, 0);
+
+        try {
+            CompletableFuture<Void> first = committer.submit("first");
+            firstCommitStarted.await();
+            CompletableFuture<?>[] waiting = new CompletableFuture<?>[20];
+            for (int i = 0; i < waiting.length; i++) {
+                waiting[i] = committer.submit("station" + (i % 10));
+            }
+            releaseFirstCommit.countDown();
+            first.get();
+            CompletableFuture.allOf(waiting).get();
+
+            assertEquals(2, commits.get(), "Requests queued behind the first group should be committed together");
+            assertEquals(11, committedIds.get(), "Duplicate ids within a group are written once");
+        } finally {
+            committer.close();
+        }
+    }
+
+    /**
+     * Tests that a failed commit is reported to every waiting request.
+     */
+    @Test
+    public void testFailurePropagates() {
+        GroupCommitter committer = new GroupCommitter("test-commit", ids -> {
+            throw new IOException("disk full");
+        }, 10, 0);
+        try {
+            IOException e = assertThrows(IOException.class, () -> committer.commit("a"));
+            assertEquals("disk full", e.getMessage());
+        } finally {
+            committer.close();
+        }
+    }
+
+    /**
+     * Tests that the linger time lets a group fill before it is committed.
+     */
+    @Test
+    public void testLingerFillsBatch() throws Exception {
+        AtomicInteger commits = new AtomicInteger();
+        GroupCommitter committer = new GroupCommitter("test-commit", ids -> commits.incrementAndGet(), 3, 2000);
+        try {
+            CompletableFuture<Void> a = committer.submit("a");
+            CompletableFuture<Void> b = committer.submit("b");
+            CompletableFuture<Void> c = committer.submit("c");
+            CompletableFuture.allOf(a, b, c).get();
+            assertEquals(1, commits.get());
+        } finally {
+            committer.close();
+        }
+    }
+
+    /**
+     * Tests that every request submitted while the committer is closing is either
+     * committed or failed, never left pending.
+     */
+    @Test
+    public void testSubmitRacingClose() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            GroupCommitter committer = new GroupCommitter("test-commit", ids -> { }, 10, 0);
+            List<CompletableFuture<Void>> submitted = new ArrayList<>();
+            Thread submitter = new Thread(() -> {
+                for (int i = 0; i < 2000; i++) {
+                    CompletableFuture<Void> done = committer.submit("s" + i);
+                    synchronized (submitted) {
+                        submitted.add(done);
+                    }
+                }
+            });
+            submitter.start();
+            committer.close();
+            submitter.join();
+            synchronized (submitted) {
+                for (CompletableFuture<Void> done : submitted) {
+                    try {
+                        done.get(5, TimeUnit.SECONDS);
+                    } catch (ExecutionException e) {
+                        assertTrue(e.getCause() instanceof IOException);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Test class for HttpMessage parsing and framing.
+ */
+public class HttpMessageTest {
+
+    /**
+     * Tests reading consecutive messages from one stream using Content-Length framing.
+     */
+    @Test
+    public void testReadPipelinedMessages() throws IOException {
+        String raw = "PUT /weather.json HTTP/1.1\r\nContent-Length: 12\r\nLamport-Clock: 3\r\n\r\n{\"id\":\"a\",\n}"
+                + "GET /weather.json HTTP/1.1\r\nConnection: close\r\n\r\n";
+        InputStream input = new BufferedInputStream(new ByteArrayInputStream(raw.getBytes(StandardCharsets.UTF_8)));
+
+        HttpMessage put = HttpMessage.read(input);
+        assertEquals("PUT", put.getMethod());
+        assertEquals("3", put.getHeader("lamport-clock"));
+        assertEquals("{\"id\":\"a\",\n}", put.getBodyAsString());
+        assertTrue(put.isKeepAlive());
+
+        HttpMessage get = HttpMessage.read(input);
+        assertEquals("GET", get.getMethod());
+        assertEquals("/weather.json", get.getTarget());
+        assertFalse(get.isKeepAlive());
+
+        assertNull(HttpMessage.read(input));
+    }
+
+    /**
+     * Tests that frameLength waits for the whole body before reporting a complete message.
+     */
+    @Test
+    public void testFrameLength() throws IOException {
+        byte[] raw = "PUT / HTTP/1.1\r\nContent-Length: 4\r\n\r\nabcdGET".getBytes(StandardCharsets.US_ASCII);
+        int headLength = raw.length - 7;
+
+        assertEquals(-1, HttpMessage.frameLength(raw, 0, headLength + 3));
+        assertEquals(headLength + 4, HttpMessage.frameLength(raw, 0, raw.length));
+        assertEquals("abcd", HttpMessage.parse(raw, 0, headLength + 4).getBodyAsString());
+    }
+
+    /**
+     * Tests that an invalid Content-Length is rejected.
+     */
+    @Test
+    public void testInvalidContentLength() {
+        byte[] raw = "PUT / HTTP/1.1\r\nContent-Length: x\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+        assertThrows(IOException.class, () -> HttpMessage.read(new ByteArrayInputStream(raw)));
+    }
+
+    /**
+     * Tests that a request declaring a body over MAX_BODY_SIZE is rejected from its head,
+     * while a response of the same size is not.
+     */
+    @Test
+    public void testBodyTooLarge() throws IOException {
+        byte[] raw = "PUT / HTTP/1.1\r\nContent-Length: 2147483647\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+        assertThrows(PayloadTooLargeException.class, () -> HttpMessage.read(new ByteArrayInputStream(raw)));
+        assertThrows(PayloadTooLargeException.class, () -> HttpMessage.frameLength(raw, 0, raw.length));
+
+        int length = HttpMessage.MAX_BODY_SIZE + 1;
+        byte[] response = ("HTTP/1.1 200 OK\r\nContent-Length: " + length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+        assertEquals(response.length + length, HttpMessage.frameLength(response, 0, response.length + length));
+    }
+
+    /**
+     * Tests that HTTP/1.0 connections close unless keep-alive is requested.
+     */
+    @Test
+    public void testHttp10KeepAlive() throws IOException {
+        byte[] plain = "GET / HTTP/1.0\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+        byte[] keepAlive = "GET / HTTP/1.0\r\nConnection: keep-alive\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+        assertFalse(HttpMessage.read(new ByteArrayInputStream(plain)).isKeepAlive());
+        assertTrue(HttpMessage.read(new ByteArrayInputStream(keepAlive)).isKeepAlive());
+    }
+
+    /**
+     * Tests that the query string is split into decoded, repeatable parameters.
+     */
+    @Test
+    public void testQueryParameters() throws IOException {
+        byte[] raw = "GET /weather.json?id=IDS1&id=ID%20S2&state=SA&flag HTTP/1.1\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+        HttpMessage request = HttpMessage.read(new ByteArrayInputStream(raw));
+        assertEquals("/weather.json", request.getPath());
+        Map<String, List<String>> parameters = request.getQueryParameters();
+        assertEquals(List.of("IDS1", "ID S2"), parameters.get("id"));
+        assertEquals(List.of("SA"), parameters.get("state"));
+        assertEquals(List.of(""), parameters.get("flag"));
+    }
+
+    /**
+     * Tests that a pooled body is framed by its length and its buffer is reused after release.
+     */
+    @Test
+    public void testPooledBody() throws IOException {
+        BufferPool pool = new BufferPool();
+        String raw = "PUT /weather.json HTTP/1.1\r\nContent-Length: 8\r\n\r\n{\"id\":1}";
+        byte[] bytes = raw.getBytes(StandardCharsets.UTF_8);
+
+        HttpMessage first = HttpMessage.read(new ByteArrayInputStream(bytes), pool);
+        assertEquals(8, first.getBodyLength());
+        assertEquals(1024, first.getBodyBuffer().length);
+        assertEquals("{\"id\":1}", first.getBodyAsString());
+        assertArrayEquals("{\"id\":1}".getBytes(StandardCharsets.UTF_8), first.getBody());
+        byte[] buffer = first.getBodyBuffer();
+        first.release();
+        first.release();
+        assertEquals(1, pool.getIdleCount(8));
+
+        HttpMessage second = HttpMessage.parse(bytes, 0, bytes.length, pool);
+        assertSame(buffer, second.getBodyBuffer());
+        assertEquals("{\"id\":1}", second.getBodyAsString());
+        assertEquals(0, pool.getIdleCount(8));
+    }
+}
@@ -0,0 +1,119 @@
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Test class for JsonRecordParser.
+ */
+public class JsonRecordParserTest {
+
+    /**
+     * Parses a JSON text into a record.
+     * @param text The JSON text.
+     * @return The record.
+     */
+    private static WeatherRecord parse(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        WeatherRecord.Builder builder = new WeatherRecord.Builder();
+        JsonRecordParser.parse(bytes, 0, bytes.length, builder);
+        return builder.build();
+    }
+
+    /**
+     * Tests that the parsed record is the same as one built from a JSONObject, whatever
+     * the formatting of the body.
+     */
+    @Test
+    public void testMatchesJsonObject() {
+        String text = "{\n  \"id\" : \"IDS60901\",\r\n\t\"name\": \"Adelaide (West Terrace /  ngayirdapira)\",\n"
+                + "  \"lat\": -34.9, \"lon\": 138.6, \"air_temp\": 13.3, \"apparent_t\": 9.5,\n"
+                + "  \"rel_hum\": 60, \"press\": 1023.90, \"dewpt\": \"5.7\", \"wind_dir\": \"S\",\n"
+                + "  \"gust\": 12.50, \"big\": 123456789012345678901, \"flag\": true, \"none\": null,\n"
+                + "  \"tags\": [\"a\", {\"b\": \"]\"}], \"nested\": {\"x\": [1, 2]}, \"cloud\": 3\n}\n";
+        WeatherRecord expected = WeatherRecord.fromJson(new JSONObject(text), 0);
+
+        WeatherRecord parsed = parse(text);
+
+        StringBuilder expectedJson = new StringBuilder();
+        expected.writeJson(expectedJson);
+        StringBuilder parsedJson = new StringBuilder();
+        parsed.writeJson(parsedJson);
+        assertTrue(new JSONObject(expectedJson.toString()).similar(new JSONObject(parsedJson.toString())), parsedJson.toString());
+        assertEquals(13.3, parsed.getAirTemp());
+    }
+
+    /**
+     * Tests escapes in keys and values, including a surrogate pair and multi-byte UTF-8.
+     */
+    @Test
+    public void testEscapes() {
+        WeatherRecord record = parse("{\"i\\u0064\":\"A\\\"B\\\\C\\/\\n\\ud83c\\udf27\",\"name\":\"M\u00e9l\"}");
+
+        assertEquals("A\"B\\C/\n\ud83c\udf27", record.getId());
+        assertEquals("M\u00e9l", record.toJson().getString("name"));
+    }
+
+    /**
+     * Tests the number of fields reported and that numbers take the fast and slow paths correctly.
+     */
+    @Test
+    public void testNumbers() {
+        byte[] bytes = "{\"id\":\"a\",\"lat\":-0.05,\"lon\":1e2,\"air_temp\":0.1000000000000000000001,\"press\":9007199254740993.5}"
+                .getBytes(StandardCharsets.UTF_8);
+        WeatherRecord.Builder builder = new WeatherRecord.Builder();
+
+        assertEquals(5, JsonRecordParser.parse(bytes, 0, bytes.length, builder));
+        JSONObject json = builder.build().toJson();
+        assertEquals(-0.05, json.getDouble("lat"));
+        assertEquals(100, json.getDouble("lon"));
+        assertEquals(0.1, json.getDouble("air_temp"));
+        assertEquals(9007199254740993.5, json.getDouble("press"));
+    }
+
+    /**
+     * Tests that only a region of a larger buffer is read.
+     */
+    @Test
+    public void testRegionOfBuffer() {
+        byte[] bytes = "xx{\"id\":\"a\"}yy".getBytes(StandardCharsets.UTF_8);
+        WeatherRecord.Builder builder = new WeatherRecord.Builder();
+
+        assertEquals(1, JsonRecordParser.parse(bytes, 2, bytes.length - 4, builder));
+        assertEquals("a", builder.getId());
+    }
+
+    /**
+     * Tests that malformed input is rejected.
+     */
+    @Test
+    public void testRejectsMalformedInput() {
+        String[] invalid = {
+            "", "[]", "{", "{\"id\":\"a\"", "{\"id\":\"a\",}", "{\"id\" \"a\"}", "{id:\"a\"}",
+            "{\"id\":\"a\"}{}", "{\"id\":\"a\nb\"}", "{\"id\":\"\\x\"}", "{\"lat\":01}", "{\"lat\":1.}",
+            "{\"lat\":-}", "{\"flag\":tru}", "{\"id\":\"a\",\"id\":\"b\"}", "{\"x\":1,\"x\":2}", "{\"x\":[1,}"
+        };
+        for (String text : invalid) {
+            assertThrows(JSONException.class, () -> parse(text), text);
+        }
+    }
+
+    /**
+     * Tests parsing an array of records, with a null for each element that is not an object.
+     */
+    @Test
+    public void testParseArray() {
+        byte[] bytes = " [ {\"id\":\"a\",\"lat\":1}, [1], {\"id\":\"b\",\"lat\":2} ] ".getBytes(StandardCharsets.UTF_8);
+
+        List<WeatherRecord.Builder> records = JsonRecordParser.parseArray(bytes, 0, bytes.length);
+
+        assertEquals(3, records.size());
+        assertEquals("a", records.get(0).getId());
+        assertNull(records.get(1));
+        assertEquals("b", records.get(2).getId());
+        assertTrue(JsonRecordParser.parseArray("[]".getBytes(StandardCharsets.UTF_8), 0, 2).isEmpty());
+        assertThrows(JSONException.class, () -> JsonRecordParser.parseArray("[{}".getBytes(StandardCharsets.UTF_8), 0, 3));
+    }
+}
@@ -0,0 +1,142 @@
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for LamportClock and EventLog.
+ */
+public class LamportClockTest {
+    @TempDir
+    Path directory;
+
+    /**
+     * Tests that tick and update return the new value and follow the Lamport rules.
+     */
+    @Test
+    public void testTickAndUpdate() {
+        LamportClock clock = new LamportClock();
+        assertEquals(1, clock.tick());
+        assertEquals(11, clock.update(10));
+        assertEquals(12, clock.update(3));
+        assertEquals(12, clock.getValue());
+    }
+
+    /**
+     * Tests that the clock saturates instead of wrapping around to negative values.
+     */
+    @Test
+    public void testUpdateSaturates() {
+        LamportClock clock = new LamportClock();
+        assertEquals(Long.MAX_VALUE, clock.update(Long.MAX_VALUE));
+        assertEquals(Long.MAX_VALUE, clock.tick());
+    }
+
+    /**
+     * Tests that concurrent ticks are never lost.
+     */
+    @Test
+    public void testConcurrentTicks() throws InterruptedException {
+        LamportClock clock = new LamportClock();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread(() -> {
+                for (int j = 0; j < 10000; j++) {
+                    clock.tick();
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(80000, clock.getValue());
+    }
+
+    /**
+     * Tests that queued events are written to the log file in order.
+     */
+    @Test
+    public void testEventLogWritesEvents() throws Exception {
+        Path file = directory.resolve("events.log");
+        EventLog log = EventLog.forFile(file);
+        assertSame(log, EventLog.forFile(file));
+        for (int i = 1; i <= 1000; i++) {
+            assertTrue(log.append("event", i));
+        }
+        assertTrue(log.flush(5000));
+
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertEquals(1000, lines.size());
+        assertTrue(lines.get(0).endsWith(" event 1"));
+        assertTrue(lines.get(999).endsWith(" event 1000"));
+        assertEquals(0, log.getDropped());
+    }
+
+    /**
+     * Tests that logs share one writer thread, and that closing a log writes what is
+     * queued, drops later events and lets the file be opened again.
+     */
+    @Test
+    public void testEventLogClose() throws Exception {
+        Path file = directory.resolve("closed.log");
+        EventLog log = EventLog.forFile(file);
+        List<EventLog> others = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            others.add(EventLog.forFile(directory.resolve("other" + i + ".log")));
+            others.get(i).append("event", i);
+        }
+        long writers = Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().startsWith("event-log")).count();
+        assertEquals(1, writers);
+        for (EventLog other : others) {
+            other.close();
+        }
+
+        assertTrue(log.append("before", 1));
+        log.close();
+        assertFalse(log.append("after", 2));
+        assertEquals(1, Files.readAllLines(file, StandardCharsets.UTF_8).size());
+
+        EventLog reopened = EventLog.forFile(file);
+        assertNotSame(log, reopened);
+        assertTrue(reopened.append("again", 3));
+        reopened.close();
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(1).endsWith(" again 3"));
+    }
+
+    /**
+     * Tests that a shared log stays open until every user has closed it, and that
+     * events beyond the ring size are dropped rather than queued.
+     */
+    @Test
+    public void testEventLogSharedCloseAndCapacity() throws Exception {
+        Path file = directory.resolve("shared.log");
+        EventLog log = EventLog.forFile(file, 3);
+        assertSame(log, EventLog.forFile(file));
+        log.close();
+        assertTrue(log.append("still open", 1));
+        assertTrue(log.flush(5000));
+
+        int rejected = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (!log.append("burst", i)) {
+                rejected++;
+            }
+        }
+        assertTrue(rejected > 0);
+        assertEquals(rejected, log.getDropped());
+        log.close();
+        assertFalse(log.append("closed", 2));
+        EventLog reopened = EventLog.forFile(file);
+        assertNotSame(log, reopened);
+        reopened.close();
+    }
+}
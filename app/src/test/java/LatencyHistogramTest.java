@@ -0,0 +1,62 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for LatencyHistogram.
+ */
+public class LatencyHistogramTest {
+
+    /**
+     * Tests that percentiles are accurate to within the bucket resolution.
+     */
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long v = 1; v <= 100000; v++) {
+            histogram.record(v * 1000);
+        }
+        assertEquals(100000, histogram.getCount());
+        assertEquals(100000000L, histogram.getMax());
+        assertWithinOnePercent(50000000L, histogram.getValueAtPercentile(50));
+        assertWithinOnePercent(99000000L, histogram.getValueAtPercentile(99));
+        assertWithinOnePercent(99900000L, histogram.getValueAtPercentile(99.9));
+        assertEquals(100000000L, histogram.getValueAtPercentile(100));
+    }
+
+    /**
+     * Tests small values, which are recorded exactly, and negative values, which count as 0.
+     */
+    @Test
+    public void testSmallAndNegativeValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        histogram.record(-5);
+        histogram.record(3);
+        histogram.record(3);
+        histogram.record(127);
+        assertEquals(3, histogram.getValueAtPercentile(50));
+        assertEquals(127, histogram.getValueAtPercentile(100));
+        assertEquals(1, histogram.getCountAtOrBelow(0));
+        assertEquals(3, histogram.getCountAtOrBelow(100));
+        assertEquals(133, histogram.getSum());
+    }
+
+    /**
+     * Tests that adding histograms combines their counts and maxima.
+     */
+    @Test
+    public void testAdd() {
+        LatencyHistogram a = new LatencyHistogram();
+        LatencyHistogram b = new LatencyHistogram();
+        a.record(10);
+        b.record(Long.MAX_VALUE);
+        a.add(b);
+        assertEquals(2, a.getCount());
+        assertEquals(Long.MAX_VALUE, a.getMax());
+        assertEquals(Long.MAX_VALUE, a.getValueAtPercentile(100));
+    }
+
+    private static void assertWithinOnePercent(long expected, long actual) {
+        assertTrue(Math.abs(actual - expected) <= expected / 100, "expected ~" + expected + " but was " + actual);
+    }
+}
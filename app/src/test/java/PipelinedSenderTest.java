@@ -0,0 +1,92 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test class for PipelinedSender.
+ */
+public class PipelinedSenderTest {
+
+    /**
+     * Encodes a PUT request with the given body.
+     * @param body The body.
+     * @return The raw request.
+     */
+    private static byte[] request(String body) {
+        return ("PUT /weather.json HTTP/1.1\r\nContent-Length: " + body.length() + "\r\n\r\n" + body).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Tests that requests are written without waiting for responses and that responses
+     * complete the requests in order.
+     */
+    @Test
+    public void testPipelinesRequestsInOrder() throws Exception {
+        try (ServerSocket listener = new ServerSocket(0)) {
+            Thread server = new Thread(() -> {
+                try (Socket socket = listener.accept()) {
+                    InputStream input = new BufferedInputStream(socket.getInputStream());
+                    List<String> bodies = new ArrayList<>();
+                    // Only answer once all three requests have arrived
+                    for (int i = 0; i < 3; i++) {
+                        bodies.add(HttpMessage.read(input).getBodyAsString());
+                    }
+                    OutputStream output = socket.getOutputStream();
+                    for (String body : bodies) {
+                        output.write(("HTTP/1.1 200 OK\r\nContent-Length: " + body.length() + "\r\n\r\n" + body).getBytes(StandardCharsets.UTF_8));
+                    }
+                    output.flush();
+                    input.read();
+                } catch (IOException e) {
+                    System.out.println(e);
+                }
+            });
+            server.start();
+
+            try (PipelinedSender sender = new PipelinedSender("localhost", listener.getLocalPort(), 4, 5000)) {
+                List<CompletableFuture<HttpMessage>> responses = new ArrayList<>();
+                for (int i = 0; i < 3; i++) {
+                    responses.add(sender.send(request("r" + i)));
+                }
+                for (int i = 0; i < 3; i++) {
+                    assertEquals("r" + i, responses.get(i).get(5, TimeUnit.SECONDS).getBodyAsString());
+                }
+                assertEquals(0, sender.getInFlight());
+            }
+            server.join(5000);
+        }
+    }
+
+    /**
+     * Tests that a closed connection fails the outstanding requests and further sends.
+     */
+    @Test
+    public void testConnectionFailureFailsOutstandingRequests() throws Exception {
+        try (ServerSocket listener = new ServerSocket(0)) {
+            Thread server = new Thread(() -> {
+                try (Socket socket = listener.accept()) {
+                    HttpMessage.read(new BufferedInputStream(socket.getInputStream()));
+                } catch (IOException e) {
+                    System.out.println(e);
+                }
+            });
+            server.start();
+
+            try (PipelinedSender sender = new PipelinedSender("localhost", listener.getLocalPort(), 4, 5000)) {
+                CompletableFuture<HttpMessage> response = sender.send(request("a"));
+                ExecutionException e = assertThrows(ExecutionException.class, () -> response.get(5, TimeUnit.SECONDS));
+                assertTrue(e.getCause() instanceof IOException);
+                assertThrows(IOException.class, () -> sender.send(request("b")));
+            }
+            server.join(5000);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for RetryPolicy.
+ */
+public class RetryPolicyTest {
+
+    /**
+     * Tests that backoff delays are jittered below a ceiling that doubles up to the cap.
+     */
+    @Test
+    public void testBackoffIsCappedAndJittered() {
+        RetryPolicy policy = new RetryPolicy(10, 100, 1000, 0.1, 10, 5, 1000);
+        long[] ceilings = {100, 200, 400, 800, 1000, 1000};
+        for (int retry = 0; retry < ceilings.length; retry++) {
+            long min = Long.MAX_VALUE;
+            long max = 0;
+            for (int i = 0; i < 2000; i++) {
+                long delay = policy.backoffMillis(retry);
+                min = Math.min(min, delay);
+                max = Math.max(max, delay);
+            }
+            assertTrue(min >= 0 && max <= ceilings[retry], "retry " + retry + ": " + min + ".." + max);
+            assertTrue(max - min > ceilings[retry] / 2, "Delays should spread over the range");
+        }
+    }
+
+    /**
+     * Tests the retry limit and that the budget only refills as new requests are made.
+     */
+    @Test
+    public void testRetryLimitAndBudget() {
+        RetryPolicy policy = new RetryPolicy(2, 0, 0, 0.5, 3, 5, 1000);
+        assertTrue(policy.awaitRetry(0));
+        assertTrue(policy.awaitRetry(1));
+        assertFalse(policy.awaitRetry(2), "Retry limit reached");
+        assertTrue(policy.awaitRetry(0));
+        assertFalse(policy.awaitRetry(0), "Budget spent");
+
+        policy.recordRequest();
+        assertFalse(policy.awaitRetry(0), "Half a token is not enough");
+        policy.recordRequest();
+        assertTrue(policy.awaitRetry(0));
+
+        for (int i = 0; i < 100; i++) {
+            policy.recordRequest();
+        }
+        assertEquals(3.0, policy.getBudget());
+    }
+
+    /**
+     * Tests that each server gets its own circuit breaker.
+     */
+    @Test
+    public void testBreakerPerServer() {
+        RetryPolicy policy = new RetryPolicy();
+        assertSame(policy.breaker("localhost", 4567), policy.breaker("localhost", 4567));
+        assertNotSame(policy.breaker("localhost", 4567), policy.breaker("localhost", 4568));
+    }
+}
@@ -0,0 +1,193 @@
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for StationStore and WeatherRecord.
+ */
+public class StationStoreTest {
+    private StationStore store;
+
+    /**
+     * Set up a fresh store before each test.
+     */
+    @BeforeEach
+    public void setUp() {
+        store = new StationStore();
+    }
+
+    /**
+     * Tests that known fields are typed, numeric strings are parsed but written back as
+     * the same strings, and unknown fields are kept.
+     */
+    @Test
+    public void testRecordRoundTrip() {
+        JSONObject json = new JSONObject()
+            .put("id", "IDS60901")
+            .put("state", "SA")
+            .put("air_temp", "13.3")
+            .put("rel_hum", 60)
+            .put("press", "n/a")
+            .put("dewpt", "5.70")
+            .put("wind_spd_kmh", "15")
+            .put("custom", "kept");
+
+        WeatherRecord record = WeatherRecord.fromJson(json, 1000);
+        assertEquals(13.3, record.getAirTemp());
+
+        JSONObject out = record.toJson();
+        assertEquals("IDS60901", out.getString("id"));
+        assertEquals("13.3", out.get("air_temp"));
+        assertEquals("15", out.get("wind_spd_kmh"));
+        // Text that would not print back exactly is kept as sent
+        assertEquals("5.70", out.get("dewpt"));
+        assertEquals(60, out.getInt("rel_hum"));
+        assertEquals("n/a", out.getString("press"));
+        assertEquals("kept", out.getString("custom"));
+    }
+
+    /**
+     * Tests that a record without an id is rejected.
+     */
+    @Test
+    public void testRecordWithoutId() {
+        assertThrows(IllegalArgumentException.class, () -> WeatherRecord.fromJson(new JSONObject().put("air_temp", 1), 0));
+    }
+
+    /**
+     * Tests that put reports new stations and replaces existing ones.
+     */
+    @Test
+    public void testPutReportsCreation() {
+        assertTrue(store.put(WeatherRecord.fromJson(new JSONObject().put("id", "a").put("air_temp", 1), 0)));
+        assertFalse(store.put(WeatherRecord.fromJson(new JSONObject().put("id", "a").put("air_temp", 2), 0)));
+        assertEquals(1, store.size());
+        assertEquals(2.0, store.get("a").getAirTemp());
+        assertEquals(2, store.toJson().getJSONObject("a").getInt("air_temp"));
+    }
+
+    /**
+     * Tests that expiry removes only records older than the cutoff and never a newer replacement.
+     */
+    @Test
+    public void testExpiry() {
+        WeatherRecord old = WeatherRecord.fromJson(new JSONObject().put("id", "old"), 100);
+        store.put(old);
+        store.put(WeatherRecord.fromJson(new JSONObject().put("id", "fresh"), 500));
+
+        assertEquals(1, store.expireOlderThan(200));
+        assertFalse(store.contains("old"));
+        assertTrue(store.contains("fresh"));
+
+        store.put(WeatherRecord.fromJson(new JSONObject().put("id", "old"), 600));
+        assertFalse(store.remove(old), "A stale record must not remove its replacement");
+    }
+
+    /**
+     * Tests that touch renews a station's receive time without changing its data or the store version.
+     */
+    @Test
+    public void testTouch() {
+        store.put(WeatherRecord.fromJson(new JSONObject().put("id", "a").put("air_temp", 1), 100, 7));
+        long version = store.getVersion();
+
+        WeatherRecord touched = store.touch("a", 500);
+        assertEquals(500, touched.getReceivedAt());
+        assertEquals(7, touched.getLamport());
+        assertEquals(1.0, store.get("a").getAirTemp());
+        assertEquals(version, store.getVersion());
+        assertEquals(0, store.expireOlderThan(200));
+        assertNull(store.touch("missing", 500));
+    }
+
+    /**
+     * Tests that the encoded snapshot is reused until the store changes.
+     */
+    @Test
+    public void testSnapshotRebuiltOnlyOnChange() {
+        store.put(WeatherRecord.fromJson(new JSONObject().put("id", "a").put("air_temp", 1), 100));
+        StationStore.Snapshot first = store.snapshot();
+        assertSame(first, store.snapshot(), "Unchanged store should reuse the snapshot");
+        assertEquals(1, new JSONObject(new String(first.getBytes(), StandardCharsets.UTF_8)).length());
+
+        store.put(WeatherRecord.fromJson(new JSONObject().put("id", "b").put("air_temp", 2), 100));
+        StationStore.Snapshot second = store.snapshot();
+        assertNotSame(first, second);
+        assertTrue(second.getVersion() > first.getVersion());
+
+        store.expireOlderThan(200);
+        assertEquals("{}", new String(store.snapshot().getBytes(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Tests that a snapshot's compressed forms are built once and decode to its JSON.
+     */
+    @Test
+    public void testSnapshotCompressedForms() throws Exception {
+        store.put(WeatherRecord.fromJson(new JSONObject().put("id", "a").put("air_temp", 1), 100));
+        StationStore.Snapshot snapshot = store.snapshot();
+
+        assertSame(snapshot.getBytes(), snapshot.getBytes(null));
+        byte[] gzip = snapshot.getBytes(ContentEncoding.GZIP);
+        assertSame(gzip, snapshot.getBytes(ContentEncoding.GZIP));
+        assertArrayEquals(snapshot.getBytes(), ContentEncoding.decode(gzip, ContentEncoding.GZIP));
+        assertArrayEquals(snapshot.getBytes(), ContentEncoding.decode(snapshot.getBytes(ContentEncoding.DEFLATE), ContentEncoding.DEFLATE));
+    }
+
+    /**
+     * Tests that queries by id, prefix and state use the indices and combine their criteria.
+     */
+    @Test
+    public void testQueryByIdPrefixAndState() {
+        store.put(WeatherRecord.fromJson(new JSONObject().put("id", "IDS1").put("state", "SA"), 100));
+        store.put(WeatherRecord.fromJson(new JSONObject().put("id", "IDS2").put("state", "NSW"), 100));
+        store.put(WeatherRecord.fromJson(new JSONObject().put("id", "IDV1").put("state", "VIC"), 100));
+
+        assertEquals(List.of("IDS2"), ids(store.query(new StationQuery(Set.of("IDS2"), null, null))));
+        assertEquals(List.of("IDS1", "IDS2"), ids(store.query(new StationQuery(Set.of(), "IDS", null))));
+        assertEquals(List.of("IDS1"), ids(store.query(new StationQuery(Set.of(), "IDS", "SA"))));
+        assertEquals(List.of(), ids(store.query(new StationQuery(Set.of("IDV1"), "IDS", null))));
+
+        // Moving a station to another state updates the state index
+        store.put(WeatherRecord.fromJson(new JSONObject().put("id", "IDS2").put("state", "SA"), 200));
+        assertEquals(List.of("IDS1", "IDS2"), ids(store.query(new StationQuery(Set.of(), null, "SA"))));
+        assertEquals(List.of(), ids(store.query(new StationQuery(Set.of(), null, "NSW"))));
+
+        store.remove("IDS1");
+        assertEquals(List.of("IDS2"), ids(store.query(new StationQuery(Set.of(), "IDS", null))));
+        store.clear();
+        assertEquals(List.of(), ids(store.query(new StationQuery(Set.of(), null, "SA"))));
+    }
+
+    /**
+     * Tests that query parameters are split, trimmed and that empty values do not filter.
+     */
+    @Test
+    public void testQueryFromParameters() {
+        StationQuery query = StationQuery.fromParameters(Map.of("id", List.of("IDS1, IDS2", "IDS3"), "state", List.of("")));
+        assertEquals(Set.of("IDS1", "IDS2", "IDS3"), query.getIds());
+        assertNull(query.getState());
+        assertTrue(StationQuery.fromParameters(Map.of("unknown", List.of("x"))).isAll());
+    }
+
+    /**
+     * Gets the sorted ids of some records.
+     * @param records The records.
+     * @return The sorted ids.
+     */
+    private static List<String> ids(List<WeatherRecord> records) {
+        List<String> ids = new ArrayList<>();
+        for (WeatherRecord record : records) {
+            ids.add(record.getId());
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+}
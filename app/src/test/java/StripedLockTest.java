@@ -0,0 +1,62 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Test class for StripedLock.
+ */
+public class StripedLockTest {
+
+    /**
+     * Tests that the stripe count is rounded up and that keys spread over the stripes.
+     */
+    @Test
+    public void testStripes() {
+        assertEquals(64, new StripedLock(64).getStripes());
+        assertEquals(64, new StripedLock(33).getStripes());
+        assertEquals(1, new StripedLock(1).getStripes());
+        assertThrows(IllegalArgumentException.class, () -> new StripedLock(0));
+
+        StripedLock locks = new StripedLock(16);
+        assertSame(locks.forKey("IDS60901"), locks.forKey(new String("IDS60901")));
+        Set<ReentrantLock> used = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            used.add(locks.forKey("IDS" + i));
+        }
+        assertEquals(16, used.size());
+    }
+
+    /**
+     * Tests that a key's stripe can be taken while another stripe is held, and that
+     * indexOf() names the stripe forKey() returns.
+     */
+    @Test
+    public void testStripesAreIndependent() throws InterruptedException {
+        StripedLock locks = new StripedLock(16);
+        ReentrantLock held = locks.forKey("IDS1");
+        String other = "IDS2";
+        for (int i = 3; locks.forKey(other) == held; i++) {
+            other = "IDS" + i;
+        }
+        assertNotEquals(locks.indexOf("IDS1"), locks.indexOf(other));
+        held.lock();
+        ReentrantLock otherLock = locks.forKey(other);
+        Thread parallel = new Thread(() -> {
+            otherLock.lock();
+            otherLock.unlock();
+        });
+        parallel.start();
+        parallel.join(5000);
+        assertFalse(parallel.isAlive(), "Another stripe should not wait for a held one");
+        held.unlock();
+
+        for (int i = 0; i < 100; i++) {
+            String a = "IDS" + i;
+            String b = "IDV" + i;
+            assertTrue(locks.indexOf(a) >= 0 && locks.indexOf(a) < locks.getStripes());
+            assertEquals(locks.indexOf(a) == locks.indexOf(b), locks.forKey(a) == locks.forKey(b));
+        }
+    }
+}
@@ -0,0 +1,97 @@
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.Stream;
+
+/**
+ * Test class for WriteAheadLog persistence and recovery.
+ */
+public class WriteAheadLogTest {
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Stores a record and logs it.
+     */
+    private static void put(StationStore store, WriteAheadLog wal, String id, double airTemp) throws IOException {
+        store.put(WeatherRecord.fromJson(new JSONObject().put("id", id).put("air_temp", airTemp), System.currentTimeMillis()));
+        wal.append(id);
+    }
+
+    /**
+     * Tests that updates and removals survive a restart.
+     */
+    @Test
+    public void testReplayRestoresLatestState() throws IOException {
+        StationStore store = new StationStore();
+        WriteAheadLog wal = new WriteAheadLog(directory, store);
+        wal.replay();
+        put(store, wal, "a", 1);
+        put(store, wal, "b", 2);
+        put(store, wal, "a", 3);
+        store.remove("b");
+        wal.append("b");
+        wal.close();
+
+        StationStore recovered = new StationStore();
+        WriteAheadLog reopened = new WriteAheadLog(directory, recovered);
+        reopened.replay();
+        reopened.close();
+
+        assertEquals(1, recovered.size());
+        assertEquals(3.0, recovered.get("a").getAirTemp());
+        assertNull(recovered.get("b"));
+    }
+
+    /**
+     * Tests that a torn final line is skipped rather than failing recovery.
+     */
+    @Test
+    public void testReplaySkipsTornLine() throws IOException {
+        StationStore store = new StationStore();
+        WriteAheadLog wal = new WriteAheadLog(directory, store);
+        wal.replay();
+        put(store, wal, "a", 1);
+        wal.close();
+
+        try (Stream<Path> segments = Files.list(directory)) {
+            Path segment = segments.findFirst().orElseThrow();
+            Files.write(segment, "P {\"id\":\"b\",\"air_te".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        }
+
+        StationStore recovered = new StationStore();
+        new WriteAheadLog(directory, recovered).replay();
+        assertTrue(recovered.contains("a"));
+        assertFalse(recovered.contains("b"));
+    }
+
+    /**
+     * Tests that rolling over a small segment limit compacts the log into a checkpoint.
+     */
+    @Test
+    public void testRollingCompactsSegments() throws IOException {
+        StationStore store = new StationStore();
+        WriteAheadLog wal = new WriteAheadLog(directory, store, 256);
+        wal.replay();
+        for (int i = 0; i < 50; i++) {
+            put(store, wal, "station" + (i % 5), i);
+        }
+        wal.close();
+
+        try (Stream<Path> segments = Files.list(directory)) {
+            assertEquals(1, segments.count(), "Older segments should be deleted after a checkpoint");
+        }
+
+        StationStore recovered = new StationStore();
+        new WriteAheadLog(directory, recovered).replay();
+        assertEquals(5, recovered.size());
+        assertEquals(49.0, recovered.get("station4").getAirTemp());
+    }
+}
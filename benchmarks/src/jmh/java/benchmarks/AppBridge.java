@@ -0,0 +1,216 @@
+package benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import org.json.JSONObject;
+
+/**
+ * AppBridge gives the benchmarks access to the application classes. Those live in the
+ * unnamed package, which cannot be imported from a named package, and JMH refuses to
+ * run benchmarks declared in the unnamed package. Every entry point is therefore
+ * resolved once into a static final MethodHandle typed with Object in place of the
+ * application classes; the JIT treats such handles as constants and inlines through
+ * them, so the benchmarks measure the application code and not reflection.
+ */
+final class AppBridge {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+    private static final Class<?> SERVER = load("AggregationServer");
+    private static final Class<?> STORE = load("StationStore");
+    private static final Class<?> SNAPSHOT = load("StationStore$Snapshot");
+    private static final Class<?> RECORD = load("WeatherRecord");
+    private static final Class<?> MESSAGE = load("HttpMessage");
+    private static final Class<?> CONTENT_SERVER = load("ContentServer");
+    private static final Class<?> CLOCK = load("LamportClock");
+
+    private static final MethodHandle NEW_SERVER = constructor(SERVER, int.class);
+    private static final MethodHandle VALIDATE_DATA = virtual(SERVER, "validateData", int.class, String.class);
+    private static final MethodHandle STORE_JSON = virtual(SERVER, "store", boolean.class, JSONObject.class);
+    private static final MethodHandle SAVE_DATA = virtual(SERVER, "saveData", void.class);
+    private static final MethodHandle BACKUP = virtual(SERVER, "backup", void.class);
+    private static final MethodHandle HANDLE_REQUEST = virtual(SERVER, "handleRequest", byte[].class, MESSAGE);
+    private static final MethodHandle GET_STATIONS = virtual(SERVER, "getStations", STORE);
+    private static final MethodHandle CLEAR_DATA = virtual(SERVER, "clearDataStorage", void.class);
+    private static final MethodHandle USE_WAL = virtual(SERVER, "useWriteAheadLog", void.class, Path.class);
+    private static final MethodHandle RECOVER_DATA = virtual(SERVER, "recoverData", void.class);
+
+    private static final MethodHandle NEW_STORE = constructor(STORE);
+    private static final MethodHandle STORE_PUT = virtual(STORE, "put", boolean.class, RECORD);
+    private static final MethodHandle STORE_EXPIRE = virtual(STORE, "expireOlderThan", int.class, long.class);
+    private static final MethodHandle STORE_SNAPSHOT = virtual(STORE, "snapshot", SNAPSHOT);
+    private static final MethodHandle SNAPSHOT_BYTES = virtual(SNAPSHOT, "getBytes", byte[].class);
+    private static final MethodHandle RECORD_FROM_JSON = statik(RECORD, "fromJson", RECORD, JSONObject.class, long.class);
+    private static final MethodHandle READ_MESSAGE = statik(MESSAGE, "read", MESSAGE, InputStream.class);
+
+    private static final MethodHandle NEW_CONTENT_SERVER = constructor(CONTENT_SERVER, String.class, int.class, String.class);
+    private static final MethodHandle READ_FEED = virtual(CONTENT_SERVER, "readFilePublic", List.class, String.class);
+
+    private static final MethodHandle NEW_CLOCK = constructor(CLOCK);
+    private static final MethodHandle CLOCK_TICK = virtual(CLOCK, "tick", long.class);
+    private static final MethodHandle CLOCK_UPDATE = virtual(CLOCK, "update", long.class, long.class);
+    private static final MethodHandle CLOCK_LOG = virtual(CLOCK, "log", void.class, String.class, long.class);
+
+    private AppBridge() {
+    }
+
+    static Object newServer(int port) throws Throwable {
+        return (Object) NEW_SERVER.invokeExact(port);
+    }
+
+    static int validateData(Object server, String data) throws Throwable {
+        return (int) VALIDATE_DATA.invokeExact(server, data);
+    }
+
+    static boolean store(Object server, JSONObject json) throws Throwable {
+        return (boolean) STORE_JSON.invokeExact(server, json);
+    }
+
+    static void saveData(Object server) throws Throwable {
+        SAVE_DATA.invokeExact(server);
+    }
+
+    static void backup(Object server) throws Throwable {
+        BACKUP.invokeExact(server);
+    }
+
+    static byte[] handleRequest(Object server, Object request) throws Throwable {
+        return (byte[]) HANDLE_REQUEST.invokeExact(server, request);
+    }
+
+    static Object getStations(Object server) throws Throwable {
+        return (Object) GET_STATIONS.invokeExact(server);
+    }
+
+    static void clearDataStorage(Object server) throws Throwable {
+        CLEAR_DATA.invokeExact(server);
+    }
+
+    static void useWriteAheadLog(Object server, Path directory) throws Throwable {
+        USE_WAL.invokeExact(server, directory);
+    }
+
+    static void recoverData(Object server) throws Throwable {
+        RECOVER_DATA.invokeExact(server);
+    }
+
+    static Object newStore() throws Throwable {
+        return (Object) NEW_STORE.invokeExact();
+    }
+
+    static boolean put(Object store, Object record) throws Throwable {
+        return (boolean) STORE_PUT.invokeExact(store, record);
+    }
+
+    static int expireOlderThan(Object store, long cutoff) throws Throwable {
+        return (int) STORE_EXPIRE.invokeExact(store, cutoff);
+    }
+
+    static byte[] snapshotBytes(Object store) throws Throwable {
+        Object snapshot = (Object) STORE_SNAPSHOT.invokeExact(store);
+        return (byte[]) SNAPSHOT_BYTES.invokeExact(snapshot);
+    }
+
+    static Object recordFromJson(JSONObject json, long receivedAt) throws Throwable {
+        return (Object) RECORD_FROM_JSON.invokeExact(json, receivedAt);
+    }
+
+    /**
+     * Parses a raw HTTP message, e.g. a request to replay against handleRequest.
+     */
+    static Object parseMessage(String raw) throws Throwable {
+        return (Object) READ_MESSAGE.invokeExact((InputStream) new ByteArrayInputStream(raw.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    static Object newContentServer(String address, int port, String filePath) throws Throwable {
+        return (Object) NEW_CONTENT_SERVER.invokeExact(address, port, filePath);
+    }
+
+    @SuppressWarnings("unchecked")
+    static List<String> readFeed(Object contentServer, String filePath) throws Throwable {
+        return (List<String>) READ_FEED.invokeExact(contentServer, filePath);
+    }
+
+    static Object newClock() throws Throwable {
+        return (Object) NEW_CLOCK.invokeExact();
+    }
+
+    static long tick(Object clock) throws Throwable {
+        return (long) CLOCK_TICK.invokeExact(clock);
+    }
+
+    static long update(Object clock, long received) throws Throwable {
+        return (long) CLOCK_UPDATE.invokeExact(clock, received);
+    }
+
+    static void log(Object clock, String event, long value) throws Throwable {
+        CLOCK_LOG.invokeExact(clock, event, value);
+    }
+
+    private static Class<?> load(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Resolves a constructor, typed to return Object.
+     */
+    private static MethodHandle constructor(Class<?> owner, Class<?>... parameters) {
+        try {
+            MethodHandle handle = LOOKUP.findConstructor(owner, MethodType.methodType(void.class, parameters));
+            return erase(handle);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Resolves an instance method, with application types erased to Object.
+     */
+    private static MethodHandle virtual(Class<?> owner, String name, Class<?> returns, Class<?>... parameters) {
+        try {
+            return erase(LOOKUP.findVirtual(owner, name, MethodType.methodType(returns, parameters)));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Resolves a static method, with application types erased to Object.
+     */
+    private static MethodHandle statik(Class<?> owner, String name, Class<?> returns, Class<?>... parameters) {
+        try {
+            return erase(LOOKUP.findStatic(owner, name, MethodType.methodType(returns, parameters)));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Replaces every application class in a handle's type with Object, so call sites
+     * in this package can invoke it exactly.
+     */
+    private static MethodHandle erase(MethodHandle handle) {
+        MethodType type = handle.type();
+        for (int i = 0; i < type.parameterCount(); i++) {
+            if (isApplicationClass(type.parameterType(i))) {
+                type = type.changeParameterType(i, Object.class);
+            }
+        }
+        if (isApplicationClass(type.returnType())) {
+            type = type.changeReturnType(Object.class);
+        }
+        return handle.asType(type);
+    }
+
+    private static boolean isApplicationClass(Class<?> type) {
+        return !type.isPrimitive() && !type.isArray() && type.getPackageName().isEmpty();
+    }
+}
@@ -0,0 +1,47 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Benchmarks ContentServer's parsing of a key:value feed file into JSON records.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FeedParseBenchmark {
+    @Param({"10", "1000"})
+    public int records;
+
+    private Path feed;
+    private Object contentServer;
+
+    @Setup
+    public void setUp() throws Throwable {
+        feed = Files.createTempFile("feed", ".txt");
+        Feeds.writeFeed(feed, records);
+        contentServer = AppBridge.newContentServer("localhost", 4567, feed.toString());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(feed);
+    }
+
+    @Benchmark
+    public List<String> readFile() throws Throwable {
+        return AppBridge.readFeed(contentServer, feed.toString());
+    }
+}
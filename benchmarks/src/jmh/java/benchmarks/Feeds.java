@@ -0,0 +1,64 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.json.JSONObject;
+
+/**
+ * Feeds builds realistic station records and feed files for the benchmarks, shaped
+ * like the sample data shipped with the content server.
+ */
+final class Feeds {
+    private Feeds() {
+    }
+
+    /**
+     * Builds one station record with all the usual fields.
+     * @param n The station number, used to derive a unique id.
+     * @return The record.
+     */
+    static JSONObject record(int n) {
+        return new JSONObject()
+            .put("id", String.format("IDS%07d", n))
+            .put("name", "Adelaide (West Terrace /  ngayirdapira)")
+            .put("state", n % 2 == 0 ? "SA" : "NSW")
+            .put("time_zone", "CST")
+            .put("lat", -34.9)
+            .put("lon", 138.6)
+            .put("local_date_time", "15/04:00pm")
+            .put("local_date_time_full", "20230715160000")
+            .put("air_temp", 13.3 + (n % 10))
+            .put("apparent_t", 9.5)
+            .put("cloud", "Partly cloudy")
+            .put("dewpt", 5.7)
+            .put("press", 1023.9)
+            .put("rel_hum", 60)
+            .put("wind_dir", "S")
+            .put("wind_spd_kmh", 15)
+            .put("wind_spd_kt", 8);
+    }
+
+    /**
+     * Writes a feed file in the content server's key:value text format.
+     * @param file The file to write.
+     * @param count The number of station records.
+     * @throws IOException If the file cannot be written.
+     */
+    static void writeFeed(Path file, int count) throws IOException {
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < count; i++) {
+                JSONObject record = record(i);
+                // Write the id first, since it starts a new record
+                out.write("id:" + record.getString("id") + "\n");
+                for (String key : record.keySet()) {
+                    if (!key.equals("id")) {
+                        out.write(key + ":" + record.get(key) + "\n");
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks the per-PUT work of the aggregation server before persistence:
+ * validating the body and storing the parsed record.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class IngestBenchmark {
+    private static final int DISTINCT_STATIONS = 1024;
+    private Object server;
+    private String body;
+    private JSONObject[] records;
+
+    /**
+     * Per-thread position in the record pool, so concurrent runs do not share a counter.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup
+    public void setUp() throws Throwable {
+        server = AppBridge.newServer(0);
+        body = Feeds.record(0).toString();
+        records = new JSONObject[DISTINCT_STATIONS];
+        for (int i = 0; i < DISTINCT_STATIONS; i++) {
+            records[i] = Feeds.record(i);
+        }
+    }
+
+    @Benchmark
+    public int validateData() throws Throwable {
+        return AppBridge.validateData(server, body);
+    }
+
+    @Benchmark
+    public boolean store(Cursor cursor) throws Throwable {
+        JSONObject record = records[cursor.next++ & (DISTINCT_STATIONS - 1)];
+        return AppBridge.store(server, record);
+    }
+}
@@ -0,0 +1,135 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Benchmarks ingest throughput with 1 to 32 writer threads, each updating its own
+ * stations. With "memory" the writers only store records, which measures contention
+ * on the station lock stripes and the store. With "wal" each writer sends complete
+ * PUTs that are acknowledged once durable, so concurrent writers also share group
+ * commits of the write-ahead log.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class IngestScalingBenchmark {
+    private static final int STATIONS_PER_WRITER = 256;
+
+    @Param({"memory", "wal"})
+    public String persistence;
+
+    private Object server;
+    private Path walDirectory;
+    private final AtomicInteger writers = new AtomicInteger();
+
+    /**
+     * One writer's records and requests, for stations no other writer touches.
+     */
+    @State(Scope.Thread)
+    public static class Writer {
+        JSONObject[] records;
+        Object[] requests;
+        int next;
+
+        @Setup
+        public void setUp(IngestScalingBenchmark benchmark) throws Throwable {
+            int writer = benchmark.writers.getAndIncrement();
+            records = new JSONObject[STATIONS_PER_WRITER];
+            requests = new Object[STATIONS_PER_WRITER];
+            for (int i = 0; i < STATIONS_PER_WRITER; i++) {
+                records[i] = Feeds.record(writer * STATIONS_PER_WRITER + i);
+                String body = records[i].toString();
+                requests[i] = AppBridge.parseMessage("PUT /weather.json HTTP/1.1\r\nContent-Length: "
+                    + body.getBytes(StandardCharsets.UTF_8).length + "\r\nLamport-Clock: 1\r\n\r\n" + body);
+            }
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        server = AppBridge.newServer(0);
+        AppBridge.clearDataStorage(server);
+        if (persistence.equals("wal")) {
+            walDirectory = Files.createTempDirectory("ingest-wal");
+            AppBridge.useWriteAheadLog(server, walDirectory);
+            AppBridge.recoverData(server);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (walDirectory != null) {
+            try (Stream<Path> files = Files.walk(walDirectory)) {
+                for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Object writers01(Writer writer) throws Throwable {
+        return put(writer);
+    }
+
+    @Benchmark
+    @Threads(2)
+    public Object writers02(Writer writer) throws Throwable {
+        return put(writer);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object writers04(Writer writer) throws Throwable {
+        return put(writer);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Object writers08(Writer writer) throws Throwable {
+        return put(writer);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Object writers16(Writer writer) throws Throwable {
+        return put(writer);
+    }
+
+    @Benchmark
+    @Threads(32)
+    public Object writers32(Writer writer) throws Throwable {
+        return put(writer);
+    }
+
+    /**
+     * Stores or PUTs the writer's next station.
+     */
+    private Object put(Writer writer) throws Throwable {
+        int i = writer.next++ & (STATIONS_PER_WRITER - 1);
+        if (walDirectory == null) {
+            return AppBridge.store(server, writer.records[i]);
+        }
+        return AppBridge.handleRequest(server, writer.requests[i]);
+    }
+}
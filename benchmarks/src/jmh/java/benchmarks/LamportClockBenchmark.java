@@ -0,0 +1,44 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Benchmarks the Lamport clock with four threads sharing one clock, as request
+ * handlers do on the server. Logging at full speed fills the event ring faster than
+ * it can be written, so the log benchmark also covers the dropped-event path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Threads(4)
+public class LamportClockBenchmark {
+    private Object clock;
+
+    @Setup
+    public void setUp() throws Throwable {
+        clock = AppBridge.newClock();
+    }
+
+    @Benchmark
+    public long tick() throws Throwable {
+        return AppBridge.tick(clock);
+    }
+
+    @Benchmark
+    public long update() throws Throwable {
+        return AppBridge.update(clock, 42);
+    }
+
+    @Benchmark
+    public void log() throws Throwable {
+        AppBridge.log(clock, "benchmark event", 42);
+    }
+}
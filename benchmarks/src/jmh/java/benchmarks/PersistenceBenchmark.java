@@ -0,0 +1,56 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Benchmarks the legacy full-file persistence: rewriting and syncing the active data
+ * file, and copying it to the backup file. Both files are written to the working
+ * directory, as they are by the server.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PersistenceBenchmark {
+    @Param({"100", "10000"})
+    public int stations;
+
+    private Object server;
+
+    @Setup
+    public void setUp() throws Throwable {
+        server = AppBridge.newServer(0);
+        AppBridge.clearDataStorage(server);
+        for (int i = 0; i < stations; i++) {
+            AppBridge.store(server, Feeds.record(i));
+        }
+        AppBridge.saveData(server);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(Paths.get("active_data.txt"));
+        Files.deleteIfExists(Paths.get("backup_data.txt"));
+    }
+
+    @Benchmark
+    public void saveData() throws Throwable {
+        AppBridge.saveData(server);
+    }
+
+    @Benchmark
+    public void backup() throws Throwable {
+        AppBridge.backup(server);
+    }
+}
@@ -0,0 +1,59 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks GET response assembly through AggregationServer.handleRequest: the full
+ * aggregate while it is cached, the full aggregate right after a change, and a
+ * single station selected by id.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ReadBenchmark {
+    @Param({"100", "10000"})
+    public int stations;
+
+    private Object server;
+    private Object fullRequest;
+    private Object singleRequest;
+    private JSONObject changed;
+
+    @Setup
+    public void setUp() throws Throwable {
+        server = AppBridge.newServer(0);
+        AppBridge.clearDataStorage(server);
+        for (int i = 0; i < stations; i++) {
+            AppBridge.store(server, Feeds.record(i));
+        }
+        fullRequest = AppBridge.parseMessage("GET /weather.json HTTP/1.1\r\nLamport-Clock: 1\r\n\r\n");
+        singleRequest = AppBridge.parseMessage("GET /weather.json?id=" + Feeds.record(stations / 2).getString("id")
+            + " HTTP/1.1\r\nLamport-Clock: 1\r\n\r\n");
+        changed = Feeds.record(0);
+    }
+
+    @Benchmark
+    public byte[] getFullCached() throws Throwable {
+        return AppBridge.handleRequest(server, fullRequest);
+    }
+
+    @Benchmark
+    public byte[] getFullAfterChange() throws Throwable {
+        AppBridge.store(server, changed);
+        return AppBridge.handleRequest(server, fullRequest);
+    }
+
+    @Benchmark
+    public byte[] getSingleStation() throws Throwable {
+        return AppBridge.handleRequest(server, singleRequest);
+    }
+}